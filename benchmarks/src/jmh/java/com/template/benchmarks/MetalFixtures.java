@@ -0,0 +1,113 @@
+package com.template.benchmarks;
+
+import com.template.contracts.MetalCatalogueContract;
+import com.template.contracts.MetalContract;
+import com.template.states.MetalCatalogueState;
+import com.template.states.MetalStateV2;
+import com.template.states.Metals;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.core.SerializationEnvironmentRule;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.node.MockServices;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+
+import static net.corda.testing.node.MockServicesKt.makeTestIdentityService;
+
+/**
+ * Builds the Issue and Transfer transactions the benchmarks measure, without a node. A Transfer of n states spends
+ * the n states of an Issue to a new owner, so the two have the same number of outputs. Both reference the Mint's
+ * metal catalogue, recorded once per fixture.
+ */
+final class MetalFixtures {
+    static final TestIdentity NOTARY = new TestIdentity(new CordaX500Name("Notary", "London", "GB"));
+    static final TestIdentity MINT = new TestIdentity(new CordaX500Name("Mint", "London", "GB"));
+    static final TestIdentity TRADER_A = new TestIdentity(new CordaX500Name("TraderA", "New York", "US"));
+    static final TestIdentity TRADER_B = new TestIdentity(new CordaX500Name("TraderB", "New York", "US"));
+
+    enum Shape { Issue, Transfer }
+
+    private final MockServices services;
+    private final StateAndRef<MetalCatalogueState> catalogue;
+
+    MetalFixtures() {
+        services = new MockServices(Collections.singletonList("com.template.contracts"), MINT,
+                makeTestIdentityService(NOTARY.getIdentity(), MINT.getIdentity(), TRADER_A.getIdentity(), TRADER_B.getIdentity()),
+                TRADER_A.getKeyPair());
+
+        TransactionBuilder builder = new TransactionBuilder(NOTARY.getParty())
+                .addOutputState(new MetalCatalogueState(MINT.getParty(), Metals.defaultEntries()), MetalCatalogueContract.CID)
+                .addCommand(new MetalCatalogueContract.Commands.Create(), MINT.getPublicKey());
+        SignedTransaction published = sign(builder, MINT.getPublicKey());
+        services.recordTransactions(published);
+        catalogue = published.getTx().outRef(0);
+    }
+
+    /* Building and signing transactions outside a node needs a serialization environment: the setup runs in the one
+     * SerializationEnvironmentRule gives a test. A SerializationFactory and context taken from it inside the setup
+     * keep serializing once it has returned. */
+    static <T> T inSerializationEnv(Callable<T> setup) {
+        Object[] result = new Object[1];
+        Statement statement = new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                result[0] = setup.call();
+            }
+        };
+        try {
+            new SerializationEnvironmentRule().apply(statement, Description.EMPTY).evaluate();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Benchmark setup failed", e);
+        }
+        @SuppressWarnings("unchecked") T value = (T) result[0];
+        return value;
+    }
+
+    static MetalStateV2 metal(Party owner) {
+        return new MetalStateV2(Metals.GOLD, 10, MINT.getParty().anonymise(), owner.anonymise());
+    }
+
+    SignedTransaction signed(Shape shape, int states) {
+        SignedTransaction issue = issue(states);
+        if (shape == Shape.Issue)
+            return issue;
+
+        services.recordTransactions(issue);
+        TransactionBuilder builder = new TransactionBuilder(NOTARY.getParty()).addReferenceState(catalogue.referenced());
+        for (int i = 0; i < states; i++) {
+            StateAndRef<MetalStateV2> input = issue.getTx().outRef(i);
+            builder.addInputState(input);
+            builder.addOutputState(metal(TRADER_B.getParty()), MetalContract.CID);
+        }
+        builder.addCommand(new MetalContract.Commands.Transfer(), TRADER_A.getPublicKey());
+        return sign(builder, TRADER_A.getPublicKey());
+    }
+
+    /* The notary's signature is never added, so only the resolution is done and not the signature check. */
+    LedgerTransaction ledger(SignedTransaction signedTx) throws SignatureException {
+        return signedTx.toLedgerTransaction(services, false);
+    }
+
+    private SignedTransaction issue(int states) {
+        TransactionBuilder builder = new TransactionBuilder(NOTARY.getParty()).addReferenceState(catalogue.referenced());
+        for (int i = 0; i < states; i++) {
+            builder.addOutputState(metal(TRADER_A.getParty()), MetalContract.CID);
+        }
+        builder.addCommand(new MetalContract.Commands.Issue(), MINT.getPublicKey());
+        return sign(builder, MINT.getPublicKey());
+    }
+
+    private SignedTransaction sign(TransactionBuilder builder, PublicKey signer) {
+        return services.signInitialTransaction(builder, Collections.singletonList(signer));
+    }
+}
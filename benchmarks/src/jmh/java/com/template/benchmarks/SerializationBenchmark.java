@@ -0,0 +1,66 @@
+package com.template.benchmarks;
+
+import com.template.states.MetalStateV2;
+import com.template.states.TemplateState;
+import net.corda.core.serialization.SerializationAPIKt;
+import net.corda.core.serialization.SerializationContext;
+import net.corda.core.serialization.SerializationFactory;
+import net.corda.core.serialization.SerializedBytes;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AMQP serialization round trips of a single MetalStateV2 and TemplateState. The serialized size of each is logged
+ * once per trial.
+ */
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    private final static Logger logger = LoggerFactory.getLogger(SerializationBenchmark.class);
+
+    private SerializationFactory factory;
+    private SerializationContext context;
+
+    private MetalStateV2 metalState;
+    private TemplateState templateState;
+
+    private SerializedBytes<MetalStateV2> metalStateBytes;
+    private SerializedBytes<TemplateState> templateStateBytes;
+
+    @Setup
+    public void setup() {
+        MetalFixtures.inSerializationEnv(() -> {
+            factory = SerializationFactory.Companion.getDefaultFactory();
+            context = factory.getDefaultContext();
+            return null;
+        });
+
+        metalState = MetalFixtures.metal(MetalFixtures.TRADER_A.getParty());
+        templateState = new TemplateState("Hello", MetalFixtures.TRADER_A.getParty(), MetalFixtures.TRADER_B.getParty());
+
+        metalStateBytes = SerializationAPIKt.serialize(metalState, factory, context);
+        templateStateBytes = SerializationAPIKt.serialize(templateState, factory, context);
+
+        logger.info("MetalStateV2 {} bytes, TemplateState {} bytes", metalStateBytes.getSize(), templateStateBytes.getSize());
+    }
+
+    @Benchmark
+    public SerializedBytes<MetalStateV2> serializeMetalState() {
+        return SerializationAPIKt.serialize(metalState, factory, context);
+    }
+
+    @Benchmark
+    public MetalStateV2 deserializeMetalState() {
+        return factory.deserialize(metalStateBytes, MetalStateV2.class, context);
+    }
+
+    @Benchmark
+    public SerializedBytes<TemplateState> serializeTemplateState() {
+        return SerializationAPIKt.serialize(templateState, factory, context);
+    }
+
+    @Benchmark
+    public TemplateState deserializeTemplateState() {
+        return factory.deserialize(templateStateBytes, TemplateState.class, context);
+    }
+}
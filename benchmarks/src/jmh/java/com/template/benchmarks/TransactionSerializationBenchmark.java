@@ -0,0 +1,54 @@
+package com.template.benchmarks;
+
+import net.corda.core.serialization.SerializationAPIKt;
+import net.corda.core.serialization.SerializationContext;
+import net.corda.core.serialization.SerializationFactory;
+import net.corda.core.serialization.SerializedBytes;
+import net.corda.core.transactions.SignedTransaction;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * AMQP serialization round trips of whole Issue and Transfer transactions. The serialized size of each transaction is
+ * logged once per trial, so a change to the state's shape can be judged in bytes as well as in time.
+ */
+@State(Scope.Benchmark)
+public class TransactionSerializationBenchmark {
+    private final static Logger logger = LoggerFactory.getLogger(TransactionSerializationBenchmark.class);
+
+    @Param({"Issue", "Transfer"})
+    public MetalFixtures.Shape shape;
+
+    @Param({"1", "10", "100"})
+    public int states;
+
+    private SerializationFactory factory;
+    private SerializationContext context;
+
+    private SignedTransaction signedTx;
+    private SerializedBytes<SignedTransaction> signedTxBytes;
+
+    @Setup
+    public void setup() {
+        MetalFixtures.inSerializationEnv(() -> {
+            factory = SerializationFactory.Companion.getDefaultFactory();
+            context = factory.getDefaultContext();
+            signedTx = new MetalFixtures().signed(shape, states);
+            return null;
+        });
+        signedTxBytes = SerializationAPIKt.serialize(signedTx, factory, context);
+
+        logger.info("{} of {} states: SignedTransaction {} bytes", shape, states, signedTxBytes.getSize());
+    }
+
+    @Benchmark
+    public SerializedBytes<SignedTransaction> serialize() {
+        return SerializationAPIKt.serialize(signedTx, factory, context);
+    }
+
+    @Benchmark
+    public SignedTransaction deserialize() {
+        return factory.deserialize(signedTxBytes, SignedTransaction.class, context);
+    }
+}
@@ -0,0 +1,116 @@
+package com.template;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One issuance or transfer of a bulk submission file. CSV lines hold the flow, metal, weight and party, in that
+ * order, quoting the party as its X.500 name has commas:
+ *
+ *   issue,Gold,10,"O=PartyA, L=London, C=GB"
+ *
+ * JSONL lines hold the same as an object:
+ *
+ *   {"flow": "transfer", "metal": "Gold", "weight": 10, "party": "O=PartyB, L=New York, C=US"}
+ *
+ * The party is the owner of an issuance and the new owner of a transfer.
+ */
+public class BulkLine {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final boolean issue;
+    private final String metal;
+    private final long weight;
+    private final String party;
+
+    private BulkLine(String flow, String metal, String weight, String party) {
+        if (flow.equalsIgnoreCase("issue"))
+            this.issue = true;
+        else if (flow.equalsIgnoreCase("transfer"))
+            this.issue = false;
+        else
+            throw new IllegalArgumentException("Unknown flow " + flow + ", expected issue or transfer");
+        if (metal.isEmpty() || party.isEmpty())
+            throw new IllegalArgumentException("Metal and party are required");
+        try {
+            this.weight = Long.parseLong(weight.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Weight " + weight + " is not a whole number");
+        }
+        this.metal = metal;
+        this.party = party;
+    }
+
+    /* Parses a CSV line, or returns null for a header line. */
+    public static BulkLine fromCsv(String text) {
+        List<String> fields = splitCsv(text);
+        if (fields.size() != 4)
+            throw new IllegalArgumentException("Expected flow,metal,weight,party but found " + fields.size() + " fields");
+        if (fields.get(0).equalsIgnoreCase("flow"))
+            return null;
+        return new BulkLine(fields.get(0), fields.get(1), fields.get(2), fields.get(3));
+    }
+
+    public static BulkLine fromJson(String text) {
+        JsonNode node;
+        try {
+            node = mapper.readTree(text);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Not a JSON object: " + e.getMessage());
+        }
+        if (node == null || !node.isObject())
+            throw new IllegalArgumentException("Not a JSON object");
+        return new BulkLine(node.path("flow").asText(), node.path("metal").asText(),
+                node.path("weight").asText(), node.path("party").asText());
+    }
+
+    private static List<String> splitCsv(String text) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted)
+            throw new IllegalArgumentException("Unterminated quote");
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    public boolean isIssue() {
+        return issue;
+    }
+
+    public String getMetal() {
+        return metal;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public String getParty() {
+        return party;
+    }
+}
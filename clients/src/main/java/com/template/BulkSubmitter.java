@@ -0,0 +1,228 @@
+package com.template;
+
+import com.template.flows.IssueMetalFlow;
+import com.template.flows.TransferMetalFlow;
+import net.corda.client.rpc.RPCException;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.core.transactions.SignedTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams a file of issuances and transfers (see BulkLine) through the node, keeping up to a window of flows in
+ * flight, so throughput is set by the node rather than by one RPC round trip per line. Files ending in .jsonl are
+ * read as JSON lines, anything else as CSV. Blank lines and lines starting with # are skipped.
+ *
+ * Every line gets records in an outcome file, as "line,status,detail", in the order they happen:
+ *
+ *   SUBMITTED  written before the flow is started
+ *   OK         the flow finished, with the transaction id
+ *   FAILED     the line could not be parsed or the flow failed, with the reason
+ *   UNKNOWN    the flow may or may not have run, as the connection was lost or the client stopped while it was in flight
+ *
+ * The outcome file is appended to, and a rerun over the same files resumes: lines with any record are not submitted
+ * again, and lines that were submitted without an outcome are recorded as UNKNOWN, to be checked against the vault,
+ * rather than risk issuing or transferring twice.
+ *
+ * The first lost connection stops the submission: the flows already in flight get their outcomes, and the lines not
+ * yet submitted are left without a record, for a rerun to pick up.
+ */
+public class BulkSubmitter {
+    private static final Logger logger = LoggerFactory.getLogger(BulkSubmitter.class);
+
+    // RPC starts block until the node accepts the flow, so a few threads keep the starts themselves pipelined.
+    private static final int MAX_STARTERS = 8;
+
+    public enum Status { SUBMITTED, OK, FAILED, UNKNOWN }
+
+    private final CordaRPCOps proxy;
+    private final int window;
+    private final Map<String, Party> parties = new ConcurrentHashMap<>();
+
+    public BulkSubmitter(CordaRPCOps proxy, int window) {
+        if (window < 1)
+            throw new IllegalArgumentException("Window must be positive");
+        this.proxy = proxy;
+        this.window = window;
+    }
+
+    /* Submits every line of the input without an outcome yet, and returns once all of them have one. */
+    public Map<Status, Integer> submit(Path input, Path outcomes) throws IOException, InterruptedException {
+        BitSet recorded = new BitSet();
+        BitSet finished = new BitSet();
+        readOutcomes(outcomes, recorded, finished);
+        boolean json = input.getFileName().toString().endsWith(".jsonl");
+
+        ExecutorService starters = Executors.newFixedThreadPool(Math.min(window, MAX_STARTERS));
+        Semaphore inFlight = new Semaphore(window);
+        try (OutcomeWriter writer = new OutcomeWriter(outcomes);
+             BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            for (int line = recorded.nextSetBit(0); line >= 0; line = recorded.nextSetBit(line + 1)) {
+                if (!finished.get(line))
+                    writer.write(line, Status.UNKNOWN, "submitted before the client stopped");
+            }
+
+            String text;
+            int line = 0;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                if (recorded.get(line) || text.trim().isEmpty() || text.startsWith("#"))
+                    continue;
+
+                BulkLine request;
+                try {
+                    request = json ? BulkLine.fromJson(text) : BulkLine.fromCsv(text);
+                } catch (IllegalArgumentException e) {
+                    writer.write(line, Status.FAILED, e.getMessage());
+                    continue;
+                }
+                if (request == null)
+                    continue;
+
+                inFlight.acquire();
+                if (writer.connectionLost()) {
+                    inFlight.release();
+                    logger.warn("Lost the connection to the node, stopping before line {}; run again to resume", line);
+                    break;
+                }
+                writer.write(line, Status.SUBMITTED, "");
+                int number = line;
+                starters.execute(() -> start(number, request, writer, inFlight));
+            }
+
+            //Every permit back means every flow has its outcome
+            inFlight.acquire(window);
+            return writer.counts();
+        } finally {
+            starters.shutdownNow();
+        }
+    }
+
+    private void start(int line, BulkLine request, OutcomeWriter writer, Semaphore inFlight) {
+        FlowHandle<SignedTransaction> handle;
+        try {
+            Party party = party(request.getParty());
+            handle = request.isIssue()
+                    ? proxy.startFlowDynamic(IssueMetalFlow.class, request.getMetal(), request.getWeight(), party)
+                    : proxy.startFlowDynamic(TransferMetalFlow.class, request.getMetal(), request.getWeight(), party);
+        } catch (RuntimeException e) {
+            try {
+                writer.failed(line, e);
+            } finally {
+                inFlight.release();
+            }
+            return;
+        }
+
+        handle.getReturnValue().toCompletableFuture().whenComplete((signedTx, error) -> {
+            try {
+                if (error == null)
+                    writer.write(line, Status.OK, signedTx.getId().toString());
+                else
+                    writer.failed(line, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private Party party(String name) {
+        Party party = parties.get(name);
+        if (party != null)
+            return party;
+        party = proxy.wellKnownPartyFromX500Name(CordaX500Name.parse(name));
+        if (party == null)
+            throw new IllegalArgumentException("Unknown party " + name);
+        parties.put(name, party);
+        return party;
+    }
+
+    private static void readOutcomes(Path outcomes, BitSet recorded, BitSet finished) throws IOException {
+        if (!Files.exists(outcomes))
+            return;
+        try (BufferedReader reader = Files.newBufferedReader(outcomes, StandardCharsets.UTF_8)) {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                String[] fields = text.split(",", 3);
+                if (fields.length < 2)
+                    continue;
+                int line;
+                try {
+                    line = Integer.parseInt(fields[0]);
+                } catch (NumberFormatException e) {
+                    // A record cut short when the client stopped.
+                    continue;
+                }
+                recorded.set(line);
+                if (!fields[1].equals(Status.SUBMITTED.name()))
+                    finished.set(line);
+            }
+        }
+    }
+
+    /** Appends records to the outcome file from any thread, flushing each so a stopped client loses none. */
+    private static class OutcomeWriter implements Closeable {
+        private final BufferedWriter writer;
+        private final Map<Status, Integer> counts = new EnumMap<>(Status.class);
+        private volatile boolean connectionLost = false;
+
+        OutcomeWriter(Path outcomes) throws IOException {
+            this.writer = Files.newBufferedWriter(outcomes, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        void failed(int line, Throwable error) {
+            // A lost connection says nothing about whether the node ran the flow.
+            if (error instanceof RPCException)
+                connectionLost = true;
+            write(line, error instanceof RPCException ? Status.UNKNOWN : Status.FAILED, String.valueOf(error.getMessage()));
+        }
+
+        boolean connectionLost() {
+            return connectionLost;
+        }
+
+        synchronized void write(int line, Status status, String detail) {
+            counts.merge(status, 1, Integer::sum);
+            try {
+                writer.write(line + "," + status + "," + detail.replace('\n', ' ').replace('\r', ' '));
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (status == Status.FAILED || status == Status.UNKNOWN)
+                logger.warn("Line {}: {} {}", line, status, detail);
+        }
+
+        synchronized Map<Status, Integer> counts() {
+            return new EnumMap<>(counts);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+}
@@ -9,21 +9,29 @@ import net.corda.core.utilities.NetworkHostAndPort;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
 
 import static net.corda.core.utilities.NetworkHostAndPort.parse;
 
 /**
  * Connects to a Corda node via RPC and performs RPC operations on the node.
  *
- * The RPC connection is configured using command line arguments.
+ * The RPC connection is configured using command line arguments. Given an input file as well, the client submits
+ * the issuances and transfers in it instead (see BulkSubmitter), writing their outcomes next to the input unless
+ * told otherwise, with up to a window of flows in flight (default 64).
  */
 public class Client {
     private static final Logger logger = LoggerFactory.getLogger(Client.class);
 
-    public static void main(String[] args) {
+    private static final int DEFAULT_WINDOW = 64;
+
+    public static void main(String[] args) throws Exception {
         // Create an RPC connection to the node.
-        if (args.length != 3) throw new IllegalArgumentException("Usage: Client <node address> <rpc username> <rpc password>");
+        if (args.length < 3 || args.length > 6)
+            throw new IllegalArgumentException("Usage: Client <node address> <rpc username> <rpc password> [<input file> [<outcome file> [<window>]]]");
         final NetworkHostAndPort nodeAddress = parse(args[0]);
         final String rpcUsername = args[1];
         final String rpcPassword = args[2];
@@ -31,6 +39,19 @@ public class Client {
         final CordaRPCConnection clientConnection = client.start(rpcUsername, rpcPassword);
         final CordaRPCOps proxy = clientConnection.getProxy();
 
+        if (args.length > 3) {
+            final Path input = Paths.get(args[3]);
+            final Path outcomes = args.length > 4 ? Paths.get(args[4]) : Paths.get(args[3] + ".outcomes");
+            final int window = args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_WINDOW;
+            try {
+                Map<BulkSubmitter.Status, Integer> counts = new BulkSubmitter(proxy, window).submit(input, outcomes);
+                logger.info("Submitted {}, outcomes in {}: {}", input, outcomes, counts);
+            } finally {
+                clientConnection.close();
+            }
+            return;
+        }
+
         // Interact with the node.
         // Example #1, here we print the nodes on the network.
         final List<NodeInfo> nodes = proxy.networkMapSnapshot();
@@ -0,0 +1,132 @@
+package com.template.export;
+
+import com.template.states.MetalStateV2;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.*;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Exports the history of a node's MetalStates over RPC into a directory of columnar segments (see
+ * MetalHistoryWriter), for reports to scan with MetalHistoryReader instead of querying the node.
+ *
+ * Each run exports what the vault recorded or consumed since the end of the last segment, up to the node's clock
+ * less a safety margin, so that states still being committed when the run starts fall in the next run instead of
+ * being missed. Windows do not overlap, so no event is exported twice. A segment is written under a temporary name
+ * and moved into place once complete, and its window end is the cursor, so a run that fails leaves at most a
+ * .partial file, which readers ignore, and the next run simply covers its window.
+ */
+public class MetalHistoryExporter {
+    private static final Logger logger = LoggerFactory.getLogger(MetalHistoryExporter.class);
+
+    private static final int PAGE_SIZE = 1000;
+    private static final Duration MARGIN = Duration.ofMinutes(1);
+
+    private final CordaRPCOps proxy;
+    private final Path directory;
+    private final Map<PublicKey, String> names = new HashMap<>();
+
+    public MetalHistoryExporter(CordaRPCOps proxy, Path directory) {
+        this.proxy = proxy;
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) throw new IllegalArgumentException("Usage: MetalHistoryExporter <node address> <rpc username> <rpc password> <export directory>");
+        CordaRPCConnection connection = new CordaRPCClient(NetworkHostAndPort.parse(args[0])).start(args[1], args[2]);
+        try {
+            new MetalHistoryExporter(connection.getProxy(), Paths.get(args[3])).export();
+        } finally {
+            connection.close();
+        }
+    }
+
+    /* Exports everything changed since the last run and returns the number of rows written. */
+    public long export() throws IOException {
+        Files.createDirectories(directory);
+        Instant exported = MetalHistoryReader.exportedUntil(directory);
+        Instant from = exported != null ? exported : Instant.EPOCH;
+        Instant until = proxy.currentNodeTime().minus(MARGIN).truncatedTo(ChronoUnit.MICROS);
+        if (!until.isAfter(from))
+            return 0;
+
+        Path segment = directory.resolve(MetalHistoryReader.segmentName(until));
+        Path partial = directory.resolve(segment.getFileName() + ".partial");
+        Files.deleteIfExists(partial);
+
+        long rows;
+        try (MetalHistoryWriter writer = new MetalHistoryWriter(partial, from, until)) {
+            exportWindow(writer, QueryCriteria.TimeInstantType.RECORDED, Sort.VaultStateAttribute.RECORDED_TIME, from, until);
+            exportWindow(writer, QueryCriteria.TimeInstantType.CONSUMED, Sort.VaultStateAttribute.CONSUMED_TIME, from, until);
+            rows = writer.getRows();
+        }
+
+        // An empty window leaves the cursor where it was, so the next run covers it again instead of adding a segment.
+        if (rows == 0) {
+            Files.delete(partial);
+        } else {
+            Files.move(partial, segment, StandardCopyOption.ATOMIC_MOVE);
+        }
+        logger.info("Exported {} rows of metal history from {} to {}", rows, from, until);
+        return rows;
+    }
+
+    /* Writes a row for every state recorded, or consumed, in [from, until), a page at a time in time order. */
+    private void exportWindow(MetalHistoryWriter writer, QueryCriteria.TimeInstantType event, Sort.VaultStateAttribute order,
+                              Instant from, Instant until) throws IOException {
+        Vault.StateStatus status = event == QueryCriteria.TimeInstantType.CONSUMED ? Vault.StateStatus.CONSUMED : Vault.StateStatus.ALL;
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(status)
+                .withTimeCondition(new QueryCriteria.TimeCondition(event, Builder.INSTANCE.greaterThanOrEqual(from)))
+                .and(new QueryCriteria.VaultQueryCriteria(status)
+                        .withTimeCondition(new QueryCriteria.TimeCondition(event, Builder.INSTANCE.lessThan(until))));
+        // States sharing a timestamp are ordered by reference, so no page boundary can skip or repeat one of them.
+        Sort sort = new Sort(Arrays.asList(
+                new Sort.SortColumn(new SortAttribute.Standard(order), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF), Sort.Direction.ASC)));
+
+        for (int pageNumber = DEFAULT_PAGE_NUM; ; pageNumber++) {
+            Vault.Page<MetalStateV2> page = proxy.vaultQueryBy(criteria, new PageSpecification(pageNumber, PAGE_SIZE), sort, MetalStateV2.class);
+            for (int i = 0; i < page.getStates().size(); i++) {
+                Vault.StateMetadata metadata = page.getStatesMetadata().get(i);
+                MetalStateV2 metalState = page.getStates().get(i).getState().getData();
+                // A recorded row is written as unconsumed even if the state has since been spent: that is its own row.
+                Instant consumedTime = event == QueryCriteria.TimeInstantType.CONSUMED ? metadata.getConsumedTime() : null;
+                writer.add(page.getStates().get(i), nameOf(metalState.getIssuer()), nameOf(metalState.getOwner()),
+                        metadata.getRecordedTime(), consumedTime);
+            }
+            if (page.getStates().size() < PAGE_SIZE)
+                break;
+        }
+    }
+
+    /* MetalStates refer to parties by key, so each key is resolved on the node once per run. */
+    private String nameOf(AbstractParty party) {
+        if (party instanceof Party)
+            return ((Party) party).getName().toString();
+        return names.computeIfAbsent(party.getOwningKey(), key -> {
+            Party wellKnown = proxy.wellKnownPartyFromAnonymous(party);
+            return wellKnown != null ? wellKnown.getName().toString() : party.toString();
+        });
+    }
+}
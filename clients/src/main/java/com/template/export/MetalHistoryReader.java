@@ -0,0 +1,251 @@
+package com.template.export;
+
+import com.template.export.MetalHistoryWriter.Column;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Scans the metal history segments MetalHistoryExporter wrote to a directory, oldest first, without a node.
+ *
+ * Segments are memory-mapped, so the operating system pages them in as the scan reaches them, and each row group
+ * inflates a column only when it is first read, so a report pays for the columns it uses and nothing else.
+ *
+ * Run on its own, it logs the current balance per owner and metal, as a report over the whole history would.
+ */
+public class MetalHistoryReader {
+    private static final Logger logger = LoggerFactory.getLogger(MetalHistoryReader.class);
+
+    static final String SEGMENT_SUFFIX = ".mhseg";
+
+    private final Path directory;
+
+    public MetalHistoryReader(Path directory) {
+        this.directory = directory;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) throw new IllegalArgumentException("Usage: MetalHistoryReader <export directory>");
+
+        Map<String, Map<String, Long>> balances = new TreeMap<>();
+        long rows = new MetalHistoryReader(Paths.get(args[0])).scan(group -> {
+            for (int row = 0; row < group.size(); row++) {
+                long weight = group.isConsumed(row) ? -group.weight(row) : group.weight(row);
+                balances.computeIfAbsent(group.owner(row), owner -> new TreeMap<>()).merge(group.metal(row), weight, Long::sum);
+            }
+        });
+
+        logger.info("Balances from {} rows of metal history:", rows);
+        balances.forEach((owner, byMetal) -> byMetal.forEach((metal, weight) -> {
+            if (weight != 0)
+                logger.info("{}\t{}\t{}", owner, metal, weight);
+        }));
+    }
+
+    /* Hands every row group to the visitor, in export order, and returns the number of rows. */
+    public long scan(Consumer<RowGroup> visitor) throws IOException {
+        long rows = 0;
+        for (Path segment : segments(directory)) {
+            MappedByteBuffer buffer = map(segment);
+            Header header = new Header(buffer, segment);
+            String[] dictionary = readDictionary(buffer, header.dictionaryOffset);
+
+            int position = MetalHistoryWriter.HEADER_BYTES;
+            for (int group = 0; group < header.rowGroups; group++) {
+                RowGroup rowGroup = new RowGroup(buffer, position, dictionary, header.fromMicros);
+                visitor.accept(rowGroup);
+                rows += rowGroup.size();
+                position = rowGroup.end;
+            }
+        }
+        return rows;
+    }
+
+    /* The end of the vault time window the directory covers, or null if nothing has been exported to it. */
+    public static Instant exportedUntil(Path directory) throws IOException {
+        List<Path> segments = segments(directory);
+        if (segments.isEmpty())
+            return null;
+        Path last = segments.get(segments.size() - 1);
+        return instant(new Header(map(last), last).untilMicros);
+    }
+
+    /* Segments are named after the end of their window, zero padded, so name order is time order. */
+    static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory))
+            return segments;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            entries.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    static String segmentName(Instant until) {
+        return String.format("%020d%s", MetalHistoryWriter.micros(until), SEGMENT_SUFFIX);
+    }
+
+    private static MappedByteBuffer map(Path segment) throws IOException {
+        // The mapping stays valid once the channel is closed.
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static String[] readDictionary(ByteBuffer buffer, long offset) {
+        ByteBuffer in = buffer.duplicate();
+        in.position((int) offset);
+        String[] dictionary = new String[in.getInt()];
+        for (int i = 0; i < dictionary.length; i++) {
+            byte[] utf = new byte[in.getShort() & 0xFFFF];
+            in.get(utf);
+            // writeUTF's modified UTF-8 only differs from UTF-8 for NUL and supplementary characters.
+            dictionary[i] = new String(utf, StandardCharsets.UTF_8);
+        }
+        return dictionary;
+    }
+
+    private static Instant instant(long micros) {
+        return Instant.EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    private static class Header {
+        private final long fromMicros;
+        private final long untilMicros;
+        private final int rowGroups;
+        private final long dictionaryOffset;
+
+        Header(ByteBuffer buffer, Path segment) throws IOException {
+            ByteBuffer in = buffer.duplicate();
+            if (in.remaining() < MetalHistoryWriter.HEADER_BYTES || in.getInt() != MetalHistoryWriter.MAGIC)
+                throw new IOException(segment + " is not a metal history segment");
+            this.fromMicros = in.getLong();
+            this.untilMicros = in.getLong();
+            in.getLong();
+            this.rowGroups = in.getInt();
+            this.dictionaryOffset = in.getLong();
+        }
+    }
+
+    /** Up to 65536 rows of one segment, read a column at a time. */
+    public static class RowGroup {
+        private final ByteBuffer buffer;
+        private final String[] dictionary;
+        private final long fromMicros;
+        private final int rows;
+        private final int[] offsets = new int[Column.values().length];
+        private final int[] lengths = new int[Column.values().length];
+        private final ByteBuffer[] inflated = new ByteBuffer[Column.values().length];
+        private final int end;
+
+        RowGroup(ByteBuffer buffer, int position, String[] dictionary, long fromMicros) {
+            this.buffer = buffer;
+            this.dictionary = dictionary;
+            this.fromMicros = fromMicros;
+            this.rows = buffer.getInt(position);
+            position += 4;
+            for (Column column : Column.values()) {
+                lengths[column.ordinal()] = buffer.getInt(position);
+                offsets[column.ordinal()] = position + 4;
+                position += 4 + lengths[column.ordinal()];
+            }
+            this.end = position;
+        }
+
+        public int size() {
+            return rows;
+        }
+
+        public StateRef ref(int row) {
+            byte[] hash = new byte[Column.TX_HASH.width];
+            ByteBuffer txHashes = column(Column.TX_HASH).duplicate();
+            txHashes.position(row * Column.TX_HASH.width);
+            txHashes.get(hash);
+            return new StateRef(new SecureHash.SHA256(hash), column(Column.OUTPUT_INDEX).getInt(row * 4));
+        }
+
+        public String metal(int row) {
+            return dictionary[column(Column.METAL).getInt(row * 4)];
+        }
+
+        public long weight(int row) {
+            return column(Column.WEIGHT).getLong(row * 8);
+        }
+
+        public String issuer(int row) {
+            return dictionary[column(Column.ISSUER).getInt(row * 4)];
+        }
+
+        public String owner(int row) {
+            return dictionary[column(Column.OWNER).getInt(row * 4)];
+        }
+
+        /* Whether the row records the state being consumed rather than recorded. */
+        public boolean isConsumed(int row) {
+            return column(Column.STATUS).get(row) == MetalHistoryWriter.CONSUMED;
+        }
+
+        public Instant recordedTime(int row) {
+            return instant(fromMicros + column(Column.RECORDED_TIME).getLong(row * 8));
+        }
+
+        public Instant consumedTime(int row) {
+            long micros = column(Column.CONSUMED_TIME).getLong(row * 8);
+            return micros < 0 ? null : instant(fromMicros + micros);
+        }
+
+        private ByteBuffer column(Column column) {
+            ByteBuffer data = inflated[column.ordinal()];
+            if (data == null) {
+                byte[] compressed = new byte[lengths[column.ordinal()]];
+                ByteBuffer source = buffer.duplicate();
+                source.position(offsets[column.ordinal()]);
+                source.get(compressed);
+
+                byte[] raw = new byte[rows * column.width];
+                Inflater inflater = new Inflater();
+                try {
+                    inflater.setInput(compressed);
+                    int read = 0;
+                    while (read < raw.length && !inflater.finished()) {
+                        int inflatedBytes = inflater.inflate(raw, read, raw.length - read);
+                        if (inflatedBytes == 0 && inflater.needsInput())
+                            throw new DataFormatException("truncated");
+                        read += inflatedBytes;
+                    }
+                } catch (DataFormatException e) {
+                    throw new UncheckedIOException(new IOException("Corrupt " + column + " column", e));
+                } finally {
+                    inflater.end();
+                }
+                data = ByteBuffer.wrap(raw);
+                inflated[column.ordinal()] = data;
+            }
+            return data;
+        }
+    }
+}
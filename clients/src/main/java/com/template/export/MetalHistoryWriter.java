@@ -0,0 +1,157 @@
+package com.template.export;
+
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.StateAndRef;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes one segment of metal history: the MetalStates recorded or consumed in a window of vault time.
+ *
+ * A segment is a 40 byte header (magic, window start and end in epoch microseconds, row count, row group count and
+ * dictionary offset), then row groups of up to 65536 rows, then the dictionary of the metal codes and party names
+ * the rows refer to. A row group is its row count followed by each column in Column order, deflated on its own so a
+ * reader only inflates the columns it uses. Inflated, every column is fixed width: names are dictionary ids, and
+ * times are microseconds from the window start, -1 when there is none.
+ *
+ * Each row is an event. A state recorded in the window has an UNCONSUMED row, and a state consumed in the window a
+ * CONSUMED row as well, carrying the same weight, so summing UNCONSUMED weights less CONSUMED ones gives balances.
+ */
+public class MetalHistoryWriter implements Closeable {
+    static final int MAGIC = 0x4D484331;
+    static final int HEADER_BYTES = 40;
+    static final int ROW_GROUP_SIZE = 65536;
+
+    static final byte UNCONSUMED = 0;
+    static final byte CONSUMED = 1;
+
+    enum Column {
+        TX_HASH(32), OUTPUT_INDEX(4), METAL(4), WEIGHT(8), ISSUER(4), OWNER(4), STATUS(1), RECORDED_TIME(8), CONSUMED_TIME(8);
+
+        final int width;
+
+        Column(int width) {
+            this.width = width;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long fromMicros;
+    private final long untilMicros;
+    private final ByteBuffer[] columns = new ByteBuffer[Column.values().length];
+    private final Map<String, Integer> dictionary = new LinkedHashMap<>();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private int groupRows;
+    private long rows;
+    private int rowGroups;
+
+    public MetalHistoryWriter(Path segment, Instant from, Instant until) throws IOException {
+        this.channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.fromMicros = micros(from);
+        this.untilMicros = micros(until);
+        for (Column column : Column.values()) {
+            columns[column.ordinal()] = ByteBuffer.allocate(ROW_GROUP_SIZE * column.width);
+        }
+        channel.position(HEADER_BYTES);
+    }
+
+    /* Adds a row; the party names are as the caller resolved them. A null consumed time makes an UNCONSUMED row. */
+    public void add(StateAndRef<MetalStateV2> stateAndRef, String issuer, String owner, Instant recordedTime, Instant consumedTime) throws IOException {
+        MetalStateV2 metalState = stateAndRef.getState().getData();
+        columns[Column.TX_HASH.ordinal()].put(stateAndRef.getRef().getTxhash().getBytes());
+        columns[Column.OUTPUT_INDEX.ordinal()].putInt(stateAndRef.getRef().getIndex());
+        columns[Column.METAL.ordinal()].putInt(id(metalState.getMetalCode()));
+        columns[Column.WEIGHT.ordinal()].putLong(metalState.getWeight());
+        columns[Column.ISSUER.ordinal()].putInt(id(issuer));
+        columns[Column.OWNER.ordinal()].putInt(id(owner));
+        columns[Column.STATUS.ordinal()].put(consumedTime == null ? UNCONSUMED : CONSUMED);
+        columns[Column.RECORDED_TIME.ordinal()].putLong(micros(recordedTime) - fromMicros);
+        columns[Column.CONSUMED_TIME.ordinal()].putLong(consumedTime == null ? -1 : micros(consumedTime) - fromMicros);
+
+        rows++;
+        if (++groupRows == ROW_GROUP_SIZE)
+            flushGroup();
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (groupRows > 0)
+                flushGroup();
+
+            long dictionaryOffset = channel.position();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(dictionary.size());
+                for (String entry : dictionary.keySet()) {
+                    out.writeUTF(entry);
+                }
+            }
+            write(ByteBuffer.wrap(bytes.toByteArray()));
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putLong(fromMicros).putLong(untilMicros).putLong(rows).putInt(rowGroups).putLong(dictionaryOffset);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } finally {
+            deflater.end();
+            channel.close();
+        }
+    }
+
+    private void flushGroup() throws IOException {
+        write((ByteBuffer) ByteBuffer.allocate(4).putInt(groupRows).flip());
+        for (ByteBuffer column : columns) {
+            byte[] compressed = deflate(column.array(), column.position());
+            write((ByteBuffer) ByteBuffer.allocate(4).putInt(compressed.length).flip());
+            write(ByteBuffer.wrap(compressed));
+            column.clear();
+        }
+        groupRows = 0;
+        rowGroups++;
+    }
+
+    private byte[] deflate(byte[] raw, int length) {
+        deflater.reset();
+        deflater.setInput(raw, 0, length);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(length / 4, 64));
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            int written = deflater.deflate(chunk);
+            out.write(chunk, 0, written);
+        }
+        return out.toByteArray();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private int id(String entry) {
+        return dictionary.computeIfAbsent(entry, key -> dictionary.size());
+    }
+
+    static long micros(Instant instant) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, instant);
+    }
+}
@@ -1,27 +1,118 @@
 package com.template.webserver;
 
-import net.corda.core.messaging.CordaRPCOps;
+import com.template.flows.IssueMetalFlow;
+import com.template.flows.MetalBalance;
+import com.template.flows.TransferMetalFlow;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.core.transactions.SignedTransaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Define your API endpoints here.
+ *
+ * The flow endpoints return as soon as the flow has been started: the servlet thread is released and the response
+ * is completed from the flow's return value once the transaction has been finalised. The query endpoints are served
+ * from the webserver's HoldingsReplica rather than the node's vault.
  */
 @RestController
 @RequestMapping("/") // The paths for HTTP requests are relative to this base path.
 public class Controller {
-    private final CordaRPCOps proxy;
+    private final NodeRPCConnection rpc;
+    private final HoldingsReplica replica;
+    private final MetalCatalogues catalogues;
     private final static Logger logger = LoggerFactory.getLogger(Controller.class);
 
-    public Controller(NodeRPCConnection rpc) {
-        this.proxy = rpc.proxy;
+    public Controller(NodeRPCConnection rpc, HoldingsReplica replica, MetalCatalogues catalogues) {
+        this.rpc = rpc;
+        this.replica = replica;
+        this.catalogues = catalogues;
     }
 
     @GetMapping(value = "/templateendpoint", produces = "text/plain")
     private String templateendpoint() {
         return "Define an endpoint here.";
     }
-}
\ No newline at end of file
+
+    @PostMapping(value = "/issue", produces = "text/plain")
+    public CompletableFuture<ResponseEntity<String>> issue(@RequestParam("metalName") String metalName,
+                                                           @RequestParam("weight") long weight,
+                                                           @RequestParam("owner") String owner) {
+        Party ownerParty = partyFromName(owner);
+        if (ownerParty == null)
+            return CompletableFuture.completedFuture(unknownParty(owner));
+
+        return transactionId(rpc.withProxy(proxy -> proxy.startFlowDynamic(IssueMetalFlow.class, metalName, weight, ownerParty)));
+    }
+
+    @PostMapping(value = "/transfer", produces = "text/plain")
+    public CompletableFuture<ResponseEntity<String>> transfer(@RequestParam("metalName") String metalName,
+                                                              @RequestParam("weight") long weight,
+                                                              @RequestParam("newOwner") String newOwner) {
+        Party newOwnerParty = partyFromName(newOwner);
+        if (newOwnerParty == null)
+            return CompletableFuture.completedFuture(unknownParty(newOwner));
+
+        return transactionId(rpc.withProxy(proxy -> proxy.startFlowDynamic(TransferMetalFlow.class, metalName, weight, newOwnerParty)));
+    }
+
+    @GetMapping(value = "/holdings", produces = "application/json")
+    public List<ReplicaHolding> holdings(@RequestParam(value = "owner", required = false) String owner,
+                                         @RequestParam(value = "metalName", required = false) String metalName) throws SQLException {
+        return replica.holdings(owner, metalName == null ? null : catalogues.codesFor(metalName));
+    }
+
+    @GetMapping(value = "/balances", produces = "application/json")
+    public List<MetalBalance> balances(@RequestParam(value = "owner", required = false) String owner) throws SQLException {
+        return replica.balances(owner);
+    }
+
+    @GetMapping(value = "/history", produces = "application/json")
+    public List<ReplicaHolding> history(@RequestParam("owner") String owner,
+                                        @RequestParam(value = "limit", defaultValue = "100") int limit) throws SQLException {
+        return replica.history(owner, limit);
+    }
+
+    /* Completes with the id of the finalised transaction, or the flow's error. */
+    private CompletableFuture<ResponseEntity<String>> transactionId(FlowHandle<SignedTransaction> flowHandle) {
+        return flowHandle.getReturnValue().toCompletableFuture().handle((signedTx, error) -> {
+            if (error != null) {
+                logger.warn("Flow {} failed", flowHandle.getId(), error);
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(error.getMessage());
+            }
+            return ResponseEntity.status(HttpStatus.CREATED).body(signedTx.getId().toString());
+        });
+    }
+
+    private Party partyFromName(String name) {
+        try {
+            CordaX500Name x500Name = CordaX500Name.parse(name);
+            return rpc.withProxy(proxy -> proxy.wellKnownPartyFromX500Name(x500Name));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @ExceptionHandler(NodeRPCConnection.RpcUnavailableException.class)
+    public ResponseEntity<String> rpcUnavailable(NodeRPCConnection.RpcUnavailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badArgument(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    private static ResponseEntity<String> unknownParty(String name) {
+        return ResponseEntity.badRequest().body("Unknown party " + name);
+    }
+}
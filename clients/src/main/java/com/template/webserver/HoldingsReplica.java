@@ -0,0 +1,342 @@
+package com.template.webserver;
+
+import com.template.flows.MetalBalance;
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import rx.Subscription;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * A read replica of the node's MetalStates, kept in an embedded H2 database next to the webserver so that read
+ * traffic never reaches the node's vault.
+ *
+ * Every write happens on one worker thread. On start the worker subscribes to the node's vault updates and then
+ * catches up with everything recorded or consumed since its stored cursor, a page at a time; updates that arrive
+ * meanwhile queue up behind the catch-up. A state can still be applied by both, the later possibly from an older
+ * view of it, so a consumed time once stored is never cleared and a spent state cannot come back.
+ *
+ * Every change is stored with the times the node recorded and consumed it, and the cursor is moved forward
+ * periodically to the latest time the replica has applied, less a safety margin for transactions that were still
+ * committing, so a restart only re-reads the last few minutes instead of the whole vault. When the update feed
+ * fails, or the RPC connection comes back after losing the node, the worker subscribes again and catches up from
+ * the cursor, which does not move until it has.
+ */
+@Component
+public class HoldingsReplica {
+    private final static Logger logger = LoggerFactory.getLogger(HoldingsReplica.class);
+
+    private static final int PAGE_SIZE = 500;
+    private static final Duration CURSOR_MARGIN = Duration.ofMinutes(1);
+
+    // Where the replica's database is kept.
+    @Value("${config.replica.path:./replica/holdings}")
+    private String path;
+    // How often the cursor is stored.
+    @Value("${config.replica.cursorSeconds:60}")
+    private long cursorSeconds;
+
+    private final NodeRPCConnection rpc;
+    private final PartyNames partyNames;
+    private Connection connection;
+    private Subscription subscription;
+    // Applies live updates, in order, and moves the cursor.
+    private ScheduledExecutorService worker;
+    // The latest time recorded or consumed among the changes applied, or null before the first.
+    private Instant appliedThrough;
+    // Set when the feed may have missed changes, until the replica has subscribed again and caught up.
+    private final AtomicBoolean stale = new AtomicBoolean(false);
+
+    public HoldingsReplica(NodeRPCConnection rpc, PartyNames partyNames) {
+        this.rpc = rpc;
+        this.partyNames = partyNames;
+    }
+
+    @PostConstruct
+    public void start() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:file:" + path);
+        try (Statement statement = connection.createStatement()) {
+            // A replica written before metal codes still has a metal_name column: drop it, and its cursor, so it is
+            // re-seeded from the whole vault.
+            if (hasColumn("METAL_HOLDINGS", "METAL_NAME")) {
+                logger.info("Rebuilding the holdings replica, which predates metal codes");
+                statement.execute("DROP TABLE metal_holdings");
+                statement.execute("DROP TABLE IF EXISTS replica_cursor");
+            }
+            statement.execute("CREATE TABLE IF NOT EXISTS metal_holdings (" +
+                    "ref VARCHAR(80) PRIMARY KEY, metal_code VARCHAR(16) NOT NULL, weight BIGINT NOT NULL, " +
+                    "issuer VARCHAR(255) NOT NULL, owner VARCHAR(255) NOT NULL, " +
+                    "recorded_time TIMESTAMP NOT NULL, consumed_time TIMESTAMP)");
+            statement.execute("CREATE INDEX IF NOT EXISTS metal_holdings_owner_idx ON metal_holdings (owner, consumed_time)");
+            statement.execute("CREATE INDEX IF NOT EXISTS metal_holdings_metal_idx ON metal_holdings (metal_code, consumed_time)");
+            statement.execute("CREATE TABLE IF NOT EXISTS replica_cursor (id INT PRIMARY KEY, recorded_after TIMESTAMP NOT NULL)");
+        }
+
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The first catch-up runs on the worker, like every later one, ahead of any update it queues.
+        stale.set(true);
+        worker.execute(this::tick);
+
+        rpc.addReconnectListener(this::resync);
+        worker.scheduleWithFixedDelay(this::tick, cursorSeconds, cursorSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws SQLException {
+        if (worker != null)
+            worker.shutdownNow();
+        if (subscription != null)
+            subscription.unsubscribe();
+        if (connection != null)
+            connection.close();
+    }
+
+    /* Unconsumed holdings, optionally for one owner and/or any of the given metal codes. */
+    public synchronized List<ReplicaHolding> holdings(String owner, Collection<String> metalCodes) throws SQLException {
+        String sql = "SELECT * FROM metal_holdings WHERE consumed_time IS NULL" +
+                (owner != null ? " AND owner = ?" : "") +
+                (metalCodes != null ? " AND metal_code IN (" + String.join(", ", Collections.nCopies(metalCodes.size(), "?")) + ")" : "") +
+                " ORDER BY recorded_time";
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (owner != null) query.setString(index++, owner);
+            if (metalCodes != null) {
+                for (String metalCode : metalCodes) {
+                    query.setString(index++, metalCode);
+                }
+            }
+            return readHoldings(query);
+        }
+    }
+
+    /* The total unconsumed weight per owner and metal, optionally for one owner. */
+    public synchronized List<MetalBalance> balances(String owner) throws SQLException {
+        String sql = "SELECT owner, metal_code, SUM(weight) FROM metal_holdings WHERE consumed_time IS NULL" +
+                (owner != null ? " AND owner = ?" : "") +
+                " GROUP BY owner, metal_code ORDER BY owner, metal_code";
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            if (owner != null) query.setString(1, owner);
+            List<MetalBalance> balances = new ArrayList<>();
+            try (ResultSet rows = query.executeQuery()) {
+                while (rows.next()) {
+                    balances.add(new MetalBalance(rows.getString(1), rows.getString(2), rows.getLong(3)));
+                }
+            }
+            return balances;
+        }
+    }
+
+    /* Every holding an owner has had, consumed or not, most recent first. */
+    public synchronized List<ReplicaHolding> history(String owner, int limit) throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT * FROM metal_holdings WHERE owner = ? ORDER BY recorded_time DESC LIMIT ?")) {
+            query.setString(1, owner);
+            query.setInt(2, limit);
+            return readHoldings(query);
+        }
+    }
+
+    /* Subscribes to the vault updates, dropping any earlier subscription, then catches up from the stored cursor. */
+    private void subscribeAndCatchUp() throws SQLException {
+        if (subscription != null)
+            subscription.unsubscribe();
+
+        // Subscribe before catching up, so nothing recorded in between is missed.
+        QueryCriteria everything = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL);
+        subscription = rpc.withProxy(proxy -> proxy.vaultTrackByWithPagingSpec(MetalStateV2.class, everything, new PageSpecification(DEFAULT_PAGE_NUM, 1)))
+                .getUpdates()
+                .subscribe(update -> worker.execute(() -> apply(update)), error -> {
+                    logger.error("Vault update feed failed", error);
+                    resync();
+                });
+
+        catchUp(readCursor());
+    }
+
+    private void catchUp(Instant cursor) throws SQLException {
+        QueryCriteria recorded = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL);
+        QueryCriteria consumed = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED);
+        if (cursor != null) {
+            recorded = ((QueryCriteria.VaultQueryCriteria) recorded).withTimeCondition(
+                    new QueryCriteria.TimeCondition(QueryCriteria.TimeInstantType.RECORDED, Builder.INSTANCE.greaterThanOrEqual(cursor)));
+            consumed = ((QueryCriteria.VaultQueryCriteria) consumed).withTimeCondition(
+                    new QueryCriteria.TimeCondition(QueryCriteria.TimeInstantType.CONSUMED, Builder.INSTANCE.greaterThanOrEqual(cursor)));
+        }
+
+        int states = catchUp(recorded, Sort.VaultStateAttribute.RECORDED_TIME) + catchUp(consumed, Sort.VaultStateAttribute.CONSUMED_TIME);
+        logger.info("Holdings replica caught up with {} states changed since {}", states, cursor);
+    }
+
+    /* Applies every state the criteria match, a page at a time in time order. States sharing a time are ordered by
+     * reference, so no page boundary can skip or repeat one of them. */
+    private int catchUp(QueryCriteria criteria, Sort.VaultStateAttribute order) throws SQLException {
+        Sort byTime = new Sort(Arrays.asList(
+                new Sort.SortColumn(new SortAttribute.Standard(order), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF), Sort.Direction.ASC)));
+
+        int states = 0;
+        for (int pageNumber = DEFAULT_PAGE_NUM; ; pageNumber++) {
+            PageSpecification paging = new PageSpecification(pageNumber, PAGE_SIZE);
+            Vault.Page<MetalStateV2> page = rpc.withProxy(proxy -> proxy.vaultQueryBy(criteria, paging, byTime, MetalStateV2.class));
+            applyPage(page);
+            states += page.getStates().size();
+            if (page.getStates().size() < PAGE_SIZE)
+                return states;
+        }
+    }
+
+    /* Applies a live update with the times the node recorded and consumed its states, read back from the vault. */
+    private void apply(Vault.Update<MetalStateV2> update) {
+        if (stale.get())
+            return;
+
+        List<StateRef> refs = new ArrayList<>();
+        for (StateAndRef<MetalStateV2> produced : update.getProduced()) {
+            refs.add(produced.getRef());
+        }
+        for (StateAndRef<MetalStateV2> consumed : update.getConsumed()) {
+            refs.add(consumed.getRef());
+        }
+        if (refs.isEmpty())
+            return;
+
+        try {
+            QueryCriteria changed = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL).withStateRefs(refs);
+            PageSpecification paging = new PageSpecification(DEFAULT_PAGE_NUM, refs.size());
+            applyPage(rpc.withProxy(proxy -> proxy.vaultQueryBy(changed, paging, new Sort(Collections.emptyList()), MetalStateV2.class)));
+        } catch (RuntimeException | SQLException e) {
+            logger.error("Could not apply vault update to the holdings replica", e);
+            resync();
+        }
+    }
+
+    private synchronized void applyPage(Vault.Page<MetalStateV2> page) throws SQLException {
+        for (int i = 0; i < page.getStates().size(); i++) {
+            Vault.StateMetadata metadata = page.getStatesMetadata().get(i);
+            upsert(page.getStates().get(i), metadata.getRecordedTime(), metadata.getConsumedTime());
+            Instant changedAt = metadata.getConsumedTime() != null ? metadata.getConsumedTime() : metadata.getRecordedTime();
+            if (appliedThrough == null || changedAt.isAfter(appliedThrough))
+                appliedThrough = changedAt;
+        }
+    }
+
+    /* Adds the state, or sets its consumed time if it is already held and not yet consumed. */
+    private synchronized void upsert(StateAndRef<MetalStateV2> stateAndRef, Instant recordedTime, Instant consumedTime) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE metal_holdings SET consumed_time = COALESCE(consumed_time, ?) WHERE ref = ?")) {
+            statement.setTimestamp(1, consumedTime == null ? null : Timestamp.from(consumedTime));
+            statement.setString(2, stateAndRef.getRef().toString());
+            if (statement.executeUpdate() > 0)
+                return;
+        }
+
+        MetalStateV2 metalState = stateAndRef.getState().getData();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO metal_holdings (ref, metal_code, weight, issuer, owner, recorded_time, consumed_time) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            statement.setString(1, stateAndRef.getRef().toString());
+            statement.setString(2, metalState.getMetalCode());
+            statement.setLong(3, metalState.getWeight());
+            statement.setString(4, partyNames.nameOf(metalState.getIssuer()));
+            statement.setString(5, partyNames.nameOf(metalState.getOwner()));
+            statement.setTimestamp(6, Timestamp.from(recordedTime));
+            statement.setTimestamp(7, consumedTime == null ? null : Timestamp.from(consumedTime));
+            statement.executeUpdate();
+        }
+    }
+
+    /* Marks the replica as possibly behind and has the worker subscribe again and catch up. */
+    private void resync() {
+        stale.set(true);
+        if (!worker.isShutdown())
+            worker.execute(this::tick);
+    }
+
+    private void tick() {
+        if (stale.get()) {
+            try {
+                stale.set(false);
+                subscribeAndCatchUp();
+            } catch (RuntimeException | SQLException e) {
+                stale.set(true);
+                logger.warn("Could not catch the holdings replica up, will try again", e);
+                return;
+            }
+        }
+        advanceCursor();
+    }
+
+    /* Moves the cursor up to the latest change applied, less the margin; never while the replica may be behind. */
+    private synchronized void advanceCursor() {
+        if (stale.get() || appliedThrough == null)
+            return;
+        try {
+            Instant cursor = appliedThrough.minus(CURSOR_MARGIN);
+            Instant stored = readCursor();
+            if (stored == null || cursor.isAfter(stored))
+                writeCursor(cursor);
+        } catch (SQLException e) {
+            logger.warn("Could not advance the holdings replica cursor", e);
+        }
+    }
+
+    private boolean hasColumn(String table, String column) throws SQLException {
+        try (ResultSet columns = connection.getMetaData().getColumns(null, null, table, column)) {
+            return columns.next();
+        }
+    }
+
+    private synchronized Instant readCursor() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT recorded_after FROM replica_cursor WHERE id = 0")) {
+            return rows.next() ? rows.getTimestamp(1).toInstant() : null;
+        }
+    }
+
+    private synchronized void writeCursor(Instant cursor) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "MERGE INTO replica_cursor (id, recorded_after) KEY (id) VALUES (0, ?)")) {
+            statement.setTimestamp(1, Timestamp.from(cursor));
+            statement.executeUpdate();
+        }
+    }
+
+    private static List<ReplicaHolding> readHoldings(PreparedStatement query) throws SQLException {
+        List<ReplicaHolding> holdings = new ArrayList<>();
+        try (ResultSet rows = query.executeQuery()) {
+            while (rows.next()) {
+                Timestamp consumedTime = rows.getTimestamp("consumed_time");
+                holdings.add(new ReplicaHolding(rows.getString("ref"), rows.getString("metal_code"), rows.getLong("weight"),
+                        rows.getString("issuer"), rows.getString("owner"), rows.getTimestamp("recorded_time").toInstant(),
+                        consumedTime == null ? null : consumedTime.toInstant()));
+            }
+        }
+        return holdings;
+    }
+}
@@ -0,0 +1,99 @@
+package com.template.webserver;
+
+import com.template.states.MetalCatalogueState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.services.Vault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import rx.Subscription;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The metal catalogues the node holds, so that requests naming a metal can be turned into its codes without asking
+ * the node. The catalogues are read once, on first use, and then follow the node's vault updates. When the feed
+ * fails, or the RPC connection comes back after losing the node, they are read again on next use.
+ */
+@Component
+public class MetalCatalogues {
+    private final static Logger logger = LoggerFactory.getLogger(MetalCatalogues.class);
+
+    private final NodeRPCConnection rpc;
+    private final Map<StateRef, MetalCatalogueState> catalogues = new ConcurrentHashMap<>();
+    private Subscription subscription;
+    private volatile boolean tracking;
+
+    public MetalCatalogues(NodeRPCConnection rpc) {
+        this.rpc = rpc;
+    }
+
+    @PostConstruct
+    public void start() {
+        rpc.addReconnectListener(this::untrack);
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (subscription != null)
+            subscription.unsubscribe();
+    }
+
+    /* The codes a metal has in the catalogues, given either its code or its name such as "Platinum". Each issuer
+     * names its metals itself, so a name can have a code per issuer; a metal no catalogue lists is taken to be a
+     * code already. */
+    public Set<String> codesFor(String metal) {
+        track();
+        Set<String> codes = new TreeSet<>();
+        for (MetalCatalogueState catalogue : catalogues.values()) {
+            MetalCatalogueState.Entry entry = catalogue.entryFor(metal);
+            if (entry != null)
+                codes.add(entry.getCode());
+        }
+        return codes.isEmpty() ? Collections.singleton(metal) : codes;
+    }
+
+    private void track() {
+        if (tracking)
+            return;
+
+        synchronized (this) {
+            if (tracking)
+                return;
+
+            if (subscription != null)
+                subscription.unsubscribe();
+            DataFeed<Vault.Page<MetalCatalogueState>, Vault.Update<MetalCatalogueState>> feed =
+                    rpc.withProxy(proxy -> proxy.vaultTrack(MetalCatalogueState.class));
+            catalogues.clear();
+            for (StateAndRef<MetalCatalogueState> catalogue : feed.getSnapshot().getStates()) {
+                catalogues.put(catalogue.getRef(), catalogue.getState().getData());
+            }
+            subscription = feed.getUpdates().subscribe(update -> {
+                for (StateAndRef<MetalCatalogueState> consumed : update.getConsumed()) {
+                    catalogues.remove(consumed.getRef());
+                }
+                for (StateAndRef<MetalCatalogueState> produced : update.getProduced()) {
+                    catalogues.put(produced.getRef(), produced.getState().getData());
+                }
+            }, error -> {
+                logger.warn("Metal catalogue feed failed", error);
+                untrack();
+            });
+            tracking = true;
+        }
+    }
+
+    /* Whatever changed while the feed was down is not replayed on it, so the catalogues are read again. */
+    private void untrack() {
+        tracking = false;
+    }
+}
@@ -2,21 +2,48 @@ package com.template.webserver;
 
 import net.corda.client.rpc.CordaRPCClient;
 import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.client.rpc.GracefulReconnect;
 import net.corda.core.messaging.CordaRPCOps;
 import net.corda.core.utilities.NetworkHostAndPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
- * Wraps an RPC connection to a Corda node.
+ * Wraps a pool of RPC connections to a Corda node.
  *
- * The RPC connection is configured using command line arguments.
+ * The RPC connections are configured using command line arguments. Each connection reconnects by itself if the
+ * node goes away, and is checked periodically so that calls are only handed to connections that are up. Calls are
+ * spread round robin over the healthy connections, and each connection has its own limit of calls in flight: a call
+ * goes to the next healthy connection with a free slot or, if all of them are busy, waits at most
+ * config.rpc.borrowTimeoutMillis for a slot on the next one in turn.
+ *
+ * A connection that lost the node is left to reconnect and is not probed meanwhile; any other is probed with a call
+ * that must answer within config.rpc.healthCheckTimeoutMillis. When the node comes back the reconnect listeners run
+ * once, after every connection that lost it has reconnected.
  */
 @Component
 public class NodeRPCConnection implements AutoCloseable {
+    private final static Logger logger = LoggerFactory.getLogger(NodeRPCConnection.class);
+
     // The host of the node we are connecting to.
     @Value("${config.rpc.host}")
     private String host;
@@ -29,20 +56,183 @@ public class NodeRPCConnection implements AutoCloseable {
     // The password for logging into the RPC client.
     @Value("${config.rpc.port}")
     private int rpcPort;
+    // The number of RPC connections to open.
+    @Value("${config.rpc.poolSize:4}")
+    private int poolSize;
+    // The number of calls allowed in flight on each connection.
+    @Value("${config.rpc.callsPerConnection:16}")
+    private int callsPerConnection;
+    // How long a call waits for a free connection.
+    @Value("${config.rpc.borrowTimeoutMillis:5000}")
+    private long borrowTimeoutMillis;
+    // How often each connection is checked.
+    @Value("${config.rpc.healthCheckSeconds:10}")
+    private long healthCheckSeconds;
+    // How long a health check waits for the node to answer.
+    @Value("${config.rpc.healthCheckTimeoutMillis:5000}")
+    private long healthCheckTimeoutMillis;
 
-    private CordaRPCConnection rpcConnection;
-    CordaRPCOps proxy;
+    private final List<PooledConnection> connections = new ArrayList<>();
+    private final List<Runnable> reconnectListeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    // The connections that have lost the node and not yet reconnected.
+    private final AtomicInteger reconnecting = new AtomicInteger();
+    private ScheduledExecutorService healthChecker;
+    private ExecutorService probes;
 
     @PostConstruct
     public void initialiseNodeRPCConnection() {
         NetworkHostAndPort rpcAddress = new NetworkHostAndPort(host, rpcPort);
         CordaRPCClient rpcClient = new CordaRPCClient(rpcAddress);
-        rpcConnection = rpcClient.start(username, password);
-        proxy = rpcConnection.getProxy();
+        for (int i = 0; i < poolSize; i++) {
+            PooledConnection connection = new PooledConnection(i, callsPerConnection);
+            Runnable onDisconnect = () -> {
+                connection.markDown("disconnected");
+                if (connection.reconnecting.compareAndSet(false, true))
+                    reconnecting.incrementAndGet();
+            };
+            Runnable onReconnect = () -> {
+                connection.markUp();
+                if (connection.reconnecting.compareAndSet(true, false) && reconnecting.decrementAndGet() == 0)
+                    reconnectListeners.forEach(Runnable::run);
+            };
+            connection.rpcConnection = rpcClient.start(username, password, new GracefulReconnect(onDisconnect, onReconnect));
+            connections.add(connection);
+        }
+
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        probes = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-health-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, healthCheckSeconds, healthCheckSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Runs an RPC call on one of the healthy connections. Anything returned by the call, such as a flow handle or
+     * a data feed, stays usable after this returns.
+     */
+    public <T> T withProxy(Function<CordaRPCOps, T> call) {
+        PooledConnection connection = borrow();
+        try {
+            return call.apply(connection.rpcConnection.getProxy());
+        } finally {
+            connection.permits.release();
+        }
+    }
+
+    /**
+     * Runs the listener whenever the pool has reconnected to the node, once all of its connections that lost the node
+     * are back. Data feeds survive a reconnect, but whatever happened on the node while it was away is not replayed
+     * on them.
+     */
+    public void addReconnectListener(Runnable listener) {
+        reconnectListeners.add(listener);
+    }
+
+    /* Takes a slot on the next healthy connection that has one free, or else waits for one on the next in turn. */
+    private PooledConnection borrow() {
+        int start = Math.floorMod(next.getAndIncrement(), connections.size());
+        PooledConnection nextHealthy = null;
+        for (int i = 0; i < connections.size(); i++) {
+            PooledConnection connection = connections.get((start + i) % connections.size());
+            if (!connection.healthy)
+                continue;
+            if (connection.permits.tryAcquire())
+                return connection;
+            if (nextHealthy == null)
+                nextHealthy = connection;
+        }
+        if (nextHealthy == null)
+            throw new RpcUnavailableException("No healthy RPC connection to " + host + ":" + rpcPort);
+
+        try {
+            if (!nextHealthy.permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+                throw new RpcUnavailableException("No RPC connection became free within " + borrowTimeoutMillis + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcUnavailableException("Interrupted while waiting for an RPC connection");
+        }
+        return nextHealthy;
+    }
+
+    /* Probes every connection that is not reconnecting, all at once. A call on a connection that is reconnecting
+     * blocks until it is back, and a probe that does not answer in time is left to finish before another is sent. */
+    private void checkHealth() {
+        for (PooledConnection connection : connections) {
+            if (connection.reconnecting.get() || (connection.probe != null && !connection.probe.isDone()))
+                continue;
+            connection.probe = probes.submit(() -> connection.rpcConnection.getProxy().currentNodeTime());
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(healthCheckTimeoutMillis);
+        for (PooledConnection connection : connections) {
+            if (connection.reconnecting.get() || connection.probe == null)
+                continue;
+            try {
+                connection.probe.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                connection.markUp();
+            } catch (TimeoutException e) {
+                connection.markDown("no answer within " + healthCheckTimeoutMillis + "ms");
+            } catch (ExecutionException e) {
+                connection.markDown(e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
     }
 
     @PreDestroy
     public void close() {
-        rpcConnection.notifyServerAndClose();
+        if (healthChecker != null)
+            healthChecker.shutdownNow();
+        if (probes != null)
+            probes.shutdownNow();
+        for (PooledConnection connection : connections) {
+            connection.rpcConnection.notifyServerAndClose();
+        }
+    }
+
+    /* One connection of the pool, its free slots for calls, and whether it answered its last health check. */
+    private static class PooledConnection {
+        private final int index;
+        private final Semaphore permits;
+        private final AtomicBoolean reconnecting = new AtomicBoolean(false);
+        private CordaRPCConnection rpcConnection;
+        private volatile boolean healthy = true;
+        // The latest health check, only touched by the health checker's thread.
+        private Future<?> probe;
+
+        PooledConnection(int index, int callsPerConnection) {
+            this.index = index;
+            this.permits = new Semaphore(callsPerConnection, true);
+        }
+
+        void markUp() {
+            if (!healthy)
+                logger.info("RPC connection {} is up", index);
+            healthy = true;
+        }
+
+        void markDown(String reason) {
+            if (healthy)
+                logger.warn("RPC connection {} is down: {}", index, reason);
+            healthy = false;
+        }
+    }
+
+    /**
+     * Thrown when no connection to the node can take a call.
+     */
+    public static class RpcUnavailableException extends RuntimeException {
+        public RpcUnavailableException(String message) {
+            super(message);
+        }
     }
-}
\ No newline at end of file
+}
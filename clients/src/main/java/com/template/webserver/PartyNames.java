@@ -0,0 +1,39 @@
+package com.template.webserver;
+
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import org.springframework.stereotype.Component;
+
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the parties of a MetalStateV2, which are usually referenced by key alone, to X.500 names. Each key is
+ * looked up on the node once; keys the node cannot resolve are shown as they are and asked about again next time.
+ */
+@Component
+public class PartyNames {
+    private final NodeRPCConnection rpc;
+    private final Map<PublicKey, String> names = new ConcurrentHashMap<>();
+
+    public PartyNames(NodeRPCConnection rpc) {
+        this.rpc = rpc;
+    }
+
+    public String nameOf(AbstractParty party) {
+        if (party instanceof Party)
+            return ((Party) party).getName().toString();
+
+        String name = names.get(party.getOwningKey());
+        if (name != null)
+            return name;
+
+        Party wellKnown = rpc.withProxy(proxy -> proxy.wellKnownPartyFromAnonymous(party));
+        if (wellKnown == null)
+            return party.toString();
+
+        names.put(party.getOwningKey(), wellKnown.getName().toString());
+        return wellKnown.getName().toString();
+    }
+}
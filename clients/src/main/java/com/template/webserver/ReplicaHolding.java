@@ -0,0 +1,54 @@
+package com.template.webserver;
+
+import java.time.Instant;
+
+/**
+ * A MetalStateV2 as held in the webserver's read replica.
+ */
+public class ReplicaHolding {
+    private final String ref;
+    private final String metalCode;
+    private final long weight;
+    private final String issuer;
+    private final String owner;
+    private final Instant recordedTime;
+    private final Instant consumedTime;
+
+    public ReplicaHolding(String ref, String metalCode, long weight, String issuer, String owner, Instant recordedTime, Instant consumedTime) {
+        this.ref = ref;
+        this.metalCode = metalCode;
+        this.weight = weight;
+        this.issuer = issuer;
+        this.owner = owner;
+        this.recordedTime = recordedTime;
+        this.consumedTime = consumedTime;
+    }
+
+    public String getRef() {
+        return ref;
+    }
+
+    public String getMetalCode() {
+        return metalCode;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Instant getRecordedTime() {
+        return recordedTime;
+    }
+
+    public Instant getConsumedTime() {
+        return consumedTime;
+    }
+}
@@ -0,0 +1,57 @@
+package com.template.webserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The MetalStates produced and consumed by one vault update, as pushed to the dashboard.
+ */
+public class VaultDelta {
+    private final List<Holding> produced = new ArrayList<>();
+    private final List<String> consumed = new ArrayList<>();
+
+    public List<Holding> getProduced() {
+        return produced;
+    }
+
+    public List<String> getConsumed() {
+        return consumed;
+    }
+
+    public boolean isEmpty() {
+        return produced.isEmpty() && consumed.isEmpty();
+    }
+
+    /**
+     * A newly recorded MetalStateV2.
+     */
+    public static class Holding {
+        private final String ref;
+        private final String metalCode;
+        private final long weight;
+        private final String owner;
+
+        public Holding(String ref, String metalCode, long weight, String owner) {
+            this.ref = ref;
+            this.metalCode = metalCode;
+            this.weight = weight;
+            this.owner = owner;
+        }
+
+        public String getRef() {
+            return ref;
+        }
+
+        public String getMetalCode() {
+            return metalCode;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+    }
+}
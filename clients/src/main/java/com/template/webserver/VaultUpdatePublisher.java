@@ -0,0 +1,105 @@
+package com.template.webserver;
+
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import rx.Subscription;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Pushes MetalStateV2 changes to every subscribed browser from a single vault feed on the node.
+ *
+ * Each update is published to:
+ *
+ *   /topic/metal                  - every change
+ *   /topic/metal/owner/{owner}    - changes to one owner's states, with the owner's X.500 name URL encoded
+ *   /topic/metal/metal/{metal}    - changes to one metal's states, by metal code such as XAU
+ *
+ * so browsers filter by subscribing to the topic they want, and however many are connected the node only serves
+ * one observable.
+ */
+@Component
+public class VaultUpdatePublisher {
+    private final static Logger logger = LoggerFactory.getLogger(VaultUpdatePublisher.class);
+
+    static final String TOPIC = "/topic/metal";
+
+    private final NodeRPCConnection rpc;
+    private final PartyNames partyNames;
+    private final SimpMessagingTemplate messagingTemplate;
+    private Subscription subscription;
+
+    public VaultUpdatePublisher(NodeRPCConnection rpc, PartyNames partyNames, SimpMessagingTemplate messagingTemplate) {
+        this.rpc = rpc;
+        this.partyNames = partyNames;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        // Only the updates are wanted, so keep the snapshot to a single state.
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.ALL);
+        subscription = rpc.withProxy(proxy -> proxy.vaultTrackByWithPagingSpec(MetalStateV2.class, criteria, new PageSpecification(DEFAULT_PAGE_NUM, 1)))
+                .getUpdates()
+                .subscribe(this::publish, error -> logger.error("Vault update feed failed", error));
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null)
+            subscription.unsubscribe();
+    }
+
+    private void publish(Vault.Update<MetalStateV2> update) {
+        Map<String, VaultDelta> deltas = new LinkedHashMap<>();
+
+        for (StateAndRef<MetalStateV2> produced : update.getProduced()) {
+            MetalStateV2 metalState = produced.getState().getData();
+            VaultDelta.Holding holding = new VaultDelta.Holding(produced.getRef().toString(),
+                    metalState.getMetalCode(), metalState.getWeight(), partyNames.nameOf(metalState.getOwner()));
+            for (String topic : topicsFor(metalState)) {
+                deltas.computeIfAbsent(topic, key -> new VaultDelta()).getProduced().add(holding);
+            }
+        }
+        for (StateAndRef<MetalStateV2> consumed : update.getConsumed()) {
+            for (String topic : topicsFor(consumed.getState().getData())) {
+                deltas.computeIfAbsent(topic, key -> new VaultDelta()).getConsumed().add(consumed.getRef().toString());
+            }
+        }
+
+        deltas.forEach((topic, delta) -> {
+            if (!delta.isEmpty())
+                messagingTemplate.convertAndSend(topic, delta);
+        });
+    }
+
+    private String[] topicsFor(MetalStateV2 metalState) {
+        return new String[] {
+                TOPIC,
+                TOPIC + "/owner/" + encode(partyNames.nameOf(metalState.getOwner())),
+                TOPIC + "/metal/" + encode(metalState.getMetalCode())
+        };
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,3 +1,42 @@
 "use strict";
 
-// Define your client-side logic here.
\ No newline at end of file
+// Define your client-side logic here.
+
+// Live vault updates, pushed by the webserver over STOMP. Leaving both filters empty watches every change.
+var stompClient = null;
+var subscription = null;
+
+function topic() {
+    var owner = document.getElementById("owner").value.trim();
+    var metal = document.getElementById("metal").value.trim();
+    if (owner) return "/topic/metal/owner/" + encodeURIComponent(owner).replace(/%20/g, "+");
+    if (metal) return "/topic/metal/metal/" + encodeURIComponent(metal);
+    return "/topic/metal";
+}
+
+function show(delta) {
+    var updates = document.getElementById("updates");
+    delta.produced.forEach(function (holding) {
+        var item = document.createElement("li");
+        item.textContent = "+ " + holding.weight + " " + holding.metalCode + " to " + holding.owner + " (" + holding.ref + ")";
+        updates.insertBefore(item, updates.firstChild);
+    });
+    delta.consumed.forEach(function (ref) {
+        var item = document.createElement("li");
+        item.textContent = "- " + ref;
+        updates.insertBefore(item, updates.firstChild);
+    });
+}
+
+function watch() {
+    if (subscription) subscription.unsubscribe();
+    subscription = stompClient.subscribe(topic(), function (message) {
+        show(JSON.parse(message.body));
+    });
+}
+
+window.addEventListener("load", function () {
+    stompClient = Stomp.over(new SockJS("/vault-updates"));
+    stompClient.debug = null;
+    stompClient.connect({}, watch);
+});
@@ -0,0 +1,77 @@
+package com.template;
+
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+public class BulkLineTests {
+
+    // CSV lines
+
+    @Test
+    public void csvLineKeepsTheCommasOfAQuotedParty() {
+        BulkLine line = BulkLine.fromCsv("issue,Gold,10,\"O=PartyA, L=London, C=GB\"");
+
+        assertTrue(line.isIssue());
+        assertEquals("Gold", line.getMetal());
+        assertEquals(10, line.getWeight());
+        assertEquals("O=PartyA, L=London, C=GB", line.getParty());
+    }
+
+    @Test
+    public void csvLineUnescapesDoubledQuotesAndTrimsFields() {
+        BulkLine line = BulkLine.fromCsv(" TRANSFER , Silver , 7 ,\"O=\"\"Quoted\"\" Co, L=Paris, C=FR\"");
+
+        assertFalse(line.isIssue());
+        assertEquals("Silver", line.getMetal());
+        assertEquals(7, line.getWeight());
+        assertEquals("O=\"Quoted\" Co, L=Paris, C=FR", line.getParty());
+    }
+
+    @Test
+    public void csvHeaderLineIsSkipped() {
+        assertNull(BulkLine.fromCsv("flow,metal,weight,party"));
+    }
+
+    @Test
+    public void csvLineIsRejectedWhenMalformed() {
+        assertRejected(() -> BulkLine.fromCsv("issue,Gold,10,O=PartyA, L=London, C=GB"), "found 6 fields");
+        assertRejected(() -> BulkLine.fromCsv("issue,Gold,10,\"O=PartyA, L=London"), "Unterminated quote");
+        assertRejected(() -> BulkLine.fromCsv("issue,Gold,ten,\"O=PartyA, L=London, C=GB\""), "not a whole number");
+        assertRejected(() -> BulkLine.fromCsv("burn,Gold,10,\"O=PartyA, L=London, C=GB\""), "Unknown flow burn");
+        assertRejected(() -> BulkLine.fromCsv("issue,,10,\"O=PartyA, L=London, C=GB\""), "required");
+    }
+
+    // JSON lines
+
+    @Test
+    public void jsonLineReadsEveryField() {
+        BulkLine line = BulkLine.fromJson("{\"flow\": \"transfer\", \"metal\": \"Gold\", \"weight\": 10, \"party\": \"O=PartyB, L=New York, C=US\"}");
+
+        assertFalse(line.isIssue());
+        assertEquals("Gold", line.getMetal());
+        assertEquals(10, line.getWeight());
+        assertEquals("O=PartyB, L=New York, C=US", line.getParty());
+    }
+
+    @Test
+    public void jsonLineIsRejectedWhenMalformed() {
+        assertRejected(() -> BulkLine.fromJson("[\"issue\", \"Gold\"]"), "Not a JSON object");
+        assertRejected(() -> BulkLine.fromJson("{\"flow\": \"issue\""), "Not a JSON object");
+        assertRejected(() -> BulkLine.fromJson("{\"flow\": \"issue\", \"metal\": \"Gold\", \"weight\": 10}"), "required");
+        assertRejected(() -> BulkLine.fromJson("{\"flow\": \"issue\", \"metal\": \"Gold\", \"weight\": 1.5, \"party\": \"O=PartyA, L=London, C=GB\"}"), "not a whole number");
+    }
+
+    private static void assertRejected(Runnable parse, String reason) {
+        try {
+            parse.run();
+            fail("Expected the line to be rejected with " + reason);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(reason));
+        }
+    }
+}
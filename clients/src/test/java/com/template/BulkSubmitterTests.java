@@ -0,0 +1,88 @@
+package com.template;
+
+import net.corda.client.rpc.RPCException;
+import net.corda.core.messaging.CordaRPCOps;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class BulkSubmitterTests {
+    private static final String PARTY = "\"O=PartyA, L=London, C=GB\"";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Counts the calls made on the node, every one of which fails as if the connection had been lost.
+    private final AtomicInteger calls = new AtomicInteger();
+    private final CordaRPCOps disconnected = (CordaRPCOps) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { CordaRPCOps.class }, (proxy, method, args) -> {
+                calls.incrementAndGet();
+                throw new RPCException("Connection failure detected.");
+            });
+
+    @Test
+    public void rerunOnlyRecordsTheLinesLeftWithoutAnOutcome() throws Exception {
+        Path input = write("input.csv",
+                "issue,Gold,10," + PARTY,
+                "issue,Gold,20," + PARTY,
+                "# issued by hand",
+                "burn,Gold,30," + PARTY);
+        Path outcomes = write("input.csv.outcomes",
+                "1,SUBMITTED,",
+                "1,OK,4F2A",
+                "2,SUBMITTED,",
+                "3,SUBM");
+
+        Map<BulkSubmitter.Status, Integer> counts = new BulkSubmitter(disconnected, 4).submit(input, outcomes);
+
+        //Line 2 may have run, line 4 cannot be parsed, and nothing is sent to the node
+        assertEquals(1, (int) counts.get(BulkSubmitter.Status.UNKNOWN));
+        assertEquals(1, (int) counts.get(BulkSubmitter.Status.FAILED));
+        assertEquals(2, counts.size());
+        assertEquals(0, calls.get());
+        List<String> records = Files.readAllLines(outcomes, StandardCharsets.UTF_8);
+        assertTrue(records.get(4).startsWith("2,UNKNOWN,"));
+        assertTrue(records.get(5).startsWith("4,FAILED,"));
+
+        //Every line now has an outcome, so another run does nothing
+        assertTrue(new BulkSubmitter(disconnected, 4).submit(input, outcomes).isEmpty());
+        assertEquals(6, Files.readAllLines(outcomes, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void submissionStopsAtTheFirstLostConnection() throws Exception {
+        Path input = write("input.csv",
+                "flow,metal,weight,party",
+                "issue,Gold,10," + PARTY,
+                "issue,Gold,20," + PARTY,
+                "issue,Gold,30," + PARTY);
+        Path outcomes = folder.getRoot().toPath().resolve("input.csv.outcomes");
+
+        Map<BulkSubmitter.Status, Integer> counts = new BulkSubmitter(disconnected, 1).submit(input, outcomes);
+
+        //Only the first line reached the node; the rest are left for a rerun
+        assertEquals(1, calls.get());
+        assertEquals(1, (int) counts.get(BulkSubmitter.Status.SUBMITTED));
+        assertEquals(1, (int) counts.get(BulkSubmitter.Status.UNKNOWN));
+        assertEquals(Arrays.asList("2,SUBMITTED,", "2,UNKNOWN,Connection failure detected."),
+                Files.readAllLines(outcomes, StandardCharsets.UTF_8));
+    }
+
+    private Path write(String name, String... lines) throws Exception {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+}
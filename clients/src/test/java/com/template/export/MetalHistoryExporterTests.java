@@ -0,0 +1,131 @@
+package com.template.export;
+
+import com.template.contracts.MetalContract;
+import com.template.states.MetalStateV2;
+import com.template.states.Metals;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+
+public class MetalHistoryExporterTests {
+    private static final Instant NOW = Instant.parse("2020-01-01T12:00:00Z");
+    // The exporter leaves the last minute for the next run.
+    private static final Instant UNTIL = NOW.minus(Duration.ofMinutes(1));
+
+    private final Party mint = party("Mint");
+    private final Party notary = party("Notary");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void emptyWindowWritesNothingAndKeepsTheCursor() throws Exception {
+        Path directory = folder.getRoot().toPath();
+
+        assertEquals(0, new MetalHistoryExporter(node(NOW), directory).export());
+
+        assertEquals(Collections.emptyList(), files(directory));
+        assertNull(MetalHistoryReader.exportedUntil(directory));
+
+        //The next run covers the empty window again, from the start
+        assertEquals(1, new MetalHistoryExporter(node(NOW.plusSeconds(60), recorded(UNTIL.minusSeconds(30))), directory).export());
+        assertEquals(Collections.singletonList(MetalHistoryReader.segmentName(UNTIL.plusSeconds(60))), files(directory));
+    }
+
+    @Test
+    public void leftoverPartialSegmentIsReplacedOrIgnored() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        // Left by failed runs: one over the same window as this run, and one over a window no run will cover again.
+        Files.write(directory.resolve(MetalHistoryReader.segmentName(UNTIL) + ".partial"), new byte[] { 1, 2, 3 });
+        Path stale = directory.resolve(MetalHistoryReader.segmentName(UNTIL.minusSeconds(60)) + ".partial");
+        Files.write(stale, new byte[] { 4, 5, 6 });
+
+        assertEquals(1, new MetalHistoryExporter(node(NOW, recorded(UNTIL.minusSeconds(30))), directory).export());
+
+        assertEquals(Arrays.asList(stale.getFileName().toString(), MetalHistoryReader.segmentName(UNTIL)), files(directory));
+        assertEquals(UNTIL, MetalHistoryReader.exportedUntil(directory));
+        assertEquals(1, new MetalHistoryReader(directory).scan(group -> { }));
+    }
+
+    @Test
+    public void nextRunAddsASegmentAfterTheLast() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        new MetalHistoryExporter(node(NOW, recorded(UNTIL.minusSeconds(30))), directory).export();
+
+        assertEquals(1, new MetalHistoryExporter(node(NOW.plusSeconds(3600), recorded(UNTIL.plusSeconds(30))), directory).export());
+
+        assertEquals(Arrays.asList(MetalHistoryReader.segmentName(UNTIL), MetalHistoryReader.segmentName(UNTIL.plusSeconds(3600))),
+                files(directory));
+        assertEquals(UNTIL.plusSeconds(3600), MetalHistoryReader.exportedUntil(directory));
+        assertEquals(2, new MetalHistoryReader(directory).scan(group -> { }));
+    }
+
+    /* A node at the given time whose vault queries return the given pages, one per query, then nothing. Only the
+     * calls the exporter makes are answered. */
+    @SafeVarargs
+    private static CordaRPCOps node(Instant now, Vault.Page<MetalStateV2>... pages) {
+        Deque<Vault.Page<MetalStateV2>> queries = new ArrayDeque<>(Arrays.asList(pages));
+        return (CordaRPCOps) Proxy.newProxyInstance(MetalHistoryExporterTests.class.getClassLoader(),
+                new Class<?>[] { CordaRPCOps.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "currentNodeTime":
+                            return now;
+                        case "vaultQueryBy":
+                            return queries.isEmpty() ? page(Collections.emptyList(), Collections.emptyList()) : queries.poll();
+                        case "wellKnownPartyFromAnonymous":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /* A page of one state, recorded at the given time. */
+    private Vault.Page<MetalStateV2> recorded(Instant recordedTime) {
+        StateRef ref = new StateRef(SecureHash.sha256("tx" + recordedTime), 0);
+        MetalStateV2 metalState = new MetalStateV2(Metals.GOLD, 10, mint, mint);
+        Vault.StateMetadata metadata = new Vault.StateMetadata(ref, MetalStateV2.class.getName(),
+                recordedTime, null, Vault.StateStatus.UNCONSUMED, notary, null, null);
+        return page(Collections.singletonList(new StateAndRef<>(new TransactionState<>(metalState, MetalContract.CID, notary), ref)),
+                Collections.singletonList(metadata));
+    }
+
+    private static Vault.Page<MetalStateV2> page(List<StateAndRef<MetalStateV2>> states, List<Vault.StateMetadata> metadata) {
+        return new Vault.Page<>(states, metadata, states.size(), Vault.StateStatus.ALL, Collections.emptyList());
+    }
+
+    private static List<String> files(Path directory) throws Exception {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.map(path -> path.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static Party party(String organisation) {
+        return new Party(new CordaX500Name(organisation, "London", "GB"), Crypto.generateKeyPair().getPublic());
+    }
+}
@@ -0,0 +1,139 @@
+package com.template.export;
+
+import com.template.contracts.MetalContract;
+import com.template.states.MetalStateV2;
+import com.template.states.Metals;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
+
+public class MetalHistoryTests {
+    private static final Instant FROM = Instant.parse("2020-01-01T00:00:00Z");
+    private static final Instant UNTIL = Instant.parse("2020-01-01T01:00:00Z");
+    // One full row group and a short one.
+    private static final int ROWS = MetalHistoryWriter.ROW_GROUP_SIZE + 2;
+
+    private final Party mint = party("Mint");
+    private final Party notary = party("Notary");
+    private final List<Party> owners = Arrays.asList(party("PartyA"), party("PartyB"), party("PartyC"));
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rowsReadBackAsWrittenAcrossRowGroups() throws Exception {
+        writeSegment();
+
+        List<Integer> groupSizes = new ArrayList<>();
+        int[] next = { 0 };
+        long rows = new MetalHistoryReader(folder.getRoot().toPath()).scan(group -> {
+            groupSizes.add(group.size());
+            for (int row = 0; row < group.size(); row++, next[0]++) {
+                int i = next[0];
+                assertEquals(ref(i), group.ref(row));
+                assertEquals(metal(i), group.metal(row));
+                assertEquals(i + 1, group.weight(row));
+                assertEquals(mint.getName().toString(), group.issuer(row));
+                assertEquals(owner(i).getName().toString(), group.owner(row));
+                assertEquals(FROM.plusMillis(i), group.recordedTime(row));
+                assertEquals(i == ROWS - 1, group.isConsumed(row));
+                assertEquals(i == ROWS - 1 ? FROM.plusSeconds(60) : null, group.consumedTime(row));
+            }
+        });
+
+        assertEquals(ROWS, rows);
+        assertEquals(Arrays.asList(MetalHistoryWriter.ROW_GROUP_SIZE, 2), groupSizes);
+    }
+
+    @Test
+    public void headerPointsAtTheDictionaryOfEveryDistinctName() throws Exception {
+        Path segment = writeSegment();
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(segment));
+
+        assertEquals(MetalHistoryWriter.MAGIC, file.getInt());
+        assertEquals(MetalHistoryWriter.micros(FROM), file.getLong());
+        assertEquals(MetalHistoryWriter.micros(UNTIL), file.getLong());
+        assertEquals(ROWS, file.getLong());
+        assertEquals(2, file.getInt());
+        long dictionaryOffset = file.getLong();
+
+        //The dictionary ends the file, each name once
+        Set<String> names = new HashSet<>();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(segment))) {
+            in.skipBytes((int) dictionaryOffset);
+            int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                names.add(in.readUTF());
+            }
+            assertEquals(-1, in.read());
+        }
+        Set<String> expected = new HashSet<>(Arrays.asList(Metals.GOLD, Metals.SILVER, mint.getName().toString()));
+        owners.forEach(owner -> expected.add(owner.getName().toString()));
+        assertEquals(expected, names);
+
+        //The transaction hashes alone do not deflate, every other column does
+        assertTrue(dictionaryOffset < (long) ROWS * (32 + 4 + 4 + 8 + 4 + 4 + 1 + 8 + 8) / 2);
+        assertEquals(UNTIL, MetalHistoryReader.exportedUntil(folder.getRoot().toPath()));
+    }
+
+    @Test
+    public void directoryWithoutSegmentsHasNothingExported() throws Exception {
+        Files.write(folder.getRoot().toPath().resolve(MetalHistoryReader.segmentName(UNTIL) + ".partial"), new byte[] { 1, 2, 3 });
+
+        assertNull(MetalHistoryReader.exportedUntil(folder.getRoot().toPath()));
+        assertEquals(0, new MetalHistoryReader(folder.getRoot().toPath()).scan(group -> { }));
+    }
+
+    private Path writeSegment() throws IOException {
+        Path segment = folder.getRoot().toPath().resolve(MetalHistoryReader.segmentName(UNTIL));
+        try (MetalHistoryWriter writer = new MetalHistoryWriter(segment, FROM, UNTIL)) {
+            for (int i = 0; i < ROWS; i++) {
+                MetalStateV2 metalState = new MetalStateV2(metal(i), i + 1, mint, owner(i));
+                StateAndRef<MetalStateV2> stateAndRef = new StateAndRef<>(new TransactionState<>(metalState, MetalContract.CID, notary), ref(i));
+                writer.add(stateAndRef, mint.getName().toString(), owner(i).getName().toString(),
+                        FROM.plusMillis(i), i == ROWS - 1 ? FROM.plusSeconds(60) : null);
+            }
+            assertEquals(ROWS, writer.getRows());
+        }
+        return segment;
+    }
+
+    private static StateRef ref(int i) {
+        return new StateRef(SecureHash.sha256("tx" + i), i % 3);
+    }
+
+    private static String metal(int i) {
+        return i % 2 == 0 ? Metals.GOLD : Metals.SILVER;
+    }
+
+    private Party owner(int i) {
+        return owners.get(i % owners.size());
+    }
+
+    private static Party party(String organisation) {
+        return new Party(new CordaX500Name(organisation, "London", "GB"), Crypto.generateKeyPair().getPublic());
+    }
+}
@@ -0,0 +1,70 @@
+package com.template.contracts;
+
+import com.template.states.MetalCatalogueState;
+import net.corda.core.contracts.*;
+import net.corda.core.transactions.LedgerTransaction;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static net.corda.core.contracts.ContractsDSL.requireSingleCommand;
+
+// ************
+// * Contract *
+// ************
+public class MetalCatalogueContract implements Contract {
+    // This is used to identify our contract when building a transaction.
+    public static final String CID = "com.template.contracts.MetalCatalogueContract";
+
+    // A transaction is valid if the verify() function of the contract of all the transaction's input and output states
+    // does not throw an exception.
+    @Override
+    public void verify(@NotNull LedgerTransaction tx) throws IllegalArgumentException {
+        CommandWithParties<Commands> command = requireSingleCommand(tx.getCommands(), Commands.class);
+        List<MetalCatalogueState> inputs = tx.inputsOfType(MetalCatalogueState.class);
+        List<MetalCatalogueState> outputs = tx.outputsOfType(MetalCatalogueState.class);
+
+        //Shape rules
+        if(outputs.size() != 1)
+            throw new IllegalArgumentException("Exactly one catalogue must be output");
+        MetalCatalogueState output = outputs.get(0);
+
+        if(command.getValue() instanceof Commands.Create) {
+            if(!inputs.isEmpty())
+                throw new IllegalArgumentException("Creating a catalogue cannot consume one");
+        }
+        else if(command.getValue() instanceof Commands.Update) {
+            if(inputs.size() != 1)
+                throw new IllegalArgumentException("Updating a catalogue must consume exactly one");
+            MetalCatalogueState input = inputs.get(0);
+            if(!input.getLinearId().equals(output.getLinearId()))
+                throw new IllegalArgumentException("An updated catalogue keeps its linear id");
+            if(!input.getMaintainer().equals(output.getMaintainer()))
+                throw new IllegalArgumentException("An updated catalogue keeps its maintainer");
+        }
+        else throw new IllegalArgumentException("Unrecognised command");
+
+        //Content rules
+        Set<String> codes = new HashSet<>();
+        for(MetalCatalogueState.Entry entry : output.getEntries()) {
+            if(!codes.add(entry.getCode()))
+                throw new IllegalArgumentException("Metal codes must be unique");
+            if(entry.getDecimals() < 0 || entry.getDecimals() > 18)
+                throw new IllegalArgumentException("Decimals must be between 0 and 18");
+            if(entry.getIssuanceLimit() <= 0)
+                throw new IllegalArgumentException("Issuance limit must be positive");
+        }
+
+        //Signer rules
+        if(!command.getSigners().contains(output.getMaintainer().getOwningKey()))
+            throw new IllegalArgumentException("Maintainer has to sign the catalogue");
+    }
+
+    // Used to indicate the transaction's intent.
+    public interface Commands extends CommandData {
+        class Create implements Commands {}
+        class Update implements Commands {}
+    }
+}
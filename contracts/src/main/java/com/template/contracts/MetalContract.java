@@ -1,17 +1,17 @@
 package com.template.contracts;
 
 import com.template.states.MetalState;
+import com.template.states.MetalStateV2;
+import com.template.states.MetalCatalogueState;
+import com.template.states.Metals;
 import com.template.states.TemplateState;
 import net.corda.core.contracts.*;
-import net.corda.core.identity.Party;
+import net.corda.core.identity.AbstractParty;
 import net.corda.core.transactions.LedgerTransaction;
 import org.jetbrains.annotations.NotNull;
 
 import java.security.PublicKey;
-import java.util.List;
-
-import static net.corda.core.contracts.ContractsDSL.requireSingleCommand;
-import static net.corda.core.contracts.ContractsDSL.requireThat;
+import java.util.*;
 
 // ************
 // * Contract *
@@ -22,78 +22,220 @@ public class MetalContract implements Contract {
 
     // A transaction is valid if the verify() function of the contract of all the transaction's input and output states
     // does not throw an exception.
+    //
+    // The MetalStateV2s are grouped by metal and issuer, and each group must be justified by one of the transaction's
+    // commands: a group without inputs is an issuance, a group without outputs an exit by its issuer and owners, any
+    // other group a transfer or a merge by the owners of its inputs. Every command in turn must justify at least one group, so one transaction can carry many independent
+    // issues, transfers and merges. The metals an issuer may issue, and how much at a time, come from the issuer's
+    // MetalCatalogueState, which an issuance must reference. Metal already on the ledger can be transferred, merged
+    // and exited without it, even once the issuer has dropped the metal from its catalogue.
+    //
+    // MetalStates of the first ledger format can only be spent by an Upgrade, into MetalStateV2s of the same metal,
+    // weight, issuer and owner.
     @Override
     public void verify(@NotNull LedgerTransaction tx) throws IllegalArgumentException{
 
-        if(tx.getCommands().size()!=1)
-            throw new IllegalArgumentException("Transaction must have one Command.");
-
-        Command command = tx.getCommand(0);
-        CommandData commandData = command.getValue();
-        List<PublicKey> requiredSigners = command.getSigners();
-
-        // Issue Command Contract Rules
-        if(commandData instanceof Commands.Issue) {
-            //Issue transaction logic
+        //Signer rules are checked against the keys of each kind of command, gathered once
+        Set<PublicKey> issueSigners = new HashSet<>();
+        Set<PublicKey> transferSigners = new HashSet<>();
+        Set<PublicKey> mergeSigners = new HashSet<>();
+        Set<PublicKey> exitSigners = new HashSet<>();
+        Set<PublicKey> upgradeSigners = new HashSet<>();
+        List<Command<Commands>> commands = tx.commandsOfType(Commands.class);
+        if(commands.isEmpty())
+            throw new IllegalArgumentException("Transaction must have a MetalContract command");
+        for(Command<Commands> command : commands) {
+            if(command.getValue() instanceof Commands.Issue)
+                issueSigners.addAll(command.getSigners());
+            else if(command.getValue() instanceof Commands.Transfer)
+                transferSigners.addAll(command.getSigners());
+            else if(command.getValue() instanceof Commands.Merge)
+                mergeSigners.addAll(command.getSigners());
+            else if(command.getValue() instanceof Commands.Exit)
+                exitSigners.addAll(command.getSigners());
+            else if(command.getValue() instanceof Commands.Upgrade)
+                upgradeSigners.addAll(command.getSigners());
+            else throw new IllegalArgumentException("Unrecognised command");
+        }
 
-            //Shape rules
-            if(tx.getInputs().size()!=0)
-                throw new IllegalArgumentException("Issue cannot have inputs");
-            if(tx.getOutputs().size()!=1)
-                throw new IllegalArgumentException("Issue can only have one output");
+        //Each issuer's catalogue, from the reference states
+        Map<PublicKey, MetalCatalogueState> catalogues = new HashMap<>();
+        for(MetalCatalogueState catalogue : tx.referenceInputsOfType(MetalCatalogueState.class)) {
+            if(catalogues.put(catalogue.getMaintainer().getOwningKey(), catalogue) != null)
+                throw new IllegalArgumentException("Only one catalogue per issuer can be referenced");
+        }
 
-            //Content rules
-            ContractState outputState = tx.getOutput(0);
-            if(!(outputState instanceof MetalState))
+        //Every state governed by this contract must be a metal State
+        for(StateAndRef<ContractState> input : tx.getInputs()) {
+            ContractState data = input.getState().getData();
+            if(input.getState().getContract().equals(CID) && !(data instanceof MetalStateV2 || data instanceof MetalState))
+                throw new IllegalArgumentException("Input must be a metal State");
+        }
+        for(TransactionState<ContractState> output : tx.getOutputs()) {
+            if(output.getContract().equals(CID) && !(output.getData() instanceof MetalStateV2))
                 throw new IllegalArgumentException("Output must be a metal State");
+        }
 
-            MetalState metalState = (MetalState) outputState;
-            if(!metalState.getMetalName().equals("Gold")&&!metalState.getMetalName().equals("Silver"))
-                throw new IllegalArgumentException("Metal is not silver or gold");
-
-            //Signer Rules
-            Party issuer = metalState.getIssuer();
-            PublicKey issuerKey = issuer.getOwningKey();
-
-            if(!(requiredSigners.contains(issuerKey)))
-                throw new IllegalArgumentException("Issuer has to sign the issuance");
+        //Upgrade rules
+        List<MetalState> legacyInputs = tx.inputsOfType(MetalState.class);
+        if(!upgradeSigners.isEmpty() || !legacyInputs.isEmpty()) {
+            verifyUpgrade(tx, commands, upgradeSigners, legacyInputs);
+            return;
         }
 
-        //Transfer Command Contract Rules
-        else if(commandData instanceof Commands.Transfer) {
-            //Issue transaction logic
+        boolean issued = false;
+        boolean transferred = false;
+        boolean merged = false;
+        boolean exited = false;
+        for(LedgerTransaction.InOutGroup<MetalStateV2, MetalAndIssuer> group : tx.groupStates(MetalStateV2.class, MetalAndIssuer::new)) {
+            MetalAndIssuer key = group.getGroupingKey();
+
+            //A single pass over the inputs and then the outputs of the group
+            long weight = 0;
+            boolean signedAsTransfer = true;
+            boolean signedAsMerge = true;
+            boolean signedAsExit = true;
+            AbstractParty owner = null;
+            boolean singleOwner = true;
+            for(MetalStateV2 input : group.getInputs()) {
+                PublicKey ownerKey = input.getOwner().getOwningKey();
+                signedAsTransfer &= transferSigners.contains(ownerKey);
+                signedAsMerge &= mergeSigners.contains(ownerKey);
+                signedAsExit &= exitSigners.contains(ownerKey);
+                if(owner == null)
+                    owner = input.getOwner();
+                singleOwner &= owner.equals(input.getOwner());
+                weight += input.getWeight();
+            }
+            for(MetalStateV2 output : group.getOutputs()) {
+                if(output.getWeight() <= 0)
+                    throw new IllegalArgumentException("Output weight must be positive");
+                singleOwner &= owner == null || owner.equals(output.getOwner());
+                weight -= output.getWeight();
+            }
+
+            //Issue rules
+            if(group.getInputs().isEmpty()) {
+                MetalCatalogueState catalogue = catalogues.get(key.issuer.getOwningKey());
+                if(catalogue == null)
+                    throw new IllegalArgumentException("Issuance must reference the issuer's metal catalogue");
+                MetalCatalogueState.Entry entry = catalogue.entryForCode(key.metalCode);
+                if(entry == null)
+                    throw new IllegalArgumentException("Metal is not in the issuer's catalogue");
+                if(!issueSigners.contains(key.issuer.getOwningKey()))
+                    throw new IllegalArgumentException("Issuer has to sign the issuance");
+                if(-weight > entry.getIssuanceLimit())
+                    throw new IllegalArgumentException("Issuance exceeds the catalogue's limit");
+                issued = true;
+                continue;
+            }
+
+            //Exit rules
+            if(group.getOutputs().isEmpty()) {
+                if(!exitSigners.contains(key.issuer.getOwningKey()) || !signedAsExit)
+                    throw new IllegalArgumentException("Issuer and owner have to sign the exit");
+                exited = true;
+                continue;
+            }
+
+            //Transfer and merge rules
+            if(weight != 0)
+                throw new IllegalArgumentException("Weight must be conserved per metal and issuer");
+
+            String mergeViolation = mergeViolation(group, singleOwner);
+            if(signedAsMerge && mergeViolation == null)
+                merged = true;
+            else if(signedAsTransfer)
+                transferred = true;
+            else if(signedAsMerge)
+                throw new IllegalArgumentException(mergeViolation);
+            else throw new IllegalArgumentException("Owner has to sign the transfer");
+        }
 
-            //Shape rules
-            if(tx.getInputs().size()!=1)
-                throw new IllegalArgumentException("Transfer can only have one inputs");
-            if(tx.getOutputs().size()!=1)
-                throw new IllegalArgumentException("Transfer can only have one output");
+        //Every command must have been used by a group
+        if(!issueSigners.isEmpty() && !issued)
+            throw new IllegalArgumentException("Issue must have at least one output");
+        if(!transferSigners.isEmpty() && !transferred)
+            throw new IllegalArgumentException("Transfer must have at least one input and one output");
+        if(!mergeSigners.isEmpty() && !merged)
+            throw new IllegalArgumentException("Merge must have at least two inputs");
+        if(!exitSigners.isEmpty() && !exited)
+            throw new IllegalArgumentException("Exit must have at least one input and no outputs");
+    }
 
-            //Content rules
-            ContractState inputState = tx.getInput(0);
-            ContractState outputState = tx.getOutput(0);
+    /* An upgrade only spends first-format states, each holding reappearing as MetalStateV2s of the same total weight. */
+    private static void verifyUpgrade(LedgerTransaction tx, List<Command<Commands>> commands, Set<PublicKey> upgradeSigners,
+                                      List<MetalState> legacyInputs) {
+        if(upgradeSigners.isEmpty())
+            throw new IllegalArgumentException("MetalStates of the first format can only be upgraded");
+        if(commands.size() != 1)
+            throw new IllegalArgumentException("An upgrade can only carry the Upgrade command");
+        if(legacyInputs.isEmpty())
+            throw new IllegalArgumentException("Upgrade must have at least one input");
+        if(!tx.inputsOfType(MetalStateV2.class).isEmpty())
+            throw new IllegalArgumentException("An upgrade can only spend MetalStates of the first format");
+
+        //The weight of each metal, issuer and owner going in, less the weight coming out, must come to nothing
+        Map<List<Object>, Long> holdings = new HashMap<>();
+        for(MetalState input : legacyInputs) {
+            if(!upgradeSigners.contains(input.getOwner().getOwningKey()))
+                throw new IllegalArgumentException("Owner has to sign the upgrade");
+            List<Object> holding = Arrays.asList(Metals.code(input.getMetalName()), input.getIssuer().getOwningKey(), input.getOwner().getOwningKey());
+            holdings.merge(holding, (long) input.getWeight(), Long::sum);
+        }
+        for(MetalStateV2 output : tx.outputsOfType(MetalStateV2.class)) {
+            if(output.getWeight() <= 0)
+                throw new IllegalArgumentException("Output weight must be positive");
+            List<Object> holding = Arrays.asList(output.getMetalCode(), output.getIssuerKey(), output.getOwnerKey());
+            holdings.merge(holding, -output.getWeight(), Long::sum);
+        }
+        for(long remaining : holdings.values()) {
+            if(remaining != 0)
+                throw new IllegalArgumentException("An upgrade must keep the metal, weight, issuer and owner of each holding");
+        }
+    }
 
-            if(!(outputState instanceof MetalState))
-                throw new IllegalArgumentException("Output must be a metal State");
+    /* Why the group is not a merge: fewer states than it spends, all staying with their single owner. Null if it is. */
+    private static String mergeViolation(LedgerTransaction.InOutGroup<MetalStateV2, MetalAndIssuer> group, boolean singleOwner) {
+        if(group.getInputs().size() < 2)
+            return "Merge must have at least two inputs";
+        if(group.getOutputs().isEmpty() || group.getOutputs().size() >= group.getInputs().size())
+            return "Merge must have fewer outputs than inputs";
+        if(!singleOwner)
+            return "Merge cannot change the owner";
+        return null;
+    }
 
-            MetalState metalState = (MetalState) inputState;
-            if(!metalState.getMetalName().equals("Gold")&&!metalState.getMetalName().equals("Silver"))
-                throw new IllegalArgumentException("Metal is not silver or gold");
+    // Weight is only fungible between states of the same metal from the same issuer.
+    private static final class MetalAndIssuer {
+        private final String metalCode;
+        private final AbstractParty issuer;
 
-            //Signer Rules
-            Party owner = metalState.getOwner();
-            PublicKey ownerKey = owner.getOwningKey();
+        MetalAndIssuer(MetalStateV2 metalState) {
+            this.metalCode = metalState.getMetalCode();
+            this.issuer = metalState.getIssuer();
+        }
 
-            if(!(requiredSigners.contains(ownerKey)))
-                throw new IllegalArgumentException("Owner has to sign the issuance");
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof MetalAndIssuer)) return false;
+            MetalAndIssuer that = (MetalAndIssuer) o;
+            return metalCode.equals(that.metalCode) && issuer.equals(that.issuer);
         }
-        else throw new IllegalArgumentException("Unrecognised command");
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(metalCode, issuer);
+        }
     }
 
     // Used to indicate the transaction's intent.
     public interface Commands extends CommandData {
         class Issue implements Commands {}
         class Transfer implements Commands {}
+        class Merge implements Commands {}
+        class Exit implements Commands {}
+        class Upgrade implements Commands {}
     }
 }
\ No newline at end of file
@@ -0,0 +1,6 @@
+package com.template.schema;
+
+/**
+ * The family of schemas for MetalState.
+ */
+public class MetalSchema { }
@@ -0,0 +1,74 @@
+package com.template.schema;
+
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Collections;
+
+// **********
+// * Schema *
+// **********
+/**
+ * A MetalState schema. The columns used to select states for a transfer are indexed so the vault can
+ * answer coin selection queries without loading every unconsumed MetalState.
+ */
+public class MetalSchemaV1 extends MappedSchema {
+    public MetalSchemaV1() {
+        super(MetalSchema.class, 1, Collections.singletonList(PersistentMetal.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "metal.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "metal_states", indexes = {
+            @Index(name = "metal_owner_name_weight_idx", columnList = "owner, metal_name, weight"),
+            @Index(name = "metal_issuer_idx", columnList = "issuer")
+    })
+    public static class PersistentMetal extends PersistentState {
+        @Column(name = "metal_name", nullable = false) private final String metalName;
+        @Column(name = "weight", nullable = false) private final int weight;
+        @Column(name = "issuer", nullable = false) private final AbstractParty issuer;
+        @Column(name = "owner", nullable = false) private final AbstractParty owner;
+
+        public PersistentMetal(String metalName, int weight, AbstractParty issuer, AbstractParty owner) {
+            this.metalName = metalName;
+            this.weight = weight;
+            this.issuer = issuer;
+            this.owner = owner;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentMetal() {
+            this.metalName = null;
+            this.weight = 0;
+            this.issuer = null;
+            this.owner = null;
+        }
+
+        public String getMetalName() {
+            return metalName;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public AbstractParty getIssuer() {
+            return issuer;
+        }
+
+        public AbstractParty getOwner() {
+            return owner;
+        }
+    }
+}
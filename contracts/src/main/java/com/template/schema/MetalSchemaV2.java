@@ -0,0 +1,75 @@
+package com.template.schema;
+
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Collections;
+
+// **********
+// * Schema *
+// **********
+/**
+ * The MetalStateV2 schema. Its table only ever holds metal codes and long weights; the MetalStates of the first
+ * ledger format stay in MetalSchemaV1's table. The columns used to select states for a transfer are indexed so the
+ * vault can answer coin selection queries without loading every unconsumed state.
+ */
+public class MetalSchemaV2 extends MappedSchema {
+    public MetalSchemaV2() {
+        super(MetalSchema.class, 2, Collections.singletonList(PersistentMetal.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "metal.changelog-master";
+    }
+
+    @Entity(name = "PersistentMetalV2")
+    @Table(name = "metal_states_v2", indexes = {
+            @Index(name = "metal_v2_owner_code_weight_idx", columnList = "owner, metal_code, weight"),
+            @Index(name = "metal_v2_issuer_idx", columnList = "issuer")
+    })
+    public static class PersistentMetal extends PersistentState {
+        @Column(name = "metal_code", nullable = false) private final String metalCode;
+        @Column(name = "weight", nullable = false) private final long weight;
+        @Column(name = "issuer", nullable = false) private final AbstractParty issuer;
+        @Column(name = "owner", nullable = false) private final AbstractParty owner;
+
+        public PersistentMetal(String metalCode, long weight, AbstractParty issuer, AbstractParty owner) {
+            this.metalCode = metalCode;
+            this.weight = weight;
+            this.issuer = issuer;
+            this.owner = owner;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentMetal() {
+            this.metalCode = null;
+            this.weight = 0;
+            this.issuer = null;
+            this.owner = null;
+        }
+
+        public String getMetalCode() {
+            return metalCode;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public AbstractParty getIssuer() {
+            return issuer;
+        }
+
+        public AbstractParty getOwner() {
+            return owner;
+        }
+    }
+}
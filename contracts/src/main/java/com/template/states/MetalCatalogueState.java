@@ -0,0 +1,122 @@
+package com.template.states;
+
+import com.template.contracts.MetalCatalogueContract;
+import net.corda.core.contracts.BelongsToContract;
+import net.corda.core.contracts.LinearState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.ConstructorForDeserialization;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// *********
+// * State *
+// *********
+/**
+ * The metals an issuer issues, maintained on ledger by that issuer. Metal transactions refer to it as a reference
+ * state, so a metal can be added or its limits changed by issuing a new version of the catalogue rather than by
+ * upgrading the contract on every node. Each new version keeps the linear id of the first.
+ */
+@BelongsToContract(MetalCatalogueContract.class)
+public class MetalCatalogueState implements LinearState {
+
+    //private variables
+    private final Party maintainer;
+    private final List<Entry> entries;
+    private final UniqueIdentifier linearId;
+
+    @ConstructorForDeserialization
+    public MetalCatalogueState(Party maintainer, List<Entry> entries, UniqueIdentifier linearId) {
+        this.maintainer = maintainer;
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        this.linearId = linearId;
+    }
+
+    public MetalCatalogueState(Party maintainer, List<Entry> entries) {
+        this(maintainer, entries, new UniqueIdentifier());
+    }
+
+    public Party getMaintainer() {
+        return maintainer;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public UniqueIdentifier getLinearId() {
+        return linearId;
+    }
+
+    /* The entry with exactly the given code, or null. */
+    public Entry entryForCode(String code) {
+        for (Entry entry : entries) {
+            if (entry.code.equals(code))
+                return entry;
+        }
+        return null;
+    }
+
+    /* The entry for a metal given either its code or its name, such as "Gold", or null. */
+    public Entry entryFor(String metal) {
+        Entry entry = entryForCode(metal);
+        if (entry != null)
+            return entry;
+        for (Entry candidate : entries) {
+            if (candidate.name.equalsIgnoreCase(metal))
+                return candidate;
+        }
+        return null;
+    }
+
+    /* The next version of this catalogue, with the given entries. */
+    public MetalCatalogueState withEntries(List<Entry> entries) {
+        return new MetalCatalogueState(maintainer, entries, linearId);
+    }
+
+    @Override
+    public List<AbstractParty> getParticipants() {
+        return Collections.singletonList(maintainer);
+    }
+
+    /**
+     * A metal in the catalogue: its code, its name, the number of decimal places the issuer shows its weights with,
+     * and the most of it that may be issued in one transaction. Weights on ledger are whole units and are never
+     * scaled by the decimals.
+     */
+    @CordaSerializable
+    public static class Entry {
+        private final String code;
+        private final String name;
+        private final int decimals;
+        private final long issuanceLimit;
+
+        public Entry(String code, String name, int decimals, long issuanceLimit) {
+            this.code = code;
+            this.name = name;
+            this.decimals = decimals;
+            this.issuanceLimit = issuanceLimit;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDecimals() {
+            return decimals;
+        }
+
+        public long getIssuanceLimit() {
+            return issuanceLimit;
+        }
+    }
+}
@@ -1,20 +1,28 @@
 package com.template.states;
 
 import com.template.contracts.MetalContract;
-import com.template.contracts.TemplateContract;
+import com.template.schema.MetalSchemaV1;
 import net.corda.core.contracts.BelongsToContract;
-import net.corda.core.contracts.ContractState;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 // *********
 // * State *
 // *********
+/**
+ * A holding of metal in the first ledger format, with the metal's name, an int weight and well-known parties. It is
+ * kept, unchanged, so that states already on the ledger can still be read: MetalContract only lets one be spent to
+ * upgrade it to a MetalStateV2 of the same metal, weight, issuer and owner (see UpgradeMetalFlow).
+ */
 @BelongsToContract(MetalContract.class)
-public class MetalState implements ContractState {
+public class MetalState implements QueryableState {
 
     //private variables
     private String metalName;
@@ -51,4 +59,18 @@ public class MetalState implements ContractState {
     public List<AbstractParty> getParticipants() {
         return Arrays.asList(issuer,owner);
     }
+
+    @Override
+    public PersistentState generateMappedObject(MappedSchema schema) {
+        if (schema instanceof MetalSchemaV1) {
+            return new MetalSchemaV1.PersistentMetal(metalName, weight, issuer, owner);
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return Collections.singletonList(new MetalSchemaV1());
+    }
 }
\ No newline at end of file
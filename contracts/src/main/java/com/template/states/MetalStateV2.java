@@ -0,0 +1,95 @@
+package com.template.states;
+
+import com.template.contracts.MetalContract;
+import com.template.schema.MetalSchemaV2;
+import net.corda.core.contracts.BelongsToContract;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.AnonymousParty;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
+import net.corda.core.serialization.ConstructorForDeserialization;
+
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.List;
+
+// *********
+// * State *
+// *********
+/**
+ * A holding of metal, in the second ledger format. The state is kept compact because it is copied into every
+ * transaction of its backchain: the metal is a code from Metals, the weight a long count of whole units, and the
+ * issuer and owner are stored as bare public keys, with the flows resolving the well-known party when they need to
+ * open a session. A key is already described in every transaction by the notary's Party, whereas an AbstractParty
+ * property would add its own schema to each output.
+ *
+ * States of the first format are MetalStates, which UpgradeMetalFlow turns into MetalStateV2s.
+ */
+@BelongsToContract(MetalContract.class)
+public class MetalStateV2 implements QueryableState {
+
+    //private variables
+    private String metalCode;
+    private long weight;
+    private PublicKey issuerKey;
+    private PublicKey ownerKey;
+
+    @ConstructorForDeserialization
+    public MetalStateV2(String metalCode, long weight, PublicKey issuerKey, PublicKey ownerKey) {
+        this.metalCode = metalCode;
+        this.weight = weight;
+        this.issuerKey = issuerKey;
+        this.ownerKey = ownerKey;
+    }
+
+    public MetalStateV2(String metalCode, long weight, AbstractParty issuer, AbstractParty owner) {
+        this(metalCode, weight, issuer.getOwningKey(), owner.getOwningKey());
+    }
+
+    public String getMetalCode() {
+        return metalCode;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public PublicKey getIssuerKey() {
+        return issuerKey;
+    }
+
+    public PublicKey getOwnerKey() {
+        return ownerKey;
+    }
+
+    public AbstractParty getIssuer() {
+        return new AnonymousParty(issuerKey);
+    }
+
+    public AbstractParty getOwner() {
+        return new AnonymousParty(ownerKey);
+    }
+
+    /* This method will indicate who are the participants and required signers when
+     * this state is used in a transaction. Only the owner takes part: the issuer is not needed to finalise a
+     * transfer and is sent the transactions of its metal as an observer (see IssuerReportFlow). */
+    @Override
+    public List<AbstractParty> getParticipants() {
+        return Collections.singletonList(getOwner());
+    }
+
+    @Override
+    public PersistentState generateMappedObject(MappedSchema schema) {
+        if (schema instanceof MetalSchemaV2) {
+            return new MetalSchemaV2.PersistentMetal(metalCode, weight, getIssuer(), getOwner());
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return Collections.singletonList(new MetalSchemaV2());
+    }
+}
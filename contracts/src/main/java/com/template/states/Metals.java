@@ -0,0 +1,48 @@
+package com.template.states;
+
+import java.util.*;
+
+/**
+ * The registry of metal codes. A MetalStateV2 carries the short ISO 4217 style code of its metal rather than its name,
+ * so every state, transaction and vault row stores three characters instead of free text.
+ *
+ * Which metals an issuer actually issues is decided by its MetalCatalogueState; the metals here are the ones a new
+ * catalogue starts with.
+ */
+public final class Metals {
+    public static final String GOLD = "XAU";
+    public static final String SILVER = "XAG";
+
+    private static final Map<String, String> NAMES_BY_CODE;
+    static {
+        Map<String, String> names = new LinkedHashMap<>();
+        names.put(GOLD, "Gold");
+        names.put(SILVER, "Silver");
+        NAMES_BY_CODE = Collections.unmodifiableMap(names);
+    }
+
+    // Weights are whole units, as in the first format, which UpgradeMetalFlow copies unscaled; up to a billion of them
+    // can be issued at a time.
+    public static final int DEFAULT_DECIMALS = 0;
+    public static final long DEFAULT_ISSUANCE_LIMIT = 1_000_000_000L;
+
+    private Metals() { }
+
+    /* The entries of a new catalogue: every metal here, with the default precision and limit. */
+    public static List<MetalCatalogueState.Entry> defaultEntries() {
+        List<MetalCatalogueState.Entry> entries = new ArrayList<>();
+        NAMES_BY_CODE.forEach((code, name) -> entries.add(new MetalCatalogueState.Entry(code, name, DEFAULT_DECIMALS, DEFAULT_ISSUANCE_LIMIT)));
+        return entries;
+    }
+
+    /* The code of a metal given either its code or its name, such as "Gold". */
+    public static String code(String metal) {
+        if (NAMES_BY_CODE.containsKey(metal))
+            return metal;
+        for (Map.Entry<String, String> entry : NAMES_BY_CODE.entrySet()) {
+            if (entry.getValue().equalsIgnoreCase(metal))
+                return entry.getKey();
+        }
+        throw new IllegalArgumentException("Unknown metal " + metal);
+    }
+}
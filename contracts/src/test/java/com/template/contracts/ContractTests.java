@@ -1,6 +1,9 @@
 package com.template.contracts;
 
+import com.template.states.MetalCatalogueState;
 import com.template.states.MetalState;
+import com.template.states.MetalStateV2;
+import com.template.states.Metals;
 import net.corda.core.contracts.Contract;
 import net.corda.core.identity.CordaX500Name;
 import net.corda.core.identity.Party;
@@ -9,6 +12,10 @@ import net.corda.testing.core.DummyCommandData;
 import net.corda.testing.core.TestIdentity;
 import net.corda.testing.node.MockServices;
 import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
 import static net.corda.testing.node.NodeTestUtils.transaction;
 
 public class ContractTests {
@@ -18,10 +25,15 @@ public class ContractTests {
     private Party TraderA = new TestIdentity(new CordaX500Name("trader","","GB")).getParty();
     private Party TraderB = new TestIdentity(new CordaX500Name("trader","","GB")).getParty();
 
-    private MetalState metalState = new MetalState("Gold", 10, Mint, TraderA);
+    private MetalStateV2 metalState = new MetalStateV2(Metals.GOLD, 10, Mint, TraderA);
+
+    private MetalStateV2 metalStateInput = new MetalStateV2(Metals.GOLD, 10, Mint, TraderA);
+    private MetalStateV2 metalStateOutput = new MetalStateV2(Metals.GOLD, 10, Mint, TraderB);
 
-    private MetalState metalStateInput = new MetalState("Gold", 10, Mint, TraderA);
-    private MetalState metalStateOutput = new MetalState("Gold", 10, TraderA, TraderB);
+    private MetalState legacyState = new MetalState("Gold", 10, Mint, TraderA);
+
+    private MetalCatalogueState mintCatalogue = new MetalCatalogueState(Mint, Metals.defaultEntries());
+    private MetalCatalogueState traderBCatalogue = new MetalCatalogueState(TraderB, Metals.defaultEntries());
 
 
     @Test
@@ -35,6 +47,7 @@ public class ContractTests {
     public void metalContractRequiresZeroInputsInIssueTrx() {
         transaction(ledgerServices, tx -> {
             //Has an input, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.input(MetalContract.CID, metalState);
             tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
             tx.fails();
@@ -43,6 +56,7 @@ public class ContractTests {
 
         transaction(ledgerServices, tx -> {
             //Does not have input, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.output(MetalContract.CID, metalState);
             tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
             tx.verifies();
@@ -51,11 +65,10 @@ public class ContractTests {
     }
 
     @Test
-    public void metalContractRequiresOneOutputInIssueTrx() {
+    public void metalContractRequiresAtLeastOneOutputInIssueTrx() {
         transaction(ledgerServices, tx -> {
-            //Has two outputs, will fail
-            tx.output(MetalContract.CID, metalState);
-            tx.output(MetalContract.CID, metalState);
+            //Has no outputs, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
             tx.fails();
             return null;
@@ -63,17 +76,52 @@ public class ContractTests {
 
         transaction(ledgerServices, tx -> {
             //Has one output, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.output(MetalContract.CID, metalState);
             tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
             tx.verifies();
             return null;
         });
+
+        transaction(ledgerServices, tx -> {
+            //Has two outputs, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.output(MetalContract.CID, metalState);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.SILVER, 100, Mint, TraderB));
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void metalContractValidatesEveryOutputInIssueTrx() {
+        transaction(ledgerServices, tx -> {
+            //Second output is not a valid metal, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.output(MetalContract.CID, metalState);
+            tx.output(MetalContract.CID, new MetalStateV2("XCU", 10, Mint, TraderB));
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Second output's issuer has not signed, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.output(MetalContract.CID, metalState);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 10, TraderA, TraderB));
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.fails();
+            return null;
+        });
     }
 
     @Test
     public void metalContractRequiresTheTrxOutputToBeOfMetalState() {
         transaction(ledgerServices, tx -> {
             //Has wrong output state, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.output(MetalContract.CID, new DummyState());
             tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
             tx.fails();
@@ -82,6 +130,7 @@ public class ContractTests {
 
         transaction(ledgerServices, tx -> {
             //Has correct output state, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.output(MetalContract.CID, metalState);
             tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
             tx.verifies();
@@ -93,6 +142,7 @@ public class ContractTests {
     public void metalContractRequiresTheTrxCommandToBeAnIssueCommand() {
         transaction(ledgerServices, tx -> {
             //Has wrong command, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.output(MetalContract.CID, new DummyState());
             tx.command(Mint.getOwningKey(), DummyCommandData.INSTANCE);
             tx.fails();
@@ -101,6 +151,7 @@ public class ContractTests {
 
         transaction(ledgerServices, tx -> {
             //Has correct command, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.output(MetalContract.CID, metalState);
             tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
             tx.verifies();
@@ -112,6 +163,7 @@ public class ContractTests {
     public void metalContractRequiresTheIssuerToBeASignerInTheTrx() {
         transaction(ledgerServices, tx -> {
             //Issuer is not a required signer, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.output(MetalContract.CID, new DummyState());
             tx.command(TraderA.getOwningKey(), DummyCommandData.INSTANCE);
             tx.fails();
@@ -120,6 +172,7 @@ public class ContractTests {
 
         transaction(ledgerServices, tx -> {
             //Issuer is a required signer, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.output(MetalContract.CID, metalState);
             tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
             tx.verifies();
@@ -133,6 +186,7 @@ public class ContractTests {
     public void metalContractRequiresOneInputAndOneOutputInTransferTrx() {
         transaction(ledgerServices, tx -> {
             //Does not have an input, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.output(MetalContract.CID, metalStateOutput);
             tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
             tx.fails();
@@ -141,6 +195,7 @@ public class ContractTests {
 
         transaction(ledgerServices, tx -> {
             //Does not have an output, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.input(MetalContract.CID, metalStateInput);
             tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
             tx.fails();
@@ -149,6 +204,7 @@ public class ContractTests {
 
         transaction(ledgerServices, tx -> {
             //Has an input and an output, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.input(MetalContract.CID, metalStateInput);
             tx.output(MetalContract.CID, metalStateOutput);
             tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
@@ -161,6 +217,7 @@ public class ContractTests {
     public void metalContractRequiresTheTrxCommandToBeATransferCommand() {
         transaction(ledgerServices, tx -> {
             //Has wrong command, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.input(MetalContract.CID, metalStateInput);
             tx.output(MetalContract.CID, metalStateOutput);
             tx.command(TraderA.getOwningKey(), DummyCommandData.INSTANCE);
@@ -170,6 +227,7 @@ public class ContractTests {
 
         transaction(ledgerServices, tx -> {
             //has a correct command, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.input(MetalContract.CID, metalStateInput);
             tx.output(MetalContract.CID, metalStateOutput);
             tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
@@ -182,6 +240,7 @@ public class ContractTests {
     public void metalContractRequiresTheOwnerToBeArequiredSigner() {
         transaction(ledgerServices, tx -> {
             //Owner is not a required signer, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.input(MetalContract.CID, metalStateInput);
             tx.output(MetalContract.CID, metalStateOutput);
             tx.command(Mint.getOwningKey(), new MetalContract.Commands.Transfer());
@@ -191,6 +250,7 @@ public class ContractTests {
 
         transaction(ledgerServices, tx -> {
             //Owner is a required signer, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
             tx.input(MetalContract.CID, metalStateInput);
             tx.output(MetalContract.CID, metalStateOutput);
             tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
@@ -198,4 +258,430 @@ public class ContractTests {
             return null;
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    public void metalContractAllowsSplittingAndMergingInTransferTrx() {
+        transaction(ledgerServices, tx -> {
+            //Splits one input into a payment and change, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 4, Mint, TraderB));
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 6, Mint, TraderA));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Merges two inputs into one output, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.input(MetalContract.CID, new MetalStateV2(Metals.GOLD, 5, Mint, TraderA));
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 15, Mint, TraderB));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void metalContractRequiresWeightToBeConservedPerMetalAndIssuerInTransferTrx() {
+        transaction(ledgerServices, tx -> {
+            //Creates weight, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 11, Mint, TraderB));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Changes the issuer, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 10, TraderA, TraderB));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Changes the metal, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.SILVER, 10, Mint, TraderB));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.fails();
+            return null;
+        });
+    }
+
+    // Merge Commands
+
+    @Test
+    public void metalContractAllowsMergingUnderTheSameOwner() {
+        transaction(ledgerServices, tx -> {
+            //Merges two states of the owner into one, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.input(MetalContract.CID, new MetalStateV2(Metals.GOLD, 5, Mint, TraderA));
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 15, Mint, TraderA));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Merge());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Moves the merged state to another owner, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.input(MetalContract.CID, new MetalStateV2(Metals.GOLD, 5, Mint, TraderA));
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 15, Mint, TraderB));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Merge());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Does not reduce the number of states, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.input(MetalContract.CID, new MetalStateV2(Metals.GOLD, 5, Mint, TraderA));
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 7, Mint, TraderA));
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 8, Mint, TraderA));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Merge());
+            tx.fails();
+            return null;
+        });
+    }
+
+    // Batched transactions
+
+    @Test
+    public void metalContractAllowsIndependentIssuesTransfersAndMergesInOneTrx() {
+        transaction(ledgerServices, tx -> {
+            //Issues silver, transfers gold and merges gold from another issuer, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.reference(MetalCatalogueContract.CID, traderBCatalogue);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.SILVER, 100, Mint, TraderB));
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, metalStateOutput);
+            tx.input(MetalContract.CID, new MetalStateV2(Metals.GOLD, 5, TraderB, TraderA));
+            tx.input(MetalContract.CID, new MetalStateV2(Metals.GOLD, 7, TraderB, TraderA));
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 12, TraderB, TraderA));
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Merge());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //The transfer's owner only signs the issuance, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.SILVER, 100, Mint, TraderB));
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, metalStateOutput);
+            tx.command(Arrays.asList(Mint.getOwningKey(), TraderA.getOwningKey()), new MetalContract.Commands.Issue());
+            tx.fails();
+            return null;
+        });
+    }
+
+    @Test
+    public void metalContractRequiresEveryCommandToMatchAGroup() {
+        transaction(ledgerServices, tx -> {
+            //Transfer command without anything to transfer, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.output(MetalContract.CID, metalState);
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Merge command over a group that is only transferred, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, metalStateOutput);
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Merge());
+            tx.fails();
+            return null;
+        });
+    }
+
+    // Exit commands
+
+    @Test
+    public void metalContractRequiresTheIssuerAndOwnerToSignAnExit() {
+        transaction(ledgerServices, tx -> {
+            //Signed by the owner only, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Exit());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Signed by the issuer only, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Exit());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Signed by both, will verify
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.command(Arrays.asList(Mint.getOwningKey(), TraderA.getOwningKey()), new MetalContract.Commands.Exit());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void metalContractRequiresAnExitToHaveNoOutputs() {
+        transaction(ledgerServices, tx -> {
+            //Exit alongside a transfer of the same group, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, metalStateOutput);
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.command(Arrays.asList(Mint.getOwningKey(), TraderA.getOwningKey()), new MetalContract.Commands.Exit());
+            tx.fails();
+            return null;
+        });
+    }
+
+    // Upgrade commands
+
+    @Test
+    public void metalContractOnlyLetsAFirstFormatStateBeUpgraded() {
+        transaction(ledgerServices, tx -> {
+            //Transfers a first-format state, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.input(MetalContract.CID, legacyState);
+            tx.output(MetalContract.CID, metalStateOutput);
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Upgrades it alongside a transfer, will fail
+            tx.input(MetalContract.CID, legacyState);
+            tx.input(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, metalStateInput);
+            tx.output(MetalContract.CID, metalStateOutput);
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Upgrade());
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Outputs a first-format state, will fail
+            tx.input(MetalContract.CID, legacyState);
+            tx.output(MetalContract.CID, legacyState);
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Upgrade());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Signed by the owner, into the same holding, will verify
+            tx.input(MetalContract.CID, legacyState);
+            tx.output(MetalContract.CID, metalStateInput);
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Upgrade());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void metalContractRequiresAnUpgradeToKeepEachHolding() {
+        transaction(ledgerServices, tx -> {
+            //Not signed by the owner, will fail
+            tx.input(MetalContract.CID, legacyState);
+            tx.output(MetalContract.CID, metalStateInput);
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Upgrade());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Changes the weight, will fail
+            tx.input(MetalContract.CID, legacyState);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 11, Mint, TraderA));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Upgrade());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Changes the metal, will fail
+            tx.input(MetalContract.CID, legacyState);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.SILVER, 10, Mint, TraderA));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Upgrade());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Changes the owner, will fail
+            tx.input(MetalContract.CID, legacyState);
+            tx.output(MetalContract.CID, metalStateOutput);
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Upgrade());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Splits the holding, will verify
+            tx.input(MetalContract.CID, legacyState);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 4, Mint, TraderA));
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 6, Mint, TraderA));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Upgrade());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    // Metal catalogue
+
+    @Test
+    public void metalContractRequiresTheIssuersCatalogueToBeReferenced() {
+        transaction(ledgerServices, tx -> {
+            //References no catalogue, will fail
+            tx.output(MetalContract.CID, metalState);
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //References another issuer's catalogue, will fail
+            tx.reference(MetalCatalogueContract.CID, traderBCatalogue);
+            tx.output(MetalContract.CID, metalState);
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //References two catalogues of the same issuer, will fail
+            tx.reference(MetalCatalogueContract.CID, mintCatalogue);
+            tx.reference(MetalCatalogueContract.CID, new MetalCatalogueState(Mint, Metals.defaultEntries()));
+            tx.output(MetalContract.CID, metalState);
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.fails();
+            return null;
+        });
+    }
+
+    @Test
+    public void metalContractRequiresTheMetalToBeInTheCatalogue() {
+        MetalCatalogueState goldOnly = mintCatalogue.withEntries(Collections.singletonList(
+                new MetalCatalogueState.Entry(Metals.GOLD, "Gold", Metals.DEFAULT_DECIMALS, 10)));
+
+        transaction(ledgerServices, tx -> {
+            //Issues silver the catalogue does not list, will fail
+            tx.reference(MetalCatalogueContract.CID, goldOnly);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.SILVER, 10, Mint, TraderA));
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Transfers silver already issued, though the catalogue no longer lists it, will verify
+            tx.reference(MetalCatalogueContract.CID, goldOnly);
+            tx.input(MetalContract.CID, new MetalStateV2(Metals.SILVER, 10, Mint, TraderA));
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.SILVER, 10, Mint, TraderB));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Transfers without referencing any catalogue, will verify
+            tx.input(MetalContract.CID, new MetalStateV2(Metals.GOLD, 10, Mint, TraderA));
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 10, Mint, TraderB));
+            tx.command(TraderA.getOwningKey(), new MetalContract.Commands.Transfer());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Issues more than the catalogue's limit, will fail
+            tx.reference(MetalCatalogueContract.CID, goldOnly);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 11, Mint, TraderA));
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Issues up to the catalogue's limit, will verify
+            tx.reference(MetalCatalogueContract.CID, goldOnly);
+            tx.output(MetalContract.CID, new MetalStateV2(Metals.GOLD, 10, Mint, TraderA));
+            tx.command(Mint.getOwningKey(), new MetalContract.Commands.Issue());
+            tx.verifies();
+            return null;
+        });
+    }
+
+    @Test
+    public void metalCatalogueContractValidatesTheCatalogue() {
+        transaction(ledgerServices, tx -> {
+            //Creates a catalogue signed by its maintainer, will verify
+            tx.output(MetalCatalogueContract.CID, mintCatalogue);
+            tx.command(Mint.getOwningKey(), new MetalCatalogueContract.Commands.Create());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Not signed by the maintainer, will fail
+            tx.output(MetalCatalogueContract.CID, mintCatalogue);
+            tx.command(TraderA.getOwningKey(), new MetalCatalogueContract.Commands.Create());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Lists the same code twice, will fail
+            tx.output(MetalCatalogueContract.CID, mintCatalogue.withEntries(Arrays.asList(
+                    new MetalCatalogueState.Entry(Metals.GOLD, "Gold", 3, 10),
+                    new MetalCatalogueState.Entry(Metals.GOLD, "Gold", 3, 20))));
+            tx.command(Mint.getOwningKey(), new MetalCatalogueContract.Commands.Create());
+            tx.fails();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Updates the catalogue in place, will verify
+            tx.input(MetalCatalogueContract.CID, mintCatalogue);
+            tx.output(MetalCatalogueContract.CID, mintCatalogue.withEntries(Collections.singletonList(
+                    new MetalCatalogueState.Entry(Metals.GOLD, "Gold", 3, 10))));
+            tx.command(Mint.getOwningKey(), new MetalCatalogueContract.Commands.Update());
+            tx.verifies();
+            return null;
+        });
+
+        transaction(ledgerServices, tx -> {
+            //Update replaces the catalogue with a new one, will fail
+            tx.input(MetalCatalogueContract.CID, mintCatalogue);
+            tx.output(MetalCatalogueContract.CID, new MetalCatalogueState(Mint, Metals.defaultEntries()));
+            tx.command(Mint.getOwningKey(), new MetalCatalogueContract.Commands.Update());
+            tx.fails();
+            return null;
+        });
+    }
+}
@@ -1,9 +1,12 @@
 package com.template.contracts;
 
-import com.template.states.MetalState;
+import com.template.schema.MetalSchemaV2;
+import com.template.states.MetalStateV2;
+import com.template.states.Metals;
 import net.corda.core.contracts.ContractState;
 import net.corda.core.identity.CordaX500Name;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.QueryableState;
 import net.corda.testing.core.TestIdentity;
 import net.corda.testing.node.MockServices;
 import org.junit.Test;
@@ -19,24 +22,36 @@ public class StateTests {
 
     @Test
     public void metalStateImplementsContractState() {
-        assertTrue(new MetalState("Gold", 10, Mint, Trader) instanceof ContractState);
+        assertTrue(new MetalStateV2(Metals.GOLD, 10, Mint, Trader) instanceof ContractState);
     }
 
     @Test
-    public void metalStateHasTwoParticipantsTheIssuerAndOwner() {
-        MetalState metalState = new MetalState("Gold", 10, Mint, Trader);
-        assertEquals(2, metalState.getParticipants().size());
-        assertTrue(metalState.getParticipants().contains(Mint));
+    public void metalStateHasOneParticipantTheOwner() {
+        MetalStateV2 metalState = new MetalStateV2(Metals.GOLD, 10, Mint, Trader);
+        assertEquals(1, metalState.getParticipants().size());
         assertTrue(metalState.getParticipants().contains(Trader));
     }
 
     @Test
     public void metalStateHasGettersForAllFields() {
-        MetalState metalState = new MetalState("Gold", 10, Mint, Trader);
-        assertEquals("Gold", metalState.getMetalName());
+        MetalStateV2 metalState = new MetalStateV2(Metals.GOLD, 10, Mint, Trader);
+        assertEquals(Metals.GOLD, metalState.getMetalCode());
         assertEquals(10, metalState.getWeight());
         assertEquals(Mint, metalState.getIssuer());
         assertEquals(Trader, metalState.getOwner());
     }
 
+    @Test
+    public void metalStateIsQueryableThroughTheMetalSchema() {
+        MetalStateV2 metalState = new MetalStateV2(Metals.GOLD, 10, Mint, Trader);
+        assertTrue(metalState instanceof QueryableState);
+
+        MetalSchemaV2.PersistentMetal persistentMetal =
+                (MetalSchemaV2.PersistentMetal) metalState.generateMappedObject(new MetalSchemaV2());
+        assertEquals(Metals.GOLD, persistentMetal.getMetalCode());
+        assertEquals(10, persistentMetal.getWeight());
+        assertEquals(Mint, persistentMetal.getIssuer());
+        assertEquals(Trader, persistentMetal.getOwner());
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,31 @@
+package com.template.load;
+
+import java.util.Arrays;
+
+/**
+ * Collects flow latencies in microseconds and reports percentiles over everything recorded.
+ */
+class LatencyRecorder {
+    private long[] latencies = new long[1024];
+    private int count;
+
+    synchronized void record(long micros) {
+        if (count == latencies.length)
+            latencies = Arrays.copyOf(latencies, count * 2);
+        latencies[count++] = micros;
+    }
+
+    synchronized int count() {
+        return count;
+    }
+
+    /* The latency at the given percentile, by the nearest-rank method, or 0 if nothing was recorded. */
+    synchronized long percentile(double percentile) {
+        if (count == 0)
+            return 0;
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
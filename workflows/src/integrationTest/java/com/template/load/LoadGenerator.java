@@ -0,0 +1,227 @@
+package com.template.load;
+
+import com.template.flows.BatchIssueMetalFlow;
+import com.template.flows.IssueMetalFlow;
+import com.template.flows.PublishMetalCatalogueFlow;
+import com.template.flows.TransferMetalFlow;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.flows.NotaryError;
+import net.corda.core.flows.NotaryException;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.driver.DriverDSL;
+import net.corda.testing.driver.DriverParameters;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.driver.NodeParameters;
+import net.corda.testing.driver.VerifierType;
+import net.corda.testing.node.NotarySpec;
+import net.corda.testing.node.TestCordapp;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static net.corda.testing.driver.Driver.driver;
+
+/**
+ * Drives a mix of IssueMetalFlow and TransferMetalFlow against a Notary, Mint, TraderA and TraderB, named as in
+ * deployNodes but started fresh by the node driver, each node in its own JVM, and reports the sustained transactions
+ * per second, flow latency percentiles, notary conflicts and node heap use. Nodes built by deployNodes are not used.
+ *
+ * Run it with ./gradlew workflows:loadTest. Everything is configured through system properties, which the Gradle task
+ * passes on from -P project properties of the same name:
+ *
+ *   load.durationSeconds  how long to measure for (60)
+ *   load.warmupSeconds    how long to run before measuring (15)
+ *   load.concurrency      the most flows in flight at once (16)
+ *   load.rate             the target flows per second, or 0 to run as fast as the concurrency allows (0)
+ *   load.issueRatio       the share of flows that are issuances rather than transfers (0.2)
+ *   load.seedStates       the states issued to each trader before the run, so transfers have something to spend (500)
+ *   load.nodeHeap         the maximum heap of each node (1g)
+ *
+ * Issuances run on the Mint, transfers run on a trader and send one unit of Gold to the other trader, so the
+ * traders' balances stay roughly level however long the run.
+ */
+public class LoadGenerator {
+    private static final CordaX500Name NOTARY = CordaX500Name.parse("O=Notary,L=London,C=GB");
+    private static final CordaX500Name MINT = CordaX500Name.parse("O=Mint,L=London,C=GB");
+    private static final CordaX500Name TRADER_A = CordaX500Name.parse("O=TraderA,L=New York,C=US");
+    private static final CordaX500Name TRADER_B = CordaX500Name.parse("O=TraderB,L=New York,C=US");
+
+    private static final String METAL = "Gold";
+    private static final long SEED_WEIGHT = 10;
+    private static final int SEED_BATCH = 50;
+    private static final long HEAP_SAMPLE_SECONDS = 5;
+
+    private final int durationSeconds = Integer.getInteger("load.durationSeconds", 60);
+    private final int warmupSeconds = Integer.getInteger("load.warmupSeconds", 15);
+    private final int concurrency = Integer.getInteger("load.concurrency", 16);
+    private final double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+    private final double issueRatio = Double.parseDouble(System.getProperty("load.issueRatio", "0.2"));
+    private final int seedStates = Integer.getInteger("load.seedStates", 500);
+    private final String nodeHeap = System.getProperty("load.nodeHeap", "1g");
+
+    private final LatencyRecorder issueLatencies = new LatencyRecorder();
+    private final LatencyRecorder transferLatencies = new LatencyRecorder();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger notaryConflicts = new AtomicInteger();
+    private final Map<CordaX500Name, AtomicLong> peakHeap = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) {
+        new LoadGenerator().run();
+    }
+
+    private void run() {
+        DriverParameters parameters = new DriverParameters()
+                .withStartNodesInProcess(false)
+                .withNotarySpecs(Collections.singletonList(new NotarySpec(NOTARY, false, Collections.emptyList(), VerifierType.InMemory, null)))
+                .withCordappsForAllNodes(Arrays.asList(
+                        TestCordapp.findCordapp("com.template.contracts"),
+                        TestCordapp.findCordapp("com.template.flows"),
+                        TestCordapp.findCordapp("com.template.load")));
+
+        driver(parameters, dsl -> {
+            try {
+                NodeHandle mint = startNode(dsl, MINT).get();
+                NodeHandle traderA = startNode(dsl, TRADER_A).get();
+                NodeHandle traderB = startNode(dsl, TRADER_B).get();
+                List<NodeHandle> nodes = Arrays.asList(mint, traderA, traderB);
+
+                //Every issue and transfer references the Mint's catalogue, so the traders need it first
+                mint.getRpc().startFlowDynamic(PublishMetalCatalogueFlow.class, Arrays.asList(
+                        traderA.getNodeInfo().getLegalIdentities().get(0),
+                        traderB.getNodeInfo().getLegalIdentities().get(0))).getReturnValue().get();
+                seed(mint.getRpc(), traderA.getNodeInfo().getLegalIdentities().get(0));
+                seed(mint.getRpc(), traderB.getNodeInfo().getLegalIdentities().get(0));
+
+                ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor();
+                heapSampler.scheduleAtFixedRate(() -> sampleHeap(nodes), 0, HEAP_SAMPLE_SECONDS, TimeUnit.SECONDS);
+                try {
+                    generate(mint, traderA, traderB);
+                } finally {
+                    heapSampler.shutdownNow();
+                }
+                report();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Load generation failed", e);
+            }
+            return null;
+        });
+    }
+
+    private CordaFuture<NodeHandle> startNode(DriverDSL dsl, CordaX500Name name) {
+        return dsl.startNode(new NodeParameters().withProvidedName(name).withMaximumHeapSize(nodeHeap));
+    }
+
+    /* Issues the traders their opening holdings in batches, so the run starts with plenty of states to spend. */
+    private void seed(CordaRPCOps mint, Party trader) throws InterruptedException, ExecutionException {
+        for (int issued = 0; issued < seedStates; issued += SEED_BATCH) {
+            List<BatchIssueMetalFlow.Issuance> batch = new ArrayList<>();
+            for (int i = 0; i < Math.min(SEED_BATCH, seedStates - issued); i++) {
+                batch.add(new BatchIssueMetalFlow.Issuance(METAL, SEED_WEIGHT, trader));
+            }
+            mint.startFlowDynamic(BatchIssueMetalFlow.class, batch).getReturnValue().get();
+        }
+    }
+
+    /*
+     * Keeps up to load.concurrency flows in flight, starting them at load.rate a second when a rate is set. Only flows
+     * started after the warmup are measured.
+     */
+    private void generate(NodeHandle mint, NodeHandle traderA, NodeHandle traderB) throws InterruptedException {
+        Party partyA = traderA.getNodeInfo().getLegalIdentities().get(0);
+        Party partyB = traderB.getNodeInfo().getLegalIdentities().get(0);
+        Semaphore inFlight = new Semaphore(concurrency);
+        Random random = new Random();
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+        long next = start;
+
+        while (System.nanoTime() < end) {
+            if (interval > 0) {
+                long wait = next - System.nanoTime();
+                if (wait > 0)
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                next += interval;
+            }
+            inFlight.acquire();
+            boolean measured = System.nanoTime() >= measureFrom;
+
+            boolean issue = random.nextDouble() < issueRatio;
+            boolean fromA = random.nextBoolean();
+            long started = System.nanoTime();
+            CordaFuture<SignedTransaction> result;
+            if (issue) {
+                result = mint.getRpc().startFlowDynamic(IssueMetalFlow.class, METAL, 1L, fromA ? partyA : partyB).getReturnValue();
+            } else {
+                CordaRPCOps sender = (fromA ? traderA : traderB).getRpc();
+                result = sender.startFlowDynamic(TransferMetalFlow.class, METAL, 1L, fromA ? partyB : partyA).getReturnValue();
+            }
+
+            LatencyRecorder latencies = issue ? issueLatencies : transferLatencies;
+            result.then(future -> {
+                inFlight.release();
+                if (!measured)
+                    return null;
+                try {
+                    future.get();
+                    latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+                } catch (ExecutionException e) {
+                    failed(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+        }
+
+        // Let the last flows finish, so they are counted.
+        inFlight.acquire(concurrency);
+    }
+
+    private void failed(Throwable error) {
+        failures.incrementAndGet();
+        if (error instanceof NotaryException && ((NotaryException) error).getError() instanceof NotaryError.Conflict)
+            notaryConflicts.incrementAndGet();
+    }
+
+    private void sampleHeap(List<NodeHandle> nodes) {
+        for (NodeHandle node : nodes) {
+            try {
+                long used = node.getRpc().startFlowDynamic(NodeHeapFlow.class).getReturnValue().get();
+                CordaX500Name name = node.getNodeInfo().getLegalIdentities().get(0).getName();
+                peakHeap.computeIfAbsent(name, key -> new AtomicLong()).accumulateAndGet(used, Math::max);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // A missed sample only makes the peak less exact.
+            }
+        }
+    }
+
+    private void report() {
+        int completed = issueLatencies.count() + transferLatencies.count();
+        System.out.println();
+        System.out.println(String.format("Load: %d s measured after %d s warmup, concurrency %d, target rate %s, issue ratio %.2f",
+                durationSeconds, warmupSeconds, concurrency, rate > 0 ? rate + "/s" : "unbounded", issueRatio));
+        System.out.println(String.format("Sustained throughput: %.1f tx/s (%d completed, %d failed, %d notary conflicts)",
+                (double) completed / durationSeconds, completed, failures.get(), notaryConflicts.get()));
+        printLatencies("IssueMetalFlow", issueLatencies);
+        printLatencies("TransferMetalFlow", transferLatencies);
+        peakHeap.forEach((name, used) -> System.out.println(String.format("Peak heap used on %s: %d MB of %s",
+                name.getOrganisation(), used.get() / (1024 * 1024), nodeHeap)));
+    }
+
+    private static void printLatencies(String flow, LatencyRecorder latencies) {
+        System.out.println(String.format("%s latency (ms): p50 %.1f, p95 %.1f, p99 %.1f over %d flows", flow,
+                latencies.percentile(50) / 1000.0, latencies.percentile(95) / 1000.0, latencies.percentile(99) / 1000.0,
+                latencies.count()));
+    }
+}
@@ -0,0 +1,16 @@
+package com.template.load;
+
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+/**
+ * Reports the bytes of heap in use on the node it runs on. It is only deployed to the load generator's nodes.
+ */
+@StartableByRPC
+public class NodeHeapFlow extends FlowLogic<Long> {
+    @Override
+    public Long call() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,32 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+
+import java.time.Instant;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Returns the metal balances of every owner in our vault as of a point in time, read from the
+ * BalanceHistoryService rather than by rescanning the vault.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class BalanceAsOfFlow extends FlowLogic<List<MetalBalance>> {
+
+    //private variables
+    private Instant asOf;
+
+    public BalanceAsOfFlow(Instant asOf) {
+        this.asOf = asOf;
+    }
+
+    @Suspendable
+    @Override
+    public List<MetalBalance> call() throws FlowException {
+        return getServiceHub().cordaService(BalanceHistoryService.class).balancesAsOf(asOf);
+    }
+}
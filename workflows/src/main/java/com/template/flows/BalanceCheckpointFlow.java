@@ -0,0 +1,20 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByService;
+
+/**
+ * Writes the balance checkpoints now due (see BalanceHistoryService) and returns how many it wrote. They commit with
+ * the flow, so a run that fails leaves the checkpoints as they were and the next run starts from the same one.
+ */
+@StartableByService
+public class BalanceCheckpointFlow extends FlowLogic<Integer> {
+
+    @Suspendable
+    @Override
+    public Integer call() throws FlowException {
+        return getServiceHub().cordaService(BalanceHistoryService.class).writeDueCheckpoints();
+    }
+}
@@ -0,0 +1,311 @@
+package com.template.flows;
+
+import com.template.schema.BalanceHistorySchemaV1.BalanceCheckpoint;
+import com.template.schema.BalanceHistorySchemaV1.CheckpointBalance;
+import com.template.states.MetalStateV2;
+import kotlin.jvm.functions.Function1;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.*;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+/**
+ * Answers "what did each owner hold at a given time" without replaying the whole vault for every question.
+ *
+ * Every MetalStateV2 recorded or consumed is a weight change against its owner and metal, at the time the vault
+ * recorded or consumed it. Checkpoints of the running balances are kept in the node's database, in the
+ * BalanceHistorySchemaV1 tables. A balance as of some time starts from the nearest checkpoint at or before it and
+ * applies only the changes the vault recorded or consumed since, read a page at a time, so neither the history nor
+ * the vault is ever held in memory.
+ *
+ * Checkpoints are kept up to date in the background by BalanceCheckpointFlow, which carries the balances on from the
+ * newest checkpoint and writes one every so many changes or so much time past the last. It runs on a schedule and
+ * whenever that many changes have reached the vault, one run at a time, and writes its checkpoints in its own
+ * database transaction, so answering never writes. None is taken within a minute of the node's clock, where a
+ * transaction still committing could yet be recorded. The CorDapp config controls how often:
+ *
+ *   balanceHistory.checkpointEvery    - changes between checkpoints (default 1000)
+ *   balanceHistory.checkpointMinutes  - minutes between checkpoints, and between runs (default 60)
+ *
+ * Only MetalStateV2s are counted. Metal held in the first format counts from the time UpgradeMetalFlow upgraded it,
+ * so balances as of a time before an upgrade are not supported: they leave out the metal it upgraded.
+ */
+@CordaService
+public class BalanceHistoryService extends SingletonSerializeAsToken {
+    private static final Logger logger = LoggerFactory.getLogger(BalanceHistoryService.class);
+
+    private static final int PAGE_SIZE = 200;
+    private static final Duration SETTLE_MARGIN = Duration.ofMinutes(1);
+
+    private final AppServiceHub serviceHub;
+    private final int checkpointEvery;
+    private final Duration checkpointPeriod;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "balance-checkpoints");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger changesSinceLastRun = new AtomicInteger(0);
+
+    public BalanceHistoryService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.checkpointEvery = config.exists("balanceHistory.checkpointEvery") ? config.getInt("balanceHistory.checkpointEvery") : 1000;
+        this.checkpointPeriod = Duration.ofMinutes(config.exists("balanceHistory.checkpointMinutes") ? config.getLong("balanceHistory.checkpointMinutes") : 60);
+
+        start();
+    }
+
+    private void start() {
+        if (!checkpointPeriod.isZero())
+            executor.scheduleWithFixedDelay(this::runCheckpoints, checkpointPeriod.toMinutes(), checkpointPeriod.toMinutes(), TimeUnit.MINUTES);
+
+        // The updates feed only counts changes, which ones are due a checkpoint is decided by the flow.
+        serviceHub.getVaultService().getUpdates().subscribe(update -> {
+            int changes = 0;
+            for (StateAndRef<ContractState> produced : update.getProduced()) {
+                if (produced.getState().getData() instanceof MetalStateV2)
+                    changes++;
+            }
+            for (StateAndRef<ContractState> consumed : update.getConsumed()) {
+                if (consumed.getState().getData() instanceof MetalStateV2)
+                    changes++;
+            }
+            if (changes > 0 && changesSinceLastRun.addAndGet(changes) >= checkpointEvery)
+                executor.execute(this::runCheckpoints);
+        });
+    }
+
+    private void runCheckpoints() {
+        if (!running.compareAndSet(false, true))
+            return;
+
+        changesSinceLastRun.set(0);
+        try {
+            serviceHub.startFlow(new BalanceCheckpointFlow())
+                    .getReturnValue().toCompletableFuture()
+                    .whenComplete((written, error) -> {
+                        if (error != null)
+                            logger.warn("Balance checkpointing failed", error);
+                        else if (written > 0)
+                            logger.info("Wrote {} balance checkpoints", written);
+                        running.set(false);
+                    });
+        } catch (RuntimeException e) {
+            logger.warn("Could not start balance checkpointing", e);
+            running.set(false);
+        }
+    }
+
+    /* The balance of every owner and metal as of the given time. Must be called from a flow. */
+    public List<MetalBalance> balancesAsOf(Instant asOf) {
+        Instant checkpointTime = checkpointAtOrBefore(asOf);
+        Map<String, Map<String, Long>> balances = checkpointTime == null ? new TreeMap<>() : checkpointBalances(checkpointTime);
+
+        ChangeMerge changes = new ChangeMerge(checkpointTime, asOf);
+        for (Change change = changes.next(); change != null; change = changes.next()) {
+            apply(balances, change);
+        }
+
+        List<MetalBalance> result = new ArrayList<>();
+        balances.forEach((owner, metals) -> metals.forEach((metalCode, weight) -> {
+            if (weight != 0)
+                result.add(new MetalBalance(owner, metalCode, weight));
+        }));
+        return result;
+    }
+
+    /* Carries the balances on from the newest checkpoint to the settled past, writing every checkpoint now due, and
+     * returns how many it wrote. Must be called from BalanceCheckpointFlow, whose transaction they are written in. */
+    int writeDueCheckpoints() {
+        Instant settled = serviceHub.getClock().instant().minus(SETTLE_MARGIN);
+        Instant newest = newestCheckpoint();
+        Map<String, Map<String, Long>> balances = newest == null ? new TreeMap<>() : checkpointBalances(newest);
+
+        ChangeMerge changes = new ChangeMerge(newest, settled);
+        Instant since = newest;
+        int sinceCount = 0;
+        int written = 0;
+        Change previous = null;
+        for (Change change = changes.next(); ; change = changes.next()) {
+            // A checkpoint holds every change at or before its time, so it may only fall between two times. Nothing
+            // after the settled time is read, so the last change read is complete.
+            if (previous != null && (change == null || change.time.isAfter(previous.time))
+                    && (sinceCount >= checkpointEvery || !previous.time.isBefore(since.plus(checkpointPeriod)))) {
+                writeCheckpoint(previous.time, balances);
+                since = previous.time;
+                sinceCount = 0;
+                written++;
+            }
+            if (change == null)
+                return written;
+
+            apply(balances, change);
+            if (since == null)
+                since = change.time;
+            sinceCount++;
+            previous = change;
+        }
+    }
+
+    private Instant newestCheckpoint() {
+        Function1<EntityManager, List<Instant>> query = entityManager -> entityManager
+                .createQuery("SELECT MAX(c.checkpointTime) FROM BalanceCheckpoint c", Instant.class)
+                .getResultList();
+        List<Instant> newest = serviceHub.withEntityManager(query);
+        return newest.isEmpty() ? null : newest.get(0);
+    }
+
+    private Instant checkpointAtOrBefore(Instant asOf) {
+        Function1<EntityManager, List<Instant>> query = entityManager -> entityManager
+                .createQuery("SELECT c.checkpointTime FROM BalanceCheckpoint c WHERE c.checkpointTime <= :asOf ORDER BY c.checkpointTime DESC", Instant.class)
+                .setParameter("asOf", asOf)
+                .setMaxResults(1)
+                .getResultList();
+        List<Instant> floor = serviceHub.withEntityManager(query);
+        return floor.isEmpty() ? null : floor.get(0);
+    }
+
+    private Map<String, Map<String, Long>> checkpointBalances(Instant checkpointTime) {
+        Function1<EntityManager, List<CheckpointBalance>> query = entityManager -> entityManager
+                .createQuery("SELECT b FROM CheckpointBalance b WHERE b.checkpointTime = :checkpointTime", CheckpointBalance.class)
+                .setParameter("checkpointTime", checkpointTime)
+                .getResultList();
+        Map<String, Map<String, Long>> balances = new TreeMap<>();
+        for (CheckpointBalance balance : serviceHub.withEntityManager(query)) {
+            balances.computeIfAbsent(balance.getOwner(), owner -> new TreeMap<>()).put(balance.getMetalCode(), balance.getWeight());
+        }
+        return balances;
+    }
+
+    private void writeCheckpoint(Instant checkpointTime, Map<String, Map<String, Long>> balances) {
+        serviceHub.withEntityManager(entityManager -> {
+            entityManager.persist(new BalanceCheckpoint(checkpointTime));
+            balances.forEach((owner, metals) -> metals.forEach((metalCode, weight) -> {
+                if (weight != 0)
+                    entityManager.persist(new CheckpointBalance(checkpointTime, owner, metalCode, weight));
+            }));
+        });
+    }
+
+    /* Owners are keyed by name, so a party's holdings are summed whichever key each state refers to it by. */
+    private Change change(Instant time, MetalStateV2 metalState, int sign) {
+        Party owner = serviceHub.getIdentityService().wellKnownPartyFromAnonymous(metalState.getOwner());
+        return new Change(time, owner == null ? metalState.getOwner().toString() : owner.toString(), metalState, sign);
+    }
+
+    private static void apply(Map<String, Map<String, Long>> balances, Change change) {
+        balances.computeIfAbsent(change.owner, owner -> new TreeMap<>()).merge(change.metalCode, change.weight, Long::sum);
+    }
+
+    /* The changes recorded and consumed after a checkpoint and up to a time, merged in time order. */
+    private class ChangeMerge {
+        private final ChangePage recorded;
+        private final ChangePage consumed;
+
+        ChangeMerge(Instant after, Instant upTo) {
+            this.recorded = new ChangePage(Vault.StateStatus.ALL, QueryCriteria.TimeInstantType.RECORDED,
+                    Sort.VaultStateAttribute.RECORDED_TIME, after, upTo, 1);
+            this.consumed = new ChangePage(Vault.StateStatus.CONSUMED, QueryCriteria.TimeInstantType.CONSUMED,
+                    Sort.VaultStateAttribute.CONSUMED_TIME, after, upTo, -1);
+        }
+
+        /* The next change, or null once there are no more. */
+        Change next() {
+            if (recorded.peek() == null && consumed.peek() == null)
+                return null;
+            return consumed.peek() == null || (recorded.peek() != null && !recorded.peek().time.isAfter(consumed.peek().time))
+                    ? recorded.next() : consumed.next();
+        }
+    }
+
+    /* The changes of one kind after a checkpoint and up to a time, in time order, read from the vault a page at a
+     * time. States sharing a time are ordered by reference, so no page boundary can skip or repeat one of them. */
+    private class ChangePage {
+        private final QueryCriteria criteria;
+        private final Sort sort;
+        private final QueryCriteria.TimeInstantType timeType;
+        private final Instant after;
+        private final int sign;
+        private final Deque<Change> changes = new ArrayDeque<>();
+        private int pageNumber = DEFAULT_PAGE_NUM;
+        private boolean lastPage = false;
+
+        ChangePage(Vault.StateStatus status, QueryCriteria.TimeInstantType timeType, Sort.VaultStateAttribute timeAttribute,
+                   Instant after, Instant upTo, int sign) {
+            // between is inclusive, so changes at the checkpoint's own time are skipped as they are read.
+            ColumnPredicate<Instant> times = after == null
+                    ? Builder.INSTANCE.lessThanOrEqual(upTo) : Builder.INSTANCE.between(after, upTo);
+            this.criteria = new QueryCriteria.VaultQueryCriteria(status)
+                    .withTimeCondition(new QueryCriteria.TimeCondition(timeType, times));
+            this.sort = new Sort(Arrays.asList(
+                    new Sort.SortColumn(new SortAttribute.Standard(timeAttribute), Sort.Direction.ASC),
+                    new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF), Sort.Direction.ASC)));
+            this.timeType = timeType;
+            this.after = after;
+            this.sign = sign;
+        }
+
+        Change peek() {
+            fill();
+            return changes.peekFirst();
+        }
+
+        Change next() {
+            fill();
+            return changes.pollFirst();
+        }
+
+        private void fill() {
+            while (changes.isEmpty() && !lastPage) {
+                Vault.Page<MetalStateV2> page = serviceHub.getVaultService()
+                        .queryBy(MetalStateV2.class, criteria, new PageSpecification(pageNumber++, PAGE_SIZE), sort);
+                for (int i = 0; i < page.getStates().size(); i++) {
+                    StateAndRef<MetalStateV2> metalState = page.getStates().get(i);
+                    Vault.StateMetadata metadata = page.getStatesMetadata().get(i);
+                    Instant time = timeType == QueryCriteria.TimeInstantType.RECORDED ? metadata.getRecordedTime() : metadata.getConsumedTime();
+                    if (after == null || time.isAfter(after))
+                        changes.add(change(time, metalState.getState().getData(), sign));
+                }
+                lastPage = page.getStates().size() < PAGE_SIZE;
+            }
+        }
+    }
+
+    /* A weight change of one owner's metal at a point in time. */
+    private static class Change {
+        private final Instant time;
+        private final String owner;
+        private final String metalCode;
+        private final long weight;
+
+        Change(Instant time, String owner, MetalStateV2 metalState, int sign) {
+            this.time = time;
+            this.owner = owner;
+            this.metalCode = metalState.getMetalCode();
+            this.weight = sign * metalState.getWeight();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalContract;
+import com.template.states.MetalStateV2;
+import com.template.states.MetalCatalogueState;
+import net.corda.core.contracts.Command;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Issues many MetalStates in a single transaction, so the whole batch pays for one signature, one notarisation
+ * and one finality round trip. Each distinct owner gets one session, however many states it receives.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class BatchIssueMetalFlow extends FlowLogic<SignedTransaction> {
+
+    //private variables
+    private List<Issuance> issuances;
+
+    public BatchIssueMetalFlow(List<Issuance> issuances) {
+        if (issuances.isEmpty())
+            throw new IllegalArgumentException("At least one issuance is required");
+        this.issuances = issuances;
+    }
+
+    private final ProgressTracker.Step RETRIEVING_NOTARY = new ProgressTracker.Step("Retrieving the Notary.");
+    private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
+    private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
+    private final ProgressTracker.Step COUNTERPARTY_SESSION = new ProgressTracker.Step("Sending flow to counterparties.");
+    private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.");
+
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            RETRIEVING_NOTARY,
+            GENERATING_TRANSACTION,
+            SIGNING_TRANSACTION,
+            COUNTERPARTY_SESSION,
+            FINALISING_TRANSACTION
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        //Initiator flow logic goes here
+
+        //Retrieve the notary our routing policy assigns to the batch, which must be the same for every issuance
+        progressTracker.setCurrentStep(RETRIEVING_NOTARY);
+        MetalCatalogueService catalogues = getServiceHub().cordaService(MetalCatalogueService.class);
+        NotarySelector notaries = getServiceHub().cordaService(NotarySelector.class);
+        List<MetalCatalogueState.Entry> metals = new ArrayList<>();
+        Party notary = null;
+        for (Issuance issuance : issuances) {
+            MetalCatalogueState.Entry metal = catalogues.entry(getOurIdentity(), issuance.getMetalName());
+            Party routed = notaries.forIssuance(getOurIdentity(), metal.getCode());
+            if (notary != null && !notary.equals(routed))
+                throw new FlowException("The batch is routed to more than one notary, issue it as one batch per notary.");
+            notary = routed;
+            metals.add(metal);
+        }
+
+        //create trx builder with one output per issuance and a single issue command
+        progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+        TransactionBuilder txB = new TransactionBuilder(notary)
+                .addReferenceState(catalogues.current(getOurIdentity(), notary).referenced())
+                .addCommand(new Command(new MetalContract.Commands.Issue(), getOurIdentity().getOwningKey()));
+
+        Set<Party> owners = new LinkedHashSet<>();
+        for (int i = 0; i < issuances.size(); i++) {
+            Issuance issuance = issuances.get(i);
+            MetalCatalogueState.Entry metal = metals.get(i);
+            txB.addOutputState(new MetalStateV2(metal.getCode(), issuance.getWeight(),
+                    getOurIdentity().anonymise(), issuance.getOwner().anonymise()), MetalContract.CID);
+            owners.add(issuance.getOwner());
+        }
+        owners.remove(getOurIdentity());
+
+        //Sign the transaction
+        progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
+
+        //Create one session per distinct owner
+        progressTracker.setCurrentStep(COUNTERPARTY_SESSION);
+        List<FlowSession> ownerSessions = new ArrayList<>();
+        for (Party owner : owners) {
+            ownerSessions.add(initiateFlow(owner));
+        }
+
+        //Finalize and send to Counterparties
+        progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+        SignedTransaction finalTx = subFlow(new FinalityFlow(signedTx, ownerSessions));
+
+        //We are not a participant of the metal we issue, so record its states as an observer
+        getServiceHub().recordTransactions(StatesToRecord.ALL_VISIBLE, Collections.singletonList(finalTx));
+        return finalTx;
+
+    }
+
+    /**
+     * A single entry of a batch: the metal, weight and owner of one state to issue.
+     */
+    @CordaSerializable
+    public static class Issuance {
+        private final String metalName;
+        private final long weight;
+        private final Party owner;
+
+        public Issuance(String metalName, long weight, Party owner) {
+            this.metalName = metalName;
+            this.weight = weight;
+            this.owner = owner;
+        }
+
+        public String getMetalName() {
+            return metalName;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public Party getOwner() {
+            return owner;
+        }
+    }
+}
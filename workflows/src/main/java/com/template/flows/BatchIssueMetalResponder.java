@@ -0,0 +1,25 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.transactions.SignedTransaction;
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(BatchIssueMetalFlow.class)
+public class BatchIssueMetalResponder extends FlowLogic<SignedTransaction> {
+    private FlowSession otherPartySession;
+
+    public BatchIssueMetalResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        // Responder flow logic goes here.
+
+        return subFlow(new ReceiveFinalityFlow(otherPartySession));
+    }
+}
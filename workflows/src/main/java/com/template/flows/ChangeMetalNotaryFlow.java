@@ -0,0 +1,77 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Moves up to maxStates of our MetalStates of a metal onto another notary, for rebalancing notarisation load after
+ * the routing policy of NotarySelector changes or a notary joins the network.
+ *
+ * Each state is moved by its own notary change transaction. We are the only participant, so nobody else signs it,
+ * and the issuer is sent it like any other transaction of its metal (see IssuerReportFlow). Moved states need no
+ * catalogue on the new notary to be spent there; only issuing more metal on it does.
+ */
+@StartableByRPC
+public class ChangeMetalNotaryFlow extends FlowLogic<List<StateAndRef<MetalStateV2>>> {
+
+    //private variables
+    private String metalName;
+    private Party newNotary;
+    private int maxStates;
+
+    public ChangeMetalNotaryFlow(String metalName, Party newNotary, int maxStates) {
+        if (maxStates < 1)
+            throw new IllegalArgumentException("At least one state must be moved");
+        this.metalName = metalName;
+        this.newNotary = newNotary;
+        this.maxStates = maxStates;
+    }
+
+    private final ProgressTracker.Step SELECTING_STATES = new ProgressTracker.Step("Selecting states on other notaries.");
+    private final ProgressTracker.Step CHANGING_NOTARY = new ProgressTracker.Step("Changing the notary of each state.");
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            SELECTING_STATES,
+            CHANGING_NOTARY
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    @Suspendable
+    @Override
+    public List<StateAndRef<MetalStateV2>> call() throws FlowException {
+        if (!getServiceHub().getNetworkMapCache().isNotary(newNotary))
+            throw new FlowException(newNotary.getName() + " is not a notary.");
+
+        //Reserve the states under our run id so that concurrent transfers pick other states
+        progressTracker.setCurrentStep(SELECTING_STATES);
+        String metalCode = getServiceHub().cordaService(MetalCatalogueService.class).metalCode(metalName);
+        List<StateAndRef<MetalStateV2>> misplaced = new MetalStateSelector(getServiceHub())
+                .selectElsewhere(getOurIdentity(), metalCode, newNotary, maxStates, getRunId().getUuid());
+
+        progressTracker.setCurrentStep(CHANGING_NOTARY);
+        List<StateAndRef<MetalStateV2>> moved = new ArrayList<>();
+        for (StateAndRef<MetalStateV2> metalState : misplaced) {
+            StateRef changedRef = subFlow(new NotaryChangeFlow<>(metalState, newNotary, AbstractStateReplacementFlow.Instigator.Companion.tracker())).getRef();
+            StateAndRef<MetalStateV2> changed = getServiceHub().toStateAndRef(changedRef);
+            Party issuer = getServiceHub().getIdentityService().requireWellKnownPartyFromAnonymous(changed.getState().getData().getIssuer());
+            subFlow(new IssuerReportFlow(issuer, changed.getRef().getTxhash()));
+            moved.add(changed);
+        }
+        return moved;
+    }
+}
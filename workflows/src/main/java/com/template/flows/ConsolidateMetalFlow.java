@@ -0,0 +1,138 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalContract;
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Compacts our holdings by merging unconsumed MetalStates of the same metal, issuer and notary into a single state.
+ *
+ * Nothing is done unless we hold more than threshold states. Each merge transaction spends at most maxInputs
+ * states, and at most maxTransactions merges are made per run, so a run never builds an oversized transaction or
+ * holds the vault for long. Inputs are soft locked under our run id, so transfers running at the same time are
+ * never starved of, or double spend, the states being merged.
+ */
+@InitiatingFlow
+@StartableByRPC
+@StartableByService
+public class ConsolidateMetalFlow extends FlowLogic<List<SecureHash>> {
+    public static final int DEFAULT_MAX_INPUTS = 50;
+    public static final int DEFAULT_MAX_TRANSACTIONS = 10;
+
+    // How many states are read, per merge, while looking for a metal and issuer to merge.
+    private static final int SCAN_FACTOR = 4;
+
+    //private variables
+    private int threshold;
+    private int maxInputs;
+    private int maxTransactions;
+
+    public ConsolidateMetalFlow(int threshold) {
+        this(threshold, DEFAULT_MAX_INPUTS, DEFAULT_MAX_TRANSACTIONS);
+    }
+
+    public ConsolidateMetalFlow(int threshold, int maxInputs, int maxTransactions) {
+        if (maxInputs < 2)
+            throw new IllegalArgumentException("A merge needs at least two inputs");
+        this.threshold = threshold;
+        this.maxInputs = maxInputs;
+        this.maxTransactions = maxTransactions;
+    }
+
+    private final ProgressTracker.Step CHECKING_FRAGMENTATION = new ProgressTracker.Step("Counting our metal states.");
+    private final ProgressTracker.Step RETRIEVING_NOTARY = new ProgressTracker.Step("Retrieving the Notary.");
+    private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
+    private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
+    private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.");
+    private final ProgressTracker.Step REPORTING_TO_ISSUER = new ProgressTracker.Step("Reporting the transaction to the issuer.");
+
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            CHECKING_FRAGMENTATION,
+            RETRIEVING_NOTARY,
+            GENERATING_TRANSACTION,
+            SIGNING_TRANSACTION,
+            FINALISING_TRANSACTION,
+            REPORTING_TO_ISSUER
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+
+
+    @Suspendable
+    @Override
+    public List<SecureHash> call() throws FlowException {
+        //Initiator flow logic goes here
+        List<SecureHash> merges = new ArrayList<>();
+
+        progressTracker.setCurrentStep(CHECKING_FRAGMENTATION);
+        if (new MetalStateSelector(getServiceHub()).countOwned(getOurIdentity(), getRunId().getUuid()) <= threshold)
+            return merges;
+
+        while (merges.size() < maxTransactions) {
+            List<StateAndRef<MetalStateV2>> inputStates = new MetalStateSelector(getServiceHub())
+                    .selectMergeable(getOurIdentity(), maxInputs, maxInputs * SCAN_FACTOR, getRunId().getUuid());
+            if (inputStates.isEmpty())
+                break;
+
+            merges.add(merge(inputStates).getId());
+        }
+
+        return merges;
+    }
+
+    @Suspendable
+    private SignedTransaction merge(List<StateAndRef<MetalStateV2>> inputStates) throws FlowException {
+        MetalStateV2 first = inputStates.get(0).getState().getData();
+        AbstractParty issuer = first.getIssuer();
+
+        //The inputs share a notary, which the merge must use
+        progressTracker.setCurrentStep(RETRIEVING_NOTARY);
+        Party notary = inputStates.get(0).getState().getNotary();
+
+        //create trx builder, spending every input into a single output
+        progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+        TransactionBuilder txB = new TransactionBuilder(notary)
+                .addCommand(new Command(new MetalContract.Commands.Merge(), getOurIdentity().getOwningKey()));
+
+        long total = 0;
+        for (StateAndRef<MetalStateV2> inputState : inputStates) {
+            txB.addInputState(inputState);
+            total = Math.addExact(total, inputState.getState().getData().getWeight());
+        }
+        txB.addOutputState(new MetalStateV2(first.getMetalCode(), total, issuer, getOurIdentity().anonymise()), MetalContract.CID);
+
+        //Sign the transaction
+        progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
+
+        //Finalize, we are the only participant
+        progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+        SignedTransaction finalTx = subFlow(new FinalityFlow(signedTx, Collections.emptyList()));
+
+        //Let the issuer know, now or in the next batch
+        progressTracker.setCurrentStep(REPORTING_TO_ISSUER);
+        subFlow(new IssuerReportFlow(getServiceHub().getIdentityService().requireWellKnownPartyFromAnonymous(issuer), finalTx.getId()));
+        return finalTx;
+    }
+}
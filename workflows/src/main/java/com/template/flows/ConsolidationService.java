@@ -0,0 +1,104 @@
+package com.template.flows;
+
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.PublicKey;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs ConsolidateMetalFlow in the background, on a schedule and whenever enough new metal states have arrived.
+ *
+ * The service is configured through the CorDapp config file:
+ *
+ *   consolidation.threshold        - states we may hold before merging, 0 disables the service (default 0)
+ *   consolidation.intervalSeconds  - how often to run regardless of activity, 0 for never (default 0)
+ *   consolidation.maxInputs        - inputs per merge transaction (default 50)
+ *   consolidation.maxTransactions  - merge transactions per run (default 10)
+ *
+ * At most one consolidation runs at a time.
+ */
+@CordaService
+public class ConsolidationService extends SingletonSerializeAsToken {
+    private static final Logger logger = LoggerFactory.getLogger(ConsolidationService.class);
+
+    private final AppServiceHub serviceHub;
+    private final int threshold;
+    private final int maxInputs;
+    private final int maxTransactions;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metal-consolidation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger receivedSinceLastRun = new AtomicInteger(0);
+
+    public ConsolidationService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.threshold = configInt(config, "consolidation.threshold", 0);
+        this.maxInputs = configInt(config, "consolidation.maxInputs", ConsolidateMetalFlow.DEFAULT_MAX_INPUTS);
+        this.maxTransactions = configInt(config, "consolidation.maxTransactions", ConsolidateMetalFlow.DEFAULT_MAX_TRANSACTIONS);
+        int intervalSeconds = configInt(config, "consolidation.intervalSeconds", 0);
+
+        if (threshold > 0)
+            start(intervalSeconds);
+    }
+
+    private void start(int intervalSeconds) {
+        if (intervalSeconds > 0)
+            executor.scheduleWithFixedDelay(this::consolidate, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+
+        // The updates feed only counts new states, the threshold itself is checked by the flow.
+        PublicKey ourKey = serviceHub.getMyInfo().getLegalIdentities().get(0).getOwningKey();
+        serviceHub.getVaultService().getUpdates().subscribe(update -> {
+            int received = 0;
+            for (StateAndRef<ContractState> produced : update.getProduced()) {
+                ContractState state = produced.getState().getData();
+                if (state instanceof MetalStateV2 && ((MetalStateV2) state).getOwner().getOwningKey().equals(ourKey))
+                    received++;
+            }
+            if (received > 0 && receivedSinceLastRun.addAndGet(received) >= threshold)
+                executor.execute(this::consolidate);
+        });
+    }
+
+    private void consolidate() {
+        if (!running.compareAndSet(false, true))
+            return;
+
+        receivedSinceLastRun.set(0);
+        try {
+            serviceHub.startFlow(new ConsolidateMetalFlow(threshold, maxInputs, maxTransactions))
+                    .getReturnValue().toCompletableFuture()
+                    .whenComplete((merges, error) -> {
+                        if (error != null)
+                            logger.warn("Metal consolidation failed", error);
+                        else if (!merges.isEmpty())
+                            logger.info("Metal consolidation made {} merge transactions", merges.size());
+                        running.set(false);
+                    });
+        } catch (RuntimeException e) {
+            logger.warn("Could not start metal consolidation", e);
+            running.set(false);
+        }
+    }
+
+    private static int configInt(CordappConfig config, String path, int defaultValue) {
+        return config.exists(path) ? config.getInt(path) : defaultValue;
+    }
+}
@@ -0,0 +1,37 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Returns the chain of custody of a MetalStateV2, newest first and back to its issuances, read from the
+ * ProvenanceService index rather than by walking the backchain.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class CustodyChainFlow extends FlowLogic<List<CustodyHop>> {
+
+    //private variables
+    private StateRef stateRef;
+
+    public CustodyChainFlow(StateRef stateRef) {
+        this.stateRef = stateRef;
+    }
+
+    public CustodyChainFlow(SecureHash txId, int index) {
+        this(new StateRef(txId, index));
+    }
+
+    @Suspendable
+    @Override
+    public List<CustodyHop> call() throws FlowException {
+        return getServiceHub().cordaService(ProvenanceService.class).custody(stateRef);
+    }
+}
@@ -0,0 +1,60 @@
+package com.template.flows;
+
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.List;
+
+/**
+ * One MetalStateV2 in a chain of custody: who owned how much of which metal, the transaction that made the state and
+ * the states it was made from. An issued state has no predecessors.
+ */
+@CordaSerializable
+public class CustodyHop {
+    private final StateRef stateRef;
+    private final SecureHash transactionId;
+    private final String owner;
+    private final String metalCode;
+    private final long weight;
+    private final List<StateRef> predecessors;
+
+    public CustodyHop(StateRef stateRef, SecureHash transactionId, String owner, String metalCode, long weight, List<StateRef> predecessors) {
+        this.stateRef = stateRef;
+        this.transactionId = transactionId;
+        this.owner = owner;
+        this.metalCode = metalCode;
+        this.weight = weight;
+        this.predecessors = predecessors;
+    }
+
+    public StateRef getStateRef() {
+        return stateRef;
+    }
+
+    public SecureHash getTransactionId() {
+        return transactionId;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getMetalCode() {
+        return metalCode;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public List<StateRef> getPredecessors() {
+        return predecessors;
+    }
+
+    @Override
+    public String toString() {
+        return owner + " held " + weight + " of " + metalCode + " in " + stateRef
+                + (predecessors.isEmpty() ? ", issued" : ", from " + predecessors);
+    }
+}
@@ -0,0 +1,20 @@
+package com.template.flows;
+
+import java.util.List;
+
+/**
+ * The JMX view of one flow class's metrics, registered by FlowMetricsService as
+ * com.template:type=FlowMetrics,node=<node name>,flow=<flow class>.
+ */
+public interface FlowMetricsMXBean {
+    long getStarted();
+
+    long getCompleted();
+
+    long getFailed();
+
+    long getNotaryConflicts();
+
+    /* The whole flow first, then one entry per progress tracker step, in the order the steps were first seen. */
+    List<StepTiming> getSteps();
+}
@@ -0,0 +1,209 @@
+package com.template.flows;
+
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the runs of each instrumented flow and keeps a latency histogram per flow step, exported over JMX.
+ *
+ * Flows record through a FlowStepTimer, which they move from step to step in place of their progress tracker.
+ * Recording only adds to striped counters, so it never blocks the flow thread, and the percentiles are worked out
+ * when JMX reads them. Histograms have four buckets per power of two, from one microsecond up.
+ */
+@CordaService
+public class FlowMetricsService extends SingletonSerializeAsToken {
+    static final String WHOLE_FLOW = "(flow)";
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowMetricsService.class);
+
+    private final AppServiceHub serviceHub;
+    private final Map<String, FlowMetrics> byFlow = new ConcurrentHashMap<>();
+
+    public FlowMetricsService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+    }
+
+    /* Counts a run of the flow and returns the timer it records its steps with. */
+    public FlowStepTimer started(Class<?> flowClass) {
+        FlowMetrics metrics = metrics(flowClass.getName());
+        metrics.started.increment();
+        return new FlowStepTimer(flowClass.getName());
+    }
+
+    /* The metrics of a flow class, as JMX shows them, or null if it never ran. */
+    public FlowMetricsMXBean get(Class<?> flowClass) {
+        return byFlow.get(flowClass.getName());
+    }
+
+    void recordStep(String flowName, String step, long micros) {
+        metrics(flowName).histogram(step).record(micros);
+    }
+
+    void recordEnd(String flowName, long micros, boolean completed, boolean notaryConflict) {
+        FlowMetrics metrics = metrics(flowName);
+        metrics.histogram(WHOLE_FLOW).record(micros);
+        if (completed)
+            metrics.completed.increment();
+        else
+            metrics.failed.increment();
+        if (notaryConflict)
+            metrics.notaryConflicts.increment();
+    }
+
+    private FlowMetrics metrics(String flowName) {
+        FlowMetrics metrics = byFlow.get(flowName);
+        return metrics != null ? metrics : byFlow.computeIfAbsent(flowName, this::register);
+    }
+
+    /* Several nodes can share a JVM in tests, so the node name is part of the object name, and a stale bean is replaced. */
+    private FlowMetrics register(String flowName) {
+        FlowMetrics metrics = new FlowMetrics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.template:type=FlowMetrics"
+                    + ",node=" + ObjectName.quote(serviceHub.getMyInfo().getLegalIdentities().get(0).getName().toString())
+                    + ",flow=" + flowName);
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+            server.registerMBean(metrics, name);
+        } catch (JMException e) {
+            logger.warn("Could not export the metrics of " + flowName + " over JMX", e);
+        }
+        return metrics;
+    }
+
+    private static class FlowMetrics implements FlowMetricsMXBean {
+        private final LongAdder started = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder notaryConflicts = new LongAdder();
+        private final Map<String, Histogram> steps = new ConcurrentHashMap<>();
+        // The steps in the order the flow first went through them.
+        private final List<String> order = new CopyOnWriteArrayList<>();
+
+        Histogram histogram(String step) {
+            Histogram histogram = steps.get(step);
+            if (histogram != null)
+                return histogram;
+            return steps.computeIfAbsent(step, key -> {
+                order.add(key);
+                return new Histogram();
+            });
+        }
+
+        @Override
+        public long getStarted() {
+            return started.sum();
+        }
+
+        @Override
+        public long getCompleted() {
+            return completed.sum();
+        }
+
+        @Override
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        @Override
+        public long getNotaryConflicts() {
+            return notaryConflicts.sum();
+        }
+
+        @Override
+        public List<StepTiming> getSteps() {
+            List<StepTiming> timings = new ArrayList<>();
+            Histogram whole = steps.get(WHOLE_FLOW);
+            if (whole != null)
+                timings.add(whole.snapshot(WHOLE_FLOW));
+            for (String step : order) {
+                if (!step.equals(WHOLE_FLOW))
+                    timings.add(steps.get(step).snapshot(step));
+            }
+            return timings;
+        }
+    }
+
+    /** A log-linear histogram: values below 4 have a bucket each, then every power of two is split in four. */
+    static class Histogram {
+        private static final int BUCKETS = 4 + 61 * 4;
+
+        private final LongAdder[] counts = new LongAdder[BUCKETS];
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        void record(long micros) {
+            long value = Math.max(micros, 0);
+            counts[bucket(value)].increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        StepTiming snapshot(String step) {
+            long[] snapshot = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts[i].sum();
+                count += snapshot[i];
+            }
+            long maxMicros = max.get();
+            return new StepTiming(step, count, count == 0 ? 0 : sum.sum() / count,
+                    Math.min(percentile(snapshot, count, 50), maxMicros),
+                    Math.min(percentile(snapshot, count, 95), maxMicros),
+                    Math.min(percentile(snapshot, count, 99), maxMicros),
+                    maxMicros);
+        }
+
+        /* The upper bound of the bucket holding the value at the percentile, by the nearest-rank method. */
+        private static long percentile(long[] snapshot, long count, double percentile) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+            long seen = 0;
+            for (int i = 0; i < snapshot.length; i++) {
+                seen += snapshot[i];
+                if (seen >= rank)
+                    return upperBound(i);
+            }
+            return upperBound(snapshot.length - 1);
+        }
+
+        static int bucket(long value) {
+            if (value < 4)
+                return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int quarter = (int) (value >>> (exponent - 2)) & 3;
+            return 4 + (exponent - 2) * 4 + quarter;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < 4)
+                return bucket;
+            int exponent = (bucket - 4) / 4 + 2;
+            int quarter = (bucket - 4) % 4;
+            return ((5L + quarter) << (exponent - 2)) - 1;
+        }
+    }
+}
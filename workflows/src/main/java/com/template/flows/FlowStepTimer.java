@@ -0,0 +1,57 @@
+package com.template.flows;
+
+import net.corda.core.flows.NotaryError;
+import net.corda.core.flows.NotaryException;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.utilities.ProgressTracker;
+
+/**
+ * Times the steps of one flow run for FlowMetricsService. A flow moves it from step to step in place of its
+ * progress tracker, and tells it how the run ended.
+ *
+ * It lives in the flow's checkpoint, so it only holds the names and start times. A run restored after a node
+ * restart records whatever its clock readings come to, which is at worst one odd sample.
+ */
+public class FlowStepTimer {
+    private final String flowName;
+    private final long flowStartedNanos;
+    private String step;
+    private long stepStartedNanos;
+
+    FlowStepTimer(String flowName) {
+        this.flowName = flowName;
+        this.flowStartedNanos = System.nanoTime();
+    }
+
+    /* Ends the current step, if any, and moves the progress tracker on to the next one. */
+    public void step(ServiceHub serviceHub, ProgressTracker progressTracker, ProgressTracker.Step next) {
+        long now = System.nanoTime();
+        endStep(serviceHub, now);
+        step = next.getLabel();
+        stepStartedNanos = now;
+        progressTracker.setCurrentStep(next);
+    }
+
+    public void completed(ServiceHub serviceHub) {
+        end(serviceHub, true, false);
+    }
+
+    public void failed(ServiceHub serviceHub, Throwable error) {
+        boolean conflict = error instanceof NotaryException
+                && ((NotaryException) error).getError() instanceof NotaryError.Conflict;
+        end(serviceHub, false, conflict);
+    }
+
+    private void end(ServiceHub serviceHub, boolean completed, boolean notaryConflict) {
+        long now = System.nanoTime();
+        endStep(serviceHub, now);
+        step = null;
+        serviceHub.cordaService(FlowMetricsService.class)
+                .recordEnd(flowName, (now - flowStartedNanos) / 1000, completed, notaryConflict);
+    }
+
+    private void endStep(ServiceHub serviceHub, long now) {
+        if (step != null)
+            serviceHub.cordaService(FlowMetricsService.class).recordStep(flowName, step, (now - stepStartedNanos) / 1000);
+    }
+}
@@ -44,8 +44,8 @@ public class Initiator extends FlowLogic<SignedTransaction> {
         this.sender = getOurIdentity();
 
         // Step 1. Get a reference to the notary service on our network and our key pair.
-        // Note: ongoing work to support multiple notary identities is still in progress.
-        final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+        // Note: only metal issuances are routed between notaries, everything else uses the first one.
+        final Party notary = getServiceHub().cordaService(NotarySelector.class).first();
 
         //Compose the State that carries the Hello World message
         final TemplateState output = new TemplateState(msg,sender,receiver);
@@ -3,16 +3,20 @@ package com.template.flows;
 import co.paralleluniverse.fibers.Suspendable;
 import com.template.contracts.MetalContract;
 import com.template.contracts.TemplateContract;
-import com.template.states.MetalState;
+import com.template.states.MetalStateV2;
+import com.template.states.MetalCatalogueState;
 import com.template.states.TemplateState;
 import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
+import net.corda.core.node.StatesToRecord;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -25,10 +29,10 @@ public class IssueMetalFlow extends FlowLogic<SignedTransaction> {
 
     //private variables
     private String metalName;
-    private int weight;
+    private long weight;
     private Party owner;
 
-    public IssueMetalFlow(String metalName, int weight, Party owner) {
+    public IssueMetalFlow(String metalName, long weight, Party owner) {
         this.metalName = metalName;
         this.weight = weight;
         this.owner = owner;
@@ -59,33 +63,59 @@ public class IssueMetalFlow extends FlowLogic<SignedTransaction> {
     @Suspendable
     @Override
     public SignedTransaction call() throws FlowException {
+        //Time each step, and count how the run ends
+        FlowStepTimer timer = getServiceHub().cordaService(FlowMetricsService.class).started(getClass());
+        try {
+            SignedTransaction finalTx = issue(timer);
+            timer.completed(getServiceHub());
+            return finalTx;
+        } catch (FlowException | RuntimeException e) {
+            timer.failed(getServiceHub(), e);
+            throw e;
+        }
+    }
+
+    @Suspendable
+    private SignedTransaction issue(FlowStepTimer timer) throws FlowException {
         //Initiator flow logic goes here
 
-        //Retrieve notary identity
-        progressTracker.setCurrentStep(RETRIEVING_NOTARY);
-        Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+        //Our catalogue decides which metals we issue
+        MetalCatalogueService catalogues = getServiceHub().cordaService(MetalCatalogueService.class);
+        MetalCatalogueState.Entry metal = catalogues.entry(getOurIdentity(), metalName);
 
-        //Create transaction components
-        MetalState outputState = new MetalState(metalName, weight, getOurIdentity(), owner);
+        //Retrieve the notary our routing policy assigns to this issuance
+        timer.step(getServiceHub(), progressTracker, RETRIEVING_NOTARY);
+        Party notary = getServiceHub().cordaService(NotarySelector.class).forIssuance(getOurIdentity(), metal.getCode());
+
+        //Create transaction components, referencing our catalogue on that notary
+        StateAndRef<MetalCatalogueState> catalogue = catalogues.current(getOurIdentity(), notary);
+
+        //The state refers to both parties by key only, which keeps it small
+        MetalStateV2 outputState = new MetalStateV2(metal.getCode(), weight, getOurIdentity().anonymise(), owner.anonymise());
         Command command = new Command(new MetalContract.Commands.Issue(), getOurIdentity().getOwningKey());
 
         //create trx builder
-        progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+        timer.step(getServiceHub(), progressTracker, GENERATING_TRANSACTION);
         TransactionBuilder txB = new TransactionBuilder(notary)
                 .addOutputState(outputState, MetalContract.CID)
+                .addReferenceState(catalogue.referenced())
                 .addCommand(command);
 
         //Sign the transaction
-        progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+        timer.step(getServiceHub(), progressTracker, SIGNING_TRANSACTION);
         SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
 
         //Create session with Counterparty
-        progressTracker.setCurrentStep(COUNTERPARTY_SESSION);
+        timer.step(getServiceHub(), progressTracker, COUNTERPARTY_SESSION);
         FlowSession otherPartySession = initiateFlow(owner);
 
         //Finalize and send to Counterparty
-        progressTracker.setCurrentStep(FINALISING_TRANSACTION);
-        return subFlow(new FinalityFlow(signedTx, otherPartySession));
+        timer.step(getServiceHub(), progressTracker, FINALISING_TRANSACTION);
+        SignedTransaction finalTx = subFlow(new FinalityFlow(signedTx, otherPartySession));
+
+        //We are not a participant of the metal we issue, so record its state as an observer
+        getServiceHub().recordTransactions(StatesToRecord.ALL_VISIBLE, Collections.singletonList(finalTx));
+        return finalTx;
 
     }
 }
@@ -0,0 +1,146 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.schema.IssuerReportSchemaV1.PendingIssuerReport;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Sends transactions of a metal to its issuer, who records them as an observer.
+ *
+ * Started with an issuer and a transaction, as flows do once a transfer, merge or notary change is final, it sends
+ * the transaction straight away in sync mode and only queues it in batched mode (see IssuerReportService). Started
+ * with an issuer's name and a batch size, as the service does, it sends the oldest transactions queued for that
+ * issuer; started with a batch size alone, the oldest queued for any issuer, one session per issuer. Either way it
+ * returns how many it sent.
+ */
+@InitiatingFlow
+@StartableByRPC
+@StartableByService
+public class IssuerReportFlow extends FlowLogic<Integer> {
+    // The most transactions one session sends, and IssuerReportResponder takes.
+    public static final int MAX_BATCH_SIZE = 1000;
+
+    //private variables
+    private Party issuer;
+    private SecureHash txId;
+    private CordaX500Name queuedIssuer;
+    private int batchSize;
+
+    public IssuerReportFlow(Party issuer, SecureHash txId) {
+        this.issuer = issuer;
+        this.txId = txId;
+    }
+
+    public IssuerReportFlow(int batchSize) {
+        if (batchSize < 1 || batchSize > MAX_BATCH_SIZE)
+            throw new IllegalArgumentException("Batch size must be between 1 and " + MAX_BATCH_SIZE);
+        this.batchSize = batchSize;
+    }
+
+    public IssuerReportFlow(CordaX500Name queuedIssuer, int batchSize) {
+        this(batchSize);
+        this.queuedIssuer = queuedIssuer;
+    }
+
+    private final ProgressTracker.Step READING_QUEUE = new ProgressTracker.Step("Reading the queued transactions.");
+    private final ProgressTracker.Step SENDING_TRANSACTIONS = new ProgressTracker.Step("Sending the transactions to their issuer.");
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            READING_QUEUE,
+            SENDING_TRANSACTIONS
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    @Suspendable
+    @Override
+    public Integer call() throws FlowException {
+        IssuerReportService reports = getServiceHub().cordaService(IssuerReportService.class);
+
+        if (txId != null) {
+            if (issuer.equals(getOurIdentity()))
+                return 0;
+            if (reports.isBatched()) {
+                reports.enqueue(issuer, txId);
+                return 0;
+            }
+            progressTracker.setCurrentStep(SENDING_TRANSACTIONS);
+            return send(issuer, Collections.singletonList(txId));
+        }
+
+        //The oldest queued transactions, per issuer and in the order they were made
+        progressTracker.setCurrentStep(READING_QUEUE);
+        Map<String, List<PendingIssuerReport>> byIssuer = new LinkedHashMap<>();
+        if (queuedIssuer != null) {
+            byIssuer.put(queuedIssuer.toString(), reports.oldest(queuedIssuer.toString(), batchSize));
+        } else {
+            for (PendingIssuerReport pending : reports.oldest(batchSize)) {
+                byIssuer.computeIfAbsent(pending.getIssuer(), key -> new ArrayList<>()).add(pending);
+            }
+        }
+
+        progressTracker.setCurrentStep(SENDING_TRANSACTIONS);
+        int reported = 0;
+        for (Map.Entry<String, List<PendingIssuerReport>> queued : byIssuer.entrySet()) {
+            reported += sendQueued(reports, queued.getKey(), queued.getValue());
+        }
+        return reported;
+    }
+
+    @Suspendable
+    private int sendQueued(IssuerReportService reports, String issuerName, List<PendingIssuerReport> queued) throws FlowException {
+        if (queued.isEmpty())
+            return 0;
+
+        int reported = 0;
+        Party queuedIssuer = getServiceHub().getIdentityService().wellKnownPartyFromX500Name(CordaX500Name.parse(issuerName));
+        if (queuedIssuer == null) {
+            getLogger().warn("Dropping {} queued transactions for unknown issuer {}", queued.size(), issuerName);
+        } else {
+            List<SecureHash> txIds = new ArrayList<>();
+            for (PendingIssuerReport pending : queued) {
+                txIds.add(SecureHash.parse(pending.getTransactionId()));
+            }
+            reported = send(queuedIssuer, txIds);
+        }
+        reports.remove(queued);
+        return reported;
+    }
+
+    @Suspendable
+    private int send(Party to, List<SecureHash> txIds) throws FlowException {
+        List<SignedTransaction> transactions = new ArrayList<>();
+        for (SecureHash id : txIds) {
+            SignedTransaction transaction = getServiceHub().getValidatedTransactions().getTransaction(id);
+            if (transaction != null)
+                transactions.add(transaction);
+        }
+        if (transactions.isEmpty())
+            return 0;
+
+        //The count first, then each transaction with whatever of its backchain the issuer asks for
+        FlowSession session = initiateFlow(to);
+        session.send(transactions.size());
+        for (SignedTransaction transaction : transactions) {
+            subFlow(new SendTransactionFlow(session, transaction));
+        }
+        return transactions.size();
+    }
+}
@@ -0,0 +1,72 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.AttachmentResolutionException;
+import net.corda.core.contracts.TransactionResolutionException;
+import net.corda.core.contracts.TransactionVerificationException;
+import net.corda.core.flows.*;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.transactions.SignedTransaction;
+
+import java.security.SignatureException;
+
+// ******************
+// * Responder flow *
+// ******************
+/**
+ * Records the transactions reported by IssuerReportFlow. We issued the metal but are not a participant of its states,
+ * so every state is recorded, not only those relevant to us. A report is therefore only taken of a transaction that
+ * makes metal we issued, and a session can send at most IssuerReportFlow.MAX_BATCH_SIZE of them.
+ */
+@InitiatedBy(IssuerReportFlow.class)
+public class IssuerReportResponder extends FlowLogic<Void> {
+    private FlowSession otherPartySession;
+
+    public IssuerReportResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public Void call() throws FlowException {
+        int count = otherPartySession.receive(Integer.class).unwrap(reported -> {
+            if (reported < 0 || reported > IssuerReportFlow.MAX_BATCH_SIZE)
+                throw new FlowException("Cannot take a report of " + reported + " transactions.");
+            return reported;
+        });
+
+        for (int i = 0; i < count; i++) {
+            subFlow(new ReceiveReportedTransactionFlow(otherPartySession));
+        }
+        return null;
+    }
+
+    private static class ReceiveReportedTransactionFlow extends ReceiveTransactionFlow {
+        ReceiveReportedTransactionFlow(FlowSession otherPartySession) {
+            super(otherPartySession, true, StatesToRecord.ALL_VISIBLE);
+        }
+
+        // Declared again only because javac cannot override a call() that throws SignatureException, which is not a
+        // FlowException; a transaction that is not properly signed fails the flow all the same.
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws AttachmentResolutionException, TransactionResolutionException, TransactionVerificationException {
+            try {
+                return super.call();
+            } catch (SignatureException e) {
+                throw new IllegalArgumentException("Reported transaction is not properly signed.", e);
+            }
+        }
+
+        @Suspendable
+        @Override
+        protected void checkBeforeRecording(SignedTransaction stx) throws FlowException {
+            for (MetalStateV2 metalState : stx.resolveBaseTransaction(getServiceHub()).outputsOfType(MetalStateV2.class)) {
+                if (metalState.getIssuerKey().equals(getOurIdentity().getOwningKey()))
+                    return;
+            }
+            throw new FlowException("Transaction " + stx.getId() + " makes no metal we issued.");
+        }
+    }
+}
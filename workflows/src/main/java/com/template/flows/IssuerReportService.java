@@ -0,0 +1,149 @@
+package com.template.flows;
+
+import com.template.schema.IssuerReportSchemaV1.PendingIssuerReport;
+import kotlin.jvm.functions.Function1;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how the transactions of a metal reach its issuer, which is not a participant of its MetalStates.
+ *
+ * In sync mode IssuerReportFlow sends each transaction to the issuer as soon as it is final, so the flow that made
+ * it waits for the issuer. In batched mode the flow only queues the transaction, in a table of this node, and the
+ * service sends the queue to each issuer in the background, so transfer latency no longer depends on the issuer.
+ * The service is configured through the CorDapp config file:
+ *
+ *   issuerReporting.mode             - sync or batched (default sync)
+ *   issuerReporting.batchSize        - transactions sent to an issuer per run (default 100, at most 1000)
+ *   issuerReporting.intervalSeconds  - how often the queue is checked (default 5)
+ *
+ * Each check starts a flow per issuer with queued transactions, so an issuer that is offline only holds up its own
+ * reports. At most one flow per issuer is in flight at a time.
+ */
+@CordaService
+public class IssuerReportService extends SingletonSerializeAsToken {
+    private static final Logger logger = LoggerFactory.getLogger(IssuerReportService.class);
+
+    private final AppServiceHub serviceHub;
+    private final boolean batched;
+    private final int batchSize;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "issuer-reporting");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Issuers a flow of this node is reporting to right now.
+    private final Set<String> reporting = ConcurrentHashMap.newKeySet();
+
+    public IssuerReportService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.batched = config.exists("issuerReporting.mode") && config.getString("issuerReporting.mode").equalsIgnoreCase("batched");
+        this.batchSize = Math.min(config.exists("issuerReporting.batchSize") ? config.getInt("issuerReporting.batchSize") : 100,
+                IssuerReportFlow.MAX_BATCH_SIZE);
+        int intervalSeconds = config.exists("issuerReporting.intervalSeconds") ? config.getInt("issuerReporting.intervalSeconds") : 5;
+
+        if (batched)
+            executor.scheduleWithFixedDelay(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public boolean isBatched() {
+        return batched;
+    }
+
+    /* Queues a transaction for its issuer. Must be called from a flow, as the row is written in the flow's database
+     * transaction; the next check of the queue sends it. */
+    public void enqueue(Party issuer, SecureHash txId) {
+        PendingIssuerReport pending = new PendingIssuerReport(txId.toString(), issuer.getName().toString(), Instant.now());
+        serviceHub.withEntityManager(entityManager -> {
+            entityManager.merge(pending);
+        });
+    }
+
+    /* The oldest queued transactions, at most max of them. Must be called from a flow. */
+    List<PendingIssuerReport> oldest(int max) {
+        Function1<EntityManager, List<PendingIssuerReport>> query = entityManager -> entityManager
+                .createQuery("SELECT r FROM PendingIssuerReport r ORDER BY r.queuedAt", PendingIssuerReport.class)
+                .setMaxResults(max)
+                .getResultList();
+        return serviceHub.withEntityManager(query);
+    }
+
+    /* The oldest transactions queued for one issuer, at most max of them. Must be called from a flow. */
+    List<PendingIssuerReport> oldest(String issuer, int max) {
+        Function1<EntityManager, List<PendingIssuerReport>> query = entityManager -> entityManager
+                .createQuery("SELECT r FROM PendingIssuerReport r WHERE r.issuer = :issuer ORDER BY r.queuedAt", PendingIssuerReport.class)
+                .setParameter("issuer", issuer)
+                .setMaxResults(max)
+                .getResultList();
+        return serviceHub.withEntityManager(query);
+    }
+
+    /* Drops transactions the issuer has recorded. Must be called from a flow. */
+    void remove(List<PendingIssuerReport> reported) {
+        serviceHub.withEntityManager(entityManager -> {
+            for (PendingIssuerReport pending : reported) {
+                PendingIssuerReport managed = entityManager.find(PendingIssuerReport.class, pending.getTransactionId());
+                if (managed != null)
+                    entityManager.remove(managed);
+            }
+        });
+    }
+
+    private void report() {
+        List<String> issuers;
+        try {
+            Function1<EntityManager, List<String>> query = entityManager -> entityManager
+                    .createQuery("SELECT DISTINCT r.issuer FROM PendingIssuerReport r", String.class)
+                    .getResultList();
+            issuers = serviceHub.withEntityManager(query);
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the transactions queued for their issuers", e);
+            return;
+        }
+
+        for (String issuer : issuers) {
+            if (reporting.add(issuer))
+                report(issuer);
+        }
+    }
+
+    private void report(String issuer) {
+        try {
+            serviceHub.startFlow(new IssuerReportFlow(CordaX500Name.parse(issuer), batchSize))
+                    .getReturnValue().toCompletableFuture()
+                    .whenComplete((reported, error) -> {
+                        if (error != null) {
+                            logger.warn("Reporting transactions to " + issuer + " failed", error);
+                            reporting.remove(issuer);
+                        } else if (reported >= batchSize) {
+                            // A full batch may have left more behind, so go again straight away.
+                            report(issuer);
+                        } else {
+                            reporting.remove(issuer);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            logger.warn("Could not start reporting transactions to " + issuer, e);
+            reporting.remove(issuer);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.template.flows;
+
+import net.corda.core.serialization.CordaSerializable;
+
+/**
+ * The weight of a metal held by an owner.
+ */
+@CordaSerializable
+public class MetalBalance {
+    private final String owner;
+    private final String metalCode;
+    private final long weight;
+
+    public MetalBalance(String owner, String metalCode, long weight) {
+        this.owner = owner;
+        this.metalCode = metalCode;
+        this.weight = weight;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getMetalCode() {
+        return metalCode;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return owner + " holds " + weight + " of " + metalCode;
+    }
+}
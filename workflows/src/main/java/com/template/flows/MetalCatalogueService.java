@@ -0,0 +1,141 @@
+package com.template.flows;
+
+import com.template.states.MetalCatalogueState;
+import com.template.states.Metals;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.DataFeed;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The latest MetalCatalogueState of every issuer this node has been sent one by, on each notary. A reference state
+ * must be on the notary of the transaction referencing it, so an issuer publishes its catalogue on every notary.
+ *
+ * The vault is queried once, on first use, and from then on the cache follows the vault's updates: an entry only
+ * changes when a new version of a catalogue is recorded, so flows never query the vault for it. Must first be used
+ * from a flow.
+ */
+@CordaService
+public class MetalCatalogueService extends SingletonSerializeAsToken {
+    private final AppServiceHub serviceHub;
+    private final Map<PublicKey, Map<Party, StateAndRef<MetalCatalogueState>>> byMaintainer = new ConcurrentHashMap<>();
+    private volatile boolean tracking;
+
+    public MetalCatalogueService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+    }
+
+    /* The issuer's current catalogue on the notary, to be referenced by transactions of its metal on that notary. */
+    public StateAndRef<MetalCatalogueState> current(AbstractParty issuer, Party notary) throws FlowException {
+        StateAndRef<MetalCatalogueState> catalogue = find(issuer, notary);
+        if (catalogue == null)
+            throw new FlowException("No metal catalogue has been recorded from " + issuer + " on " + notary.getName() + ".");
+        return catalogue;
+    }
+
+    /* As current, but null when there is no catalogue. */
+    public StateAndRef<MetalCatalogueState> find(AbstractParty issuer, Party notary) {
+        track();
+        return byMaintainer.getOrDefault(issuer.getOwningKey(), Collections.emptyMap()).get(notary);
+    }
+
+    /* The entry of a metal, given either its code or its name, in any of the issuer's catalogues. */
+    public MetalCatalogueState.Entry entry(AbstractParty issuer, String metal) throws FlowException {
+        track();
+        for (StateAndRef<MetalCatalogueState> catalogue : byMaintainer.getOrDefault(issuer.getOwningKey(), Collections.emptyMap()).values()) {
+            MetalCatalogueState.Entry entry = catalogue.getState().getData().entryFor(metal);
+            if (entry != null)
+                return entry;
+        }
+        throw new FlowException(metal + " is not in the metal catalogue of " + issuer + ".");
+    }
+
+    /* The code of a metal given either its code or its name, for flows that move metal already on the ledger and so
+     * need no catalogue. A name in the registry (see Metals) is its code; otherwise each issuer's catalogues are
+     * asked in turn, and all that list the name must agree on its code. Anything listed nowhere is taken to be a
+     * code already. */
+    public String metalCode(String metal) throws FlowException {
+        try {
+            return Metals.code(metal);
+        } catch (IllegalArgumentException e) {
+            // Not a registry metal: look it up per issuer.
+        }
+
+        track();
+        String code = null;
+        for (AbstractParty issuer : issuers()) {
+            String issuerCode = metalCode(issuer, metal);
+            if (issuerCode == null)
+                continue;
+            if (code != null && !code.equals(issuerCode))
+                throw new FlowException(metal + " has different codes in different issuers' catalogues; give its code instead.");
+            code = issuerCode;
+        }
+        return code != null ? code : metal;
+    }
+
+    /* The code of a metal given either its code or its name in the issuer's catalogues, or null if none lists it. */
+    public String metalCode(AbstractParty issuer, String metal) {
+        track();
+        for (StateAndRef<MetalCatalogueState> catalogue : byMaintainer.getOrDefault(issuer.getOwningKey(), Collections.emptyMap()).values()) {
+            MetalCatalogueState.Entry entry = catalogue.getState().getData().entryFor(metal);
+            if (entry != null)
+                return entry.getCode();
+        }
+        return null;
+    }
+
+    /* One party per issuer whose catalogue we hold. */
+    private List<AbstractParty> issuers() {
+        List<AbstractParty> issuers = new ArrayList<>();
+        for (Map<Party, StateAndRef<MetalCatalogueState>> catalogues : byMaintainer.values()) {
+            for (StateAndRef<MetalCatalogueState> catalogue : catalogues.values()) {
+                issuers.add(catalogue.getState().getData().getMaintainer());
+                break;
+            }
+        }
+        return issuers;
+    }
+
+    private void track() {
+        if (tracking)
+            return;
+
+        synchronized (this) {
+            if (tracking)
+                return;
+
+            DataFeed<Vault.Page<MetalCatalogueState>, Vault.Update<MetalCatalogueState>> feed =
+                    serviceHub.getVaultService().trackBy(MetalCatalogueState.class);
+            for (StateAndRef<MetalCatalogueState> catalogue : feed.getSnapshot().getStates()) {
+                onNotary(catalogue).put(catalogue.getState().getNotary(), catalogue);
+            }
+            feed.getUpdates().subscribe(update -> {
+                for (StateAndRef<MetalCatalogueState> consumed : update.getConsumed()) {
+                    onNotary(consumed).remove(consumed.getState().getNotary(), consumed);
+                }
+                for (StateAndRef<MetalCatalogueState> produced : update.getProduced()) {
+                    onNotary(produced).put(produced.getState().getNotary(), produced);
+                }
+            });
+            tracking = true;
+        }
+    }
+
+    private Map<Party, StateAndRef<MetalCatalogueState>> onNotary(StateAndRef<MetalCatalogueState> catalogue) {
+        return byMaintainer.computeIfAbsent(catalogue.getState().getData().getMaintainer().getOwningKey(),
+                key -> new ConcurrentHashMap<>());
+    }
+}
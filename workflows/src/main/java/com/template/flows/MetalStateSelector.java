@@ -0,0 +1,250 @@
+package com.template.flows;
+
+import com.template.schema.MetalSchemaV2;
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.*;
+import net.corda.core.utilities.NonEmptySet;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+// ******************
+// * Coin selection *
+// ******************
+/**
+ * Selects MetalStates to spend from the vault.
+ *
+ * The vault is walked one page at a time, oldest states first, and the walk stops at the first state that is
+ * acceptable. Only the rows matching the metal and owner are ever read, so the cost of a selection does not grow
+ * with the size of the vault.
+ *
+ * Selected states are soft locked with the caller's lock id, so concurrent flows on the same node always select
+ * disjoint states. Flows should use their run id as the lock id: the node releases every soft lock held under a
+ * flow's run id when that flow ends, whether it succeeds or fails.
+ */
+public class MetalStateSelector {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    private final ServiceHub serviceHub;
+    private final int pageSize;
+
+    public MetalStateSelector(ServiceHub serviceHub) {
+        this(serviceHub, DEFAULT_PAGE_SIZE);
+    }
+
+    public MetalStateSelector(ServiceHub serviceHub, int pageSize) {
+        if (pageSize < 1)
+            throw new IllegalArgumentException("Page size must be positive");
+        this.serviceHub = serviceHub;
+        this.pageSize = pageSize;
+    }
+
+    /* Reserves and returns an unconsumed state of the owner with exactly the given metal and weight. */
+    public StateAndRef<MetalStateV2> selectExact(Party owner, String metalCode, long weight, UUID lockId) throws FlowException {
+        StateAndRef<MetalStateV2> selected = findExact(owner, metalCode, weight, lockId);
+        if (selected == null)
+            throw new FlowException("Metal State was not found.");
+
+        return selected;
+    }
+
+    /**
+     * Reserves and returns unconsumed states of the owner holding at least the given weight of a metal, all from
+     * the same issuer and on the same notary so that they can be spent together. A state of exactly the right weight
+     * is preferred, as spending it leaves no change behind.
+     */
+    public List<StateAndRef<MetalStateV2>> selectAtLeast(Party owner, String metalCode, long weight, UUID lockId) throws FlowException {
+        StateAndRef<MetalStateV2> exact = findExact(owner, metalCode, weight, lockId);
+        if (exact != null)
+            return Collections.singletonList(exact);
+
+        //Accumulate per issuer and notary, stopping as soon as one of them covers the weight
+        Map<List<Object>, List<StateAndRef<MetalStateV2>>> candidates = new LinkedHashMap<>();
+        Map<List<Object>, Long> totals = new HashMap<>();
+        StateAndRef<MetalStateV2> last = select(ownedMetalCriteria(owner, metalCode, lockId), metalState -> {
+            if (!reserve(metalState, lockId))
+                return false;
+
+            List<Object> spendable = issuerAndNotary(metalState);
+            candidates.computeIfAbsent(spendable, key -> new ArrayList<>()).add(metalState);
+            return totals.merge(spendable, metalState.getState().getData().getWeight(), Long::sum) >= weight;
+        });
+
+        List<StateAndRef<MetalStateV2>> selected = last == null
+                ? Collections.emptyList()
+                : candidates.remove(issuerAndNotary(last));
+
+        //Hand back everything reserved for the other issuers and notaries
+        for (List<StateAndRef<MetalStateV2>> unused : candidates.values()) {
+            release(unused, lockId);
+        }
+
+        if (selected.isEmpty())
+            throw new FlowException("Insufficient " + metalCode + " to transfer a weight of " + weight + ".");
+
+        return selected;
+    }
+
+    /**
+     * Reserves and returns up to maxStates unconsumed states of the owner that share a metal, issuer and notary and
+     * can therefore be merged, or an empty list if no metal and issuer has at least two such states. At most scanLimit
+     * states are read, and only the chosen group is reserved.
+     */
+    public List<StateAndRef<MetalStateV2>> selectMergeable(Party owner, int maxStates, int scanLimit, UUID lockId) {
+        if (maxStates < 2)
+            throw new IllegalArgumentException("A merge needs at least two states");
+
+        //Group by metal, issuer and notary, stopping as soon as one group is full
+        Map<List<Object>, List<StateAndRef<MetalStateV2>>> groups = new HashMap<>();
+        int[] scanned = {0};
+        select(ownedCriteria(owner, lockId), metalState -> {
+            MetalStateV2 data = metalState.getState().getData();
+            List<StateAndRef<MetalStateV2>> group = groups.computeIfAbsent(
+                    Arrays.asList(data.getMetalCode(), data.getIssuer(), metalState.getState().getNotary()), key -> new ArrayList<>());
+            group.add(metalState);
+            return group.size() >= maxStates || ++scanned[0] >= scanLimit;
+        });
+
+        List<StateAndRef<MetalStateV2>> largest = Collections.emptyList();
+        for (List<StateAndRef<MetalStateV2>> group : groups.values()) {
+            if (group.size() > largest.size())
+                largest = group;
+        }
+
+        List<StateAndRef<MetalStateV2>> selected = new ArrayList<>();
+        for (StateAndRef<MetalStateV2> metalState : largest) {
+            if (reserve(metalState, lockId))
+                selected.add(metalState);
+        }
+
+        if (selected.size() < 2) {
+            if (!selected.isEmpty())
+                release(selected, lockId);
+            return Collections.emptyList();
+        }
+
+        return selected;
+    }
+
+    /* Reserves and returns up to maxStates unconsumed states of the owner of a metal that are not on the notary. */
+    public List<StateAndRef<MetalStateV2>> selectElsewhere(Party owner, String metalCode, Party notary, int maxStates, UUID lockId) {
+        List<StateAndRef<MetalStateV2>> selected = new ArrayList<>();
+        select(ownedMetalCriteria(owner, metalCode, lockId), metalState -> {
+            if (!metalState.getState().getNotary().equals(notary) && reserve(metalState, lockId))
+                selected.add(metalState);
+            return selected.size() >= maxStates;
+        });
+        return selected;
+    }
+
+    /*
+     * Reserves and returns up to maxStates unconsumed states of the owner of a metal that the filter accepts and that
+     * share the issuer and notary of the first of them.
+     */
+    public List<StateAndRef<MetalStateV2>> selectWhere(Party owner, String metalCode, int maxStates,
+                                                     Predicate<StateAndRef<MetalStateV2>> filter, UUID lockId) {
+        List<StateAndRef<MetalStateV2>> selected = new ArrayList<>();
+        select(ownedMetalCriteria(owner, metalCode, lockId), metalState -> {
+            if ((selected.isEmpty() || issuerAndNotary(metalState).equals(issuerAndNotary(selected.get(0))))
+                    && filter.test(metalState) && reserve(metalState, lockId))
+                selected.add(metalState);
+            return selected.size() >= maxStates;
+        });
+        return selected;
+    }
+
+    /* Number of unconsumed states the owner holds that are not soft locked by another flow. */
+    public long countOwned(Party owner, UUID lockId) {
+        return serviceHub.getVaultService()
+                .queryBy(MetalStateV2.class, ownedCriteria(owner, lockId), new PageSpecification(DEFAULT_PAGE_NUM, 1))
+                .getTotalStatesAvailable();
+    }
+
+    private StateAndRef<MetalStateV2> findExact(Party owner, String metalCode, long weight, UUID lockId) {
+        QueryCriteria criteria = ownedMetalCriteria(owner, metalCode, lockId)
+                .and(new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(schemaField("weight"), weight)));
+
+        return select(criteria, metalState -> reserve(metalState, lockId));
+    }
+
+    /* Walks the matching states page by page and returns the first one accepted, or null if there is none. */
+    StateAndRef<MetalStateV2> select(QueryCriteria criteria, Predicate<StateAndRef<MetalStateV2>> acceptable) {
+        for (int pageNumber = DEFAULT_PAGE_NUM; ; pageNumber++) {
+            PageSpecification paging = new PageSpecification(pageNumber, pageSize);
+            List<StateAndRef<MetalStateV2>> page = serviceHub.getVaultService()
+                    .queryBy(MetalStateV2.class, criteria, paging, selectionOrder()).getStates();
+
+            for (StateAndRef<MetalStateV2> metalState : page) {
+                if (acceptable.test(metalState))
+                    return metalState;
+            }
+
+            if (page.size() < pageSize)
+                return null;
+        }
+    }
+
+    private static List<Object> issuerAndNotary(StateAndRef<MetalStateV2> metalState) {
+        return Arrays.asList(metalState.getState().getData().getIssuer(), metalState.getState().getNotary());
+    }
+
+    /* Reserving can still lose a race against a flow that read the same page before we locked the state. */
+    private boolean reserve(StateAndRef<MetalStateV2> metalState, UUID lockId) {
+        try {
+            serviceHub.getVaultService().softLockReserve(lockId, NonEmptySet.of(metalState.getRef()));
+            return true;
+        } catch (StatesNotAvailableException e) {
+            return false;
+        }
+    }
+
+    private void release(List<StateAndRef<MetalStateV2>> metalStates, UUID lockId) {
+        List<StateRef> refs = new ArrayList<>();
+        for (StateAndRef<MetalStateV2> metalState : metalStates) {
+            refs.add(metalState.getRef());
+        }
+        serviceHub.getVaultService().softLockRelease(lockId, NonEmptySet.copyOf(refs));
+    }
+
+    /* Unconsumed states of the owner, skipping states soft locked by anyone other than lockId. */
+    QueryCriteria ownedCriteria(Party owner, UUID lockId) {
+        QueryCriteria.SoftLockingCondition unlocked = new QueryCriteria.SoftLockingCondition(
+                QueryCriteria.SoftLockingType.UNLOCKED_AND_SPECIFIED, Collections.singletonList(lockId));
+
+        return new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                .withSoftLockingCondition(unlocked)
+                .and(new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(schemaField("owner"), owner)));
+    }
+
+    /* As ownedCriteria, restricted to one metal. */
+    QueryCriteria ownedMetalCriteria(Party owner, String metalCode, UUID lockId) {
+        return ownedCriteria(owner, lockId)
+                .and(new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(schemaField("metalCode"), metalCode)));
+    }
+
+    /* Oldest first, with the state ref as a tie breaker so that paging is stable. */
+    private static Sort selectionOrder() {
+        return new Sort(Arrays.asList(
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.VaultStateAttribute.RECORDED_TIME), Sort.Direction.ASC),
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF), Sort.Direction.ASC)
+        ));
+    }
+
+    private static Field schemaField(String name) {
+        try {
+            return MetalSchemaV2.PersistentMetal.class.getDeclaredField(name);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("MetalStateV2 schema is missing the " + name + " column.", e);
+        }
+    }
+}
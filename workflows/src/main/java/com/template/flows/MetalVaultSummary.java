@@ -0,0 +1,67 @@
+package com.template.flows;
+
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.CordaSerializable;
+
+import java.util.Map;
+
+/**
+ * The number and total weight of the metal states with a given status, per metal and per owner.
+ */
+@CordaSerializable
+public class MetalVaultSummary {
+    private final Vault.StateStatus status;
+    private final Map<String, Total> byMetal;
+    private final Map<String, Total> byOwner;
+
+    public MetalVaultSummary(Vault.StateStatus status, Map<String, Total> byMetal, Map<String, Total> byOwner) {
+        this.status = status;
+        this.byMetal = byMetal;
+        this.byOwner = byOwner;
+    }
+
+    public Vault.StateStatus getStatus() {
+        return status;
+    }
+
+    public Map<String, Total> getByMetal() {
+        return byMetal;
+    }
+
+    public Map<String, Total> getByOwner() {
+        return byOwner;
+    }
+
+    @Override
+    public String toString() {
+        return status + " by metal: " + byMetal + ", by owner: " + byOwner;
+    }
+
+    @CordaSerializable
+    public static class Total {
+        private final long count;
+        private final long weight;
+
+        public Total(long count, long weight) {
+            this.count = count;
+            this.weight = weight;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+
+        public Total plus(Total other) {
+            return new Total(count + other.count, weight + other.weight);
+        }
+
+        @Override
+        public String toString() {
+            return count + " states weighing " + weight;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.template.flows;
+
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Chooses the notary of new issuances, so that metal transactions can be spread over several notaries.
+ *
+ * Only issuances are routed: a transaction that spends states must use the notary of those states, so transfers and
+ * merges stay where their inputs are, and ChangeMetalNotaryFlow moves states between notaries. The service is
+ * configured through the CorDapp config file:
+ *
+ *   notary.policy        - first, metal or issuer (default first)
+ *   notary.metal.<code>  - for the metal policy, the notary of one metal, e.g. notary.metal.XAU = "O=Notary,L=London,C=GB"
+ *
+ * The notaries are those of the network map, ordered by name. The first policy always picks the first of them. The
+ * metal and issuer policies pick by a hash of the metal code or issuer name, unless the metal has its own notary.
+ */
+@CordaService
+public class NotarySelector extends SingletonSerializeAsToken {
+    public enum Policy { FIRST, METAL, ISSUER }
+
+    private final AppServiceHub serviceHub;
+    private final CordappConfig config;
+    private final Policy policy;
+
+    public NotarySelector(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.config = serviceHub.getAppContext().getConfig();
+        this.policy = config.exists("notary.policy") ? Policy.valueOf(config.getString("notary.policy").toUpperCase(Locale.ROOT)) : Policy.FIRST;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /* Every notary of the network, ordered by name so that all nodes route alike. */
+    public List<Party> notaries() throws FlowException {
+        List<Party> notaries = new ArrayList<>(serviceHub.getNetworkMapCache().getNotaryIdentities());
+        if (notaries.isEmpty())
+            throw new FlowException("The network has no notary.");
+        notaries.sort(Comparator.comparing(notary -> notary.getName().toString()));
+        return notaries;
+    }
+
+    /* The notary of a new issuance of the metal by the issuer. */
+    public Party forIssuance(AbstractParty issuer, String metalCode) throws FlowException {
+        List<Party> notaries = notaries();
+        switch (policy) {
+            case METAL:
+                String path = "notary.metal." + metalCode;
+                if (config.exists(path))
+                    return named(CordaX500Name.parse(config.getString(path)));
+                return notaries.get(bucket(metalCode, notaries.size()));
+            case ISSUER:
+                Party wellKnown = serviceHub.getIdentityService().requireWellKnownPartyFromAnonymous(issuer);
+                return notaries.get(bucket(wellKnown.getName().toString(), notaries.size()));
+            default:
+                return notaries.get(0);
+        }
+    }
+
+    /* The notary of transactions that are not routed, such as the template's. */
+    public Party first() throws FlowException {
+        return notaries().get(0);
+    }
+
+    private Party named(CordaX500Name name) throws FlowException {
+        Party notary = serviceHub.getNetworkMapCache().getNotary(name);
+        if (notary == null)
+            throw new FlowException(name + " is configured as a notary but is not a notary of the network.");
+        return notary;
+    }
+
+    /* String.hashCode clusters on short codes such as XAU and XAG, so the hash of the key's SHA-256 is used instead. */
+    private static int bucket(String key, int buckets) {
+        return Math.floorMod(ByteBuffer.wrap(SecureHash.sha256(key).getBytes()).getInt(), buckets);
+    }
+}
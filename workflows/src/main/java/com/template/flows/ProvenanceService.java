@@ -0,0 +1,264 @@
+package com.template.flows;
+
+import com.template.schema.ProvenanceSchemaV1.ProvenanceLink;
+import com.template.states.MetalState;
+import com.template.states.MetalStateV2;
+import com.template.states.Metals;
+import kotlin.jvm.functions.Function1;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.TransactionResolutionException;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.Vault;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import net.corda.core.transactions.CoreTransaction;
+import net.corda.core.transactions.NotaryChangeLedgerTransaction;
+import net.corda.core.transactions.NotaryChangeWireTransaction;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.WireTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.util.*;
+
+/**
+ * Answers "who has owned this metal" from an index instead of walking the backchain a SignedTransaction at a time.
+ *
+ * Every transaction that brings a MetalStateV2 into the vault is indexed as it is recorded, in the same database
+ * transaction, by linking each of its MetalStateV2 outputs to the inputs it was made from (see ProvenanceSchemaV1).
+ * Backchain transactions are stored without reaching the vault, so a state the index does not know yet is indexed
+ * from transaction storage the first time a chain reaches it. A chain then costs one indexed lookup per hop.
+ *
+ * MetalStates of the first format are indexed the same way, under their metal's code, and an upgrade links each
+ * MetalStateV2 it makes to the first-format states it spent, so a chain runs back through the upgrade to the first
+ * issuance.
+ *
+ * The ancestry of a recorded state never changes, so chains are cached, along with the chain of every state on a
+ * straight run at the end of one. The CorDapp config sets how many are kept:
+ *
+ *   provenance.cacheSize  - chains kept, least recently used dropped first (default 10000)
+ */
+@CordaService
+public class ProvenanceService extends SingletonSerializeAsToken {
+    private static final Logger logger = LoggerFactory.getLogger(ProvenanceService.class);
+
+    private final AppServiceHub serviceHub;
+    private final Map<StateRef, List<CustodyHop>> chains;
+
+    public ProvenanceService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        int cacheSize = config.exists("provenance.cacheSize") ? config.getInt("provenance.cacheSize") : 10000;
+        this.chains = Collections.synchronizedMap(new LinkedHashMap<StateRef, List<CustodyHop>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StateRef, List<CustodyHop>> eldest) {
+                return size() > cacheSize;
+            }
+        });
+
+        // Raw updates arrive inside the database transaction that records them, so the index commits with the vault.
+        serviceHub.getVaultService().getRawUpdates().subscribe(this::onUpdate);
+    }
+
+    /*
+     * The chain of custody of a MetalStateV2: the state first, then the states it was made from, back to the
+     * issuances, each once. Must be called from a flow.
+     */
+    public List<CustodyHop> custody(StateRef stateRef) throws FlowException {
+        List<CustodyHop> cached = chains.get(stateRef);
+        if (cached != null)
+            return cached;
+
+        List<CustodyHop> chain = new ArrayList<>();
+        Set<StateRef> visited = new HashSet<>();
+        Deque<StateRef> toVisit = new ArrayDeque<>(Collections.singletonList(stateRef));
+        while (!toVisit.isEmpty()) {
+            StateRef next = toVisit.removeFirst();
+            if (!visited.add(next))
+                continue;
+
+            //A cached chain is the whole ancestry of its state, so the walk stops there
+            List<CustodyHop> ancestry = chains.get(next);
+            if (ancestry != null) {
+                for (CustodyHop hop : ancestry) {
+                    if (hop.getStateRef().equals(next) || visited.add(hop.getStateRef()))
+                        chain.add(hop);
+                }
+                continue;
+            }
+
+            CustodyHop hop = hop(next);
+            chain.add(hop);
+            toVisit.addAll(hop.getPredecessors());
+        }
+
+        List<CustodyHop> result = Collections.unmodifiableList(chain);
+        chains.put(stateRef, result);
+        //Where the chain ends in a straight run, the rest of the chain is also the ancestry of each state on it
+        for (int i = result.size() - 1; i > 0; i--) {
+            CustodyHop hop = result.get(i);
+            boolean straight = i == result.size() - 1
+                    ? hop.getPredecessors().isEmpty()
+                    : hop.getPredecessors().equals(Collections.singletonList(result.get(i + 1).getStateRef()));
+            if (!straight)
+                break;
+            chains.put(hop.getStateRef(), result.subList(i, result.size()));
+        }
+        return result;
+    }
+
+    /* How many transactions the chain of custody of a MetalStateV2 spans, which a new owner would have to resolve. */
+    public int depth(StateRef stateRef) throws FlowException {
+        Set<SecureHash> transactions = new HashSet<>();
+        for (CustodyHop hop : custody(stateRef)) {
+            transactions.add(hop.getTransactionId());
+        }
+        return transactions.size();
+    }
+
+    private CustodyHop hop(StateRef stateRef) throws FlowException {
+        List<ProvenanceLink> links = links(stateRef);
+        if (links.isEmpty()) {
+            SignedTransaction transaction = serviceHub.getValidatedTransactions().getTransaction(stateRef.getTxhash());
+            if (transaction == null)
+                throw new FlowException("Transaction " + stateRef.getTxhash() + " is not known to this node.");
+            index(transaction);
+            links = links(stateRef);
+            if (links.isEmpty())
+                throw new FlowException(stateRef + " is not a metal state.");
+        }
+
+        ProvenanceLink link = links.get(0);
+        List<StateRef> predecessors = new ArrayList<>();
+        for (ProvenanceLink predecessor : links) {
+            if (predecessor.getPredecessorRef() != null)
+                predecessors.add(parse(predecessor.getPredecessorRef()));
+        }
+        return new CustodyHop(stateRef, SecureHash.parse(link.getTransactionId()), link.getOwner(), link.getMetalCode(),
+                link.getWeight(), predecessors);
+    }
+
+    private List<ProvenanceLink> links(StateRef stateRef) {
+        Function1<EntityManager, List<ProvenanceLink>> query = entityManager -> entityManager
+                .createQuery("SELECT l FROM ProvenanceLink l WHERE l.stateRef = :stateRef ORDER BY l.predecessorRef", ProvenanceLink.class)
+                .setParameter("stateRef", key(stateRef))
+                .getResultList();
+        return serviceHub.withEntityManager(query);
+    }
+
+    private void onUpdate(Vault.Update<ContractState> update) {
+        Set<SecureHash> transactions = new LinkedHashSet<>();
+        for (StateAndRef<ContractState> produced : update.getProduced()) {
+            if (produced.getState().getData() instanceof MetalStateV2)
+                transactions.add(produced.getRef().getTxhash());
+        }
+
+        // A failure here would fail the recording flow; a state left out is indexed when a chain first reaches it.
+        for (SecureHash txId : transactions) {
+            try {
+                SignedTransaction transaction = serviceHub.getValidatedTransactions().getTransaction(txId);
+                if (transaction != null)
+                    index(transaction);
+            } catch (TransactionResolutionException | RuntimeException e) {
+                logger.warn("Could not index the provenance of transaction " + txId, e);
+            }
+        }
+    }
+
+    /* Links each metal output of the transaction to the inputs of its metal and issuer. */
+    private void index(SignedTransaction transaction) throws TransactionResolutionException {
+        List<ProvenanceLink> links = new ArrayList<>();
+        CoreTransaction core = transaction.getCoreTransaction();
+
+        if (core instanceof WireTransaction) {
+            WireTransaction wtx = (WireTransaction) core;
+            Map<StateRef, MetalStateV2> inputs = null;
+            for (int i = 0; i < wtx.getOutputs().size(); i++) {
+                MetalStateV2 metalState = asMetalState(wtx.getOutputs().get(i).getData());
+                if (metalState == null)
+                    continue;
+                if (inputs == null)
+                    inputs = metalInputs(wtx.getInputs());
+
+                List<String> predecessors = new ArrayList<>();
+                for (Map.Entry<StateRef, MetalStateV2> input : inputs.entrySet()) {
+                    if (input.getValue().getMetalCode().equals(metalState.getMetalCode())
+                            && input.getValue().getIssuer().getOwningKey().equals(metalState.getIssuer().getOwningKey()))
+                        predecessors.add(key(input.getKey()));
+                }
+                addLinks(links, new StateRef(transaction.getId(), i), metalState, predecessors);
+            }
+        } else if (core instanceof NotaryChangeWireTransaction) {
+            //A notary change moves each input, unchanged, to the output at the same position
+            NotaryChangeLedgerTransaction ltx = transaction.resolveNotaryChangeTransaction(serviceHub);
+            for (int i = 0; i < ltx.getOutputs().size(); i++) {
+                MetalStateV2 metalState = asMetalState(ltx.getOutputs().get(i).getData());
+                if (metalState != null)
+                    addLinks(links, new StateRef(transaction.getId(), i), metalState,
+                            Collections.singletonList(key(ltx.getInputs().get(i).getRef())));
+            }
+        }
+
+        if (links.isEmpty())
+            return;
+        serviceHub.withEntityManager(entityManager -> {
+            for (ProvenanceLink link : links) {
+                entityManager.merge(link);
+            }
+        });
+    }
+
+    private Map<StateRef, MetalStateV2> metalInputs(List<StateRef> inputRefs) throws TransactionResolutionException {
+        Map<StateRef, MetalStateV2> inputs = new LinkedHashMap<>();
+        for (StateRef inputRef : inputRefs) {
+            MetalStateV2 input = asMetalState(serviceHub.loadState(inputRef).getData());
+            if (input != null)
+                inputs.put(inputRef, input);
+        }
+        return inputs;
+    }
+
+    /* A metal state of either format as a MetalStateV2, only to index it, or null for any other state. */
+    private static MetalStateV2 asMetalState(ContractState state) {
+        if (state instanceof MetalStateV2)
+            return (MetalStateV2) state;
+        if (state instanceof MetalState) {
+            MetalState legacy = (MetalState) state;
+            return new MetalStateV2(Metals.code(legacy.getMetalName()), legacy.getWeight(), legacy.getIssuer(), legacy.getOwner());
+        }
+        return null;
+    }
+
+    private void addLinks(List<ProvenanceLink> links, StateRef stateRef, MetalStateV2 metalState, List<String> predecessors) {
+        String owner = nameOf(metalState.getOwner());
+        if (predecessors.isEmpty())
+            links.add(new ProvenanceLink(key(stateRef), null, stateRef.getTxhash().toString(), owner, metalState.getMetalCode(), metalState.getWeight()));
+        for (String predecessor : predecessors) {
+            links.add(new ProvenanceLink(key(stateRef), predecessor, stateRef.getTxhash().toString(), owner, metalState.getMetalCode(), metalState.getWeight()));
+        }
+    }
+
+    /* Owners are named, where the node knows them, so that a chain reads the same whichever key each state used. */
+    private String nameOf(AbstractParty party) {
+        Party wellKnown = serviceHub.getIdentityService().wellKnownPartyFromAnonymous(party);
+        return wellKnown == null ? party.toString() : wellKnown.toString();
+    }
+
+    private static String key(StateRef stateRef) {
+        return stateRef.getTxhash() + ":" + stateRef.getIndex();
+    }
+
+    private static StateRef parse(String key) {
+        int separator = key.lastIndexOf(':');
+        return new StateRef(SecureHash.parse(key.substring(0, separator)), Integer.parseInt(key.substring(separator + 1)));
+    }
+}
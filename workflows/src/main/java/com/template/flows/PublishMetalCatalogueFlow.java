@@ -0,0 +1,107 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalCatalogueContract;
+import com.template.states.MetalCatalogueState;
+import com.template.states.Metals;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Publishes our metal catalogue: the first run creates it, later runs issue a new version of it. Every observer
+ * records the catalogue in its vault, so that it can reference it when transferring our metal. Observers must
+ * include every node that holds, or will hold, our metal.
+ *
+ * Metal may be on any notary, and a transaction can only reference states of its own notary, so the catalogue is
+ * published on every notary in its own transaction. Run the flow again when a notary joins the network.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class PublishMetalCatalogueFlow extends FlowLogic<List<SignedTransaction>> {
+
+    //private variables
+    private List<MetalCatalogueState.Entry> entries;
+    private List<Party> observers;
+
+    public PublishMetalCatalogueFlow(List<MetalCatalogueState.Entry> entries, List<Party> observers) {
+        this.entries = entries;
+        this.observers = observers;
+    }
+
+    /* Publishes the metals of Metals with their default precision and limits. */
+    public PublishMetalCatalogueFlow(List<Party> observers) {
+        this(Metals.defaultEntries(), observers);
+    }
+
+    private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
+    private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
+    private final ProgressTracker.Step COUNTERPARTY_SESSION = new ProgressTracker.Step("Sending flow to observers.");
+    private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.");
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            GENERATING_TRANSACTION,
+            SIGNING_TRANSACTION,
+            COUNTERPARTY_SESSION,
+            FINALISING_TRANSACTION
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    @Suspendable
+    @Override
+    public List<SignedTransaction> call() throws FlowException {
+        List<SignedTransaction> published = new ArrayList<>();
+        for (Party notary : getServiceHub().cordaService(NotarySelector.class).notaries()) {
+            published.add(publish(notary));
+        }
+        return published;
+    }
+
+    @Suspendable
+    private SignedTransaction publish(Party notary) throws FlowException {
+        //Create a new catalogue on the notary, or the next version of the current one
+        progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+        StateAndRef<MetalCatalogueState> current = getServiceHub().cordaService(MetalCatalogueService.class).find(getOurIdentity(), notary);
+        TransactionBuilder txB;
+        if (current == null) {
+            txB = new TransactionBuilder(notary)
+                    .addOutputState(new MetalCatalogueState(getOurIdentity(), entries), MetalCatalogueContract.CID)
+                    .addCommand(new Command<>(new MetalCatalogueContract.Commands.Create(), getOurIdentity().getOwningKey()));
+        } else {
+            txB = new TransactionBuilder(notary)
+                    .addInputState(current)
+                    .addOutputState(current.getState().getData().withEntries(entries), MetalCatalogueContract.CID)
+                    .addCommand(new Command<>(new MetalCatalogueContract.Commands.Update(), getOurIdentity().getOwningKey()));
+        }
+
+        //Sign the transaction
+        progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
+
+        //Create one session per observer
+        progressTracker.setCurrentStep(COUNTERPARTY_SESSION);
+        List<FlowSession> observerSessions = new ArrayList<>();
+        for (Party observer : observers) {
+            if (!observer.equals(getOurIdentity()))
+                observerSessions.add(initiateFlow(observer));
+        }
+
+        //Finalize and send to the observers
+        progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+        return subFlow(new FinalityFlow(signedTx, observerSessions));
+    }
+}
@@ -0,0 +1,27 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.transactions.SignedTransaction;
+
+// ******************
+// * Responder flow *
+// ******************
+@InitiatedBy(PublishMetalCatalogueFlow.class)
+public class PublishMetalCatalogueResponder extends FlowLogic<SignedTransaction> {
+    private FlowSession otherPartySession;
+
+    public PublishMetalCatalogueResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        // Responder flow logic goes here.
+
+        // We are not a participant of the catalogue, but record it so our transfers can reference it.
+        return subFlow(new ReceiveFinalityFlow(otherPartySession, null, StatesToRecord.ALL_VISIBLE));
+    }
+}
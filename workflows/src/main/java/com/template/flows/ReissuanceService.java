@@ -0,0 +1,138 @@
+package com.template.flows;
+
+import com.template.schema.ReissuanceSchemaV1.PendingReissuance;
+import kotlin.jvm.functions.Function1;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.EntityManager;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track, on the issuer, of the metal owed back to owners whose states were exited for reissuance (see
+ * ReissueMetalFlow), and retries any reissuance that did not complete.
+ *
+ * What is owed for an exit is written in the database transaction that records the exit and only cleared as the
+ * reissuances become final. A run starts one ReissueOwedMetalFlow per exit still owed, so an owner that is offline
+ * only holds up its own metal. The service is configured through the CorDapp config file:
+ *
+ *   reissuance.retrySeconds  - how long an exit may stay owed before it is retried, and how often to look (default 60)
+ *
+ * Only one flow reissues a given exit at a time.
+ */
+@CordaService
+public class ReissuanceService extends SingletonSerializeAsToken {
+    private static final Logger logger = LoggerFactory.getLogger(ReissuanceService.class);
+
+    private final AppServiceHub serviceHub;
+    private final int retrySeconds;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metal-reissuance");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Exits a flow of this node is reissuing right now.
+    private final Set<String> reissuing = ConcurrentHashMap.newKeySet();
+
+    public ReissuanceService(AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+
+        CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.retrySeconds = config.exists("reissuance.retrySeconds") ? config.getInt("reissuance.retrySeconds") : 60;
+
+        executor.scheduleWithFixedDelay(this::retry, retrySeconds, retrySeconds, TimeUnit.SECONDS);
+    }
+
+    /* Records that we owe the owner the weight an exit destroyed. Must be called from the flow that records the exit. */
+    public void owe(SecureHash exitTxId, Party owner, String metalCode, long weight) {
+        PendingReissuance owed = new PendingReissuance(exitTxId.toString(), owner.getName().toString(), metalCode, weight, Instant.now());
+        serviceHub.withEntityManager(entityManager -> {
+            entityManager.persist(owed);
+        });
+    }
+
+    /* What is still owed for an exit, or null once all of it is reissued. Must be called from a flow. */
+    PendingReissuance owed(SecureHash exitTxId) {
+        Function1<EntityManager, PendingReissuance> query = entityManager ->
+                entityManager.find(PendingReissuance.class, exitTxId.toString());
+        return serviceHub.withEntityManager(query);
+    }
+
+    /* Names the reissuance about to be finalised, so a retry can find out whether it was. Must be called from a flow. */
+    void reissuing(SecureHash exitTxId, SecureHash reissueTxId) {
+        serviceHub.withEntityManager(entityManager -> {
+            PendingReissuance owed = entityManager.find(PendingReissuance.class, exitTxId.toString());
+            if (owed != null)
+                owed.setReissueTransactionId(reissueTxId.toString());
+        });
+    }
+
+    /* Takes a final reissuance off what is owed, dropping the exit once nothing is left. Must be called from a flow. */
+    void reissued(SecureHash exitTxId, long weight) {
+        serviceHub.withEntityManager(entityManager -> {
+            PendingReissuance owed = entityManager.find(PendingReissuance.class, exitTxId.toString());
+            if (owed == null)
+                return;
+            if (owed.getWeight() <= weight) {
+                entityManager.remove(owed);
+            } else {
+                owed.setWeight(owed.getWeight() - weight);
+                owed.setReissueTransactionId(null);
+            }
+        });
+    }
+
+    /* Claims an exit for the calling flow; false if another flow is reissuing it. */
+    boolean claim(SecureHash exitTxId) {
+        return reissuing.add(exitTxId.toString());
+    }
+
+    void release(SecureHash exitTxId) {
+        reissuing.remove(exitTxId.toString());
+    }
+
+    private void retry() {
+        List<String> due;
+        try {
+            Instant before = Instant.now().minusSeconds(retrySeconds);
+            Function1<EntityManager, List<String>> query = entityManager -> entityManager
+                    .createQuery("SELECT r.exitTransactionId FROM PendingReissuance r WHERE r.queuedAt < :before ORDER BY r.queuedAt", String.class)
+                    .setParameter("before", before)
+                    .getResultList();
+            due = serviceHub.withEntityManager(query);
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the metal owed for reissuance", e);
+            return;
+        }
+
+        for (String exitTxId : due) {
+            if (reissuing.contains(exitTxId))
+                continue;
+            try {
+                serviceHub.startFlow(new ReissueOwedMetalFlow(SecureHash.parse(exitTxId)))
+                        .getReturnValue().toCompletableFuture()
+                        .whenComplete((reissued, error) -> {
+                            if (error != null)
+                                logger.warn("Reissuing the metal exited by " + exitTxId + " failed", error);
+                            else if (!reissued.isEmpty())
+                                logger.info("Reissued the metal exited by {} in {} transactions", exitTxId, reissued.size());
+                        });
+            } catch (RuntimeException e) {
+                logger.warn("Could not start reissuing the metal exited by " + exitTxId, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalContract;
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Swaps our MetalStates of a metal whose backchain has grown long for fresh ones from the issuer, so whoever we pass
+ * them on to no longer has to resolve and verify their whole history.
+ *
+ * A transaction that spends the old states keeps their backchain, so the swap takes two: we exit the old states
+ * with the issuer, who must sign the exit, and the issuer then issues the same weight back to us with no inputs.
+ * The issuer checks before signing that it can issue everything back, and records that it owes us the weight in
+ * the same database transaction as the exit; what it cannot reissue straight away it retries later (see
+ * ReissuanceService), so the exit never destroys the metal. The custody chain of a reissued state (see
+ * ProvenanceService) starts at its reissuance.
+ *
+ * Only states whose custody chain spans at least minDepth transactions are swapped, at most maxStates of them, all
+ * from one issuer and notary. Without a minDepth the CorDapp config decides:
+ *
+ *   reissuance.minDepth  - transactions a chain must span before its state is reissued (default 20)
+ *
+ * Returns the exit followed by the reissuances received so far, or nothing if no state was deep enough.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class ReissueMetalFlow extends FlowLogic<List<SignedTransaction>> {
+    public static final int DEFAULT_MIN_DEPTH = 20;
+    public static final int DEFAULT_MAX_STATES = 20;
+
+    //private variables
+    private String metalName;
+    private int minDepth;
+    private int maxStates;
+
+    public ReissueMetalFlow(String metalName) {
+        this(metalName, 0, DEFAULT_MAX_STATES);
+    }
+
+    public ReissueMetalFlow(String metalName, int minDepth, int maxStates) {
+        if (maxStates < 1)
+            throw new IllegalArgumentException("Max states must be positive");
+        this.metalName = metalName;
+        this.minDepth = minDepth;
+        this.maxStates = maxStates;
+    }
+
+    private final ProgressTracker.Step SELECTING_STATES = new ProgressTracker.Step("Selecting states with a long backchain.");
+    private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating the exit transaction.");
+    private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
+    private final ProgressTracker.Step COLLECTING_SIGNATURES = new ProgressTracker.Step("Collecting the issuer's signature.");
+    private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.");
+    private final ProgressTracker.Step RECEIVING_REISSUANCE = new ProgressTracker.Step("Receiving the reissued states.");
+
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            SELECTING_STATES,
+            GENERATING_TRANSACTION,
+            SIGNING_TRANSACTION,
+            COLLECTING_SIGNATURES,
+            FINALISING_TRANSACTION,
+            RECEIVING_REISSUANCE
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+
+
+    @Suspendable
+    @Override
+    public List<SignedTransaction> call() throws FlowException {
+        //Initiator flow logic goes here
+        List<SignedTransaction> transactions = new ArrayList<>();
+
+        //Reserve the states whose chain has grown past the threshold
+        progressTracker.setCurrentStep(SELECTING_STATES);
+        ProvenanceService provenance = getServiceHub().cordaService(ProvenanceService.class);
+        int threshold = minDepth > 0 ? minDepth : configuredMinDepth();
+        List<StateAndRef<MetalStateV2>> inputStates = new MetalStateSelector(getServiceHub()).selectWhere(
+                getOurIdentity(), getServiceHub().cordaService(MetalCatalogueService.class).metalCode(metalName), maxStates,
+                metalState -> deepEnough(provenance, metalState, threshold), getRunId().getUuid());
+        if (inputStates.isEmpty())
+            return transactions;
+
+        AbstractParty issuer = inputStates.get(0).getState().getData().getIssuer();
+        Party wellKnownIssuer = getServiceHub().getIdentityService().requireWellKnownPartyFromAnonymous(issuer);
+        Party notary = inputStates.get(0).getState().getNotary();
+
+        //Exit the states, which takes both our signature and the issuer's
+        progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+        TransactionBuilder txB = new TransactionBuilder(notary)
+                .addCommand(new Command(new MetalContract.Commands.Exit(),
+                        Arrays.asList(getOurIdentity().getOwningKey(), wellKnownIssuer.getOwningKey())));
+        for (StateAndRef<MetalStateV2> inputState : inputStates) {
+            txB.addInputState(inputState);
+        }
+
+        progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
+
+        progressTracker.setCurrentStep(COLLECTING_SIGNATURES);
+        FlowSession issuerSession = initiateFlow(wellKnownIssuer);
+        SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(signedTx, Collections.singletonList(issuerSession)));
+
+        progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+        transactions.add(subFlow(new FinalityFlow(fullySignedTx, Collections.singletonList(issuerSession))));
+
+        //The issuer issues the weight back in as many transactions as its issuance limit needs. It owes us whatever
+        //does not arrive here, and sends it when it retries.
+        progressTracker.setCurrentStep(RECEIVING_REISSUANCE);
+        try {
+            int reissuances = issuerSession.receive(Integer.class).unwrap(count -> count);
+            for (int i = 0; i < reissuances; i++) {
+                transactions.add(subFlow(new ReceiveFinalityFlow(issuerSession)));
+            }
+        } catch (UnexpectedFlowEndException e) {
+            getLogger().warn("The issuer did not finish reissuing the metal exited by {}: {}", transactions.get(0).getId(), e.getMessage());
+        }
+        return transactions;
+    }
+
+    private int configuredMinDepth() {
+        CordappConfig config = getServiceHub().getCordappProvider().getAppContext().getConfig();
+        return config.exists("reissuance.minDepth") ? config.getInt("reissuance.minDepth") : DEFAULT_MIN_DEPTH;
+    }
+
+    private boolean deepEnough(ProvenanceService provenance, StateAndRef<MetalStateV2> metalState, int threshold) {
+        try {
+            return provenance.depth(metalState.getRef()) >= threshold;
+        } catch (FlowException e) {
+            getLogger().warn("Could not work out the backchain depth of {}: {}", metalState.getRef(), e.getMessage());
+            return false;
+        }
+    }
+}
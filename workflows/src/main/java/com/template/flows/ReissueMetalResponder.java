@@ -0,0 +1,96 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalContract;
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.flows.*;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.transactions.SignedTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ******************
+// * Responder flow *
+// ******************
+/**
+ * The issuer's side of ReissueMetalFlow: signs the exit of our own metal, records in the same database transaction
+ * as the exit that we owe its weight back to the owner, then reissues it (see ReissueOwedMetalFlow). Whatever cannot
+ * be reissued straight away stays owed and is retried by ReissuanceService, so an exit never destroys the metal.
+ */
+@InitiatedBy(ReissueMetalFlow.class)
+public class ReissueMetalResponder extends FlowLogic<List<SignedTransaction>> {
+    private FlowSession otherPartySession;
+
+    public ReissueMetalResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public List<SignedTransaction> call() throws FlowException {
+        // Responder flow logic goes here.
+
+        SignedTransaction signedTx = subFlow(new SignExitFlow(otherPartySession));
+        SignedTransaction exitTx = subFlow(new ReceiveFinalityFlow(otherPartySession, signedTx.getId(), StatesToRecord.ALL_VISIBLE));
+
+        //Nothing has suspended since the exit was recorded, so the debt commits with it
+        String metalCode = null;
+        long weight = 0;
+        for (MetalStateV2 exited : exitedStates(getServiceHub(), exitTx)) {
+            metalCode = exited.getMetalCode();
+            weight += exited.getWeight();
+        }
+        getServiceHub().cordaService(ReissuanceService.class).owe(exitTx.getId(), otherPartySession.getCounterparty(), metalCode, weight);
+
+        return subFlow(new ReissueOwedMetalFlow(exitTx.getId(), otherPartySession));
+    }
+
+    /* The MetalStateV2s a transaction spends. */
+    private static List<MetalStateV2> exitedStates(ServiceHub serviceHub, SignedTransaction stx) throws FlowException {
+        List<MetalStateV2> exited = new ArrayList<>();
+        for (StateRef inputRef : stx.getTx().getInputs()) {
+            ContractState input = serviceHub.loadState(inputRef).getData();
+            if (input instanceof MetalStateV2)
+                exited.add((MetalStateV2) input);
+        }
+        return exited;
+    }
+
+    /* Only signs a pure exit, by the other side, of one metal we issued and still list, which we can therefore issue back. */
+    private static class SignExitFlow extends SignTransactionFlow {
+        SignExitFlow(FlowSession otherPartySession) {
+            super(otherPartySession);
+        }
+
+        @Override
+        protected void checkTransaction(SignedTransaction stx) throws FlowException {
+            if (!stx.getTx().getOutputs().isEmpty())
+                throw new FlowException("A reissuance exit cannot have outputs.");
+            for (Command<?> command : stx.getTx().getCommands()) {
+                if (!(command.getValue() instanceof MetalContract.Commands.Exit))
+                    throw new FlowException("A reissuance exit can only carry the Exit command.");
+            }
+
+            MetalCatalogueService catalogues = getServiceHub().cordaService(MetalCatalogueService.class);
+            String metalCode = null;
+            for (MetalStateV2 metalState : exitedStates(getServiceHub(), stx)) {
+                if (!metalState.getIssuerKey().equals(getOurIdentity().getOwningKey()))
+                    throw new FlowException("We can only reissue metal we issued.");
+                if (!metalState.getOwnerKey().equals(getOtherSideSession().getCounterparty().getOwningKey()))
+                    throw new FlowException("Only the owner can have its metal reissued.");
+                if (metalCode != null && !metalCode.equals(metalState.getMetalCode()))
+                    throw new FlowException("A reissuance exit can only carry one metal.");
+                metalCode = metalState.getMetalCode();
+                if (catalogues.current(getOurIdentity(), stx.getNotary()).getState().getData().entryForCode(metalCode) == null)
+                    throw new FlowException("Metal " + metalCode + " is no longer in our catalogue.");
+            }
+            if (metalCode == null)
+                throw new FlowException("A reissuance exit must spend our metal.");
+        }
+    }
+}
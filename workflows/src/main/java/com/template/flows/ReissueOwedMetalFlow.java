@@ -0,0 +1,151 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalContract;
+import com.template.schema.ReissuanceSchemaV1.PendingReissuance;
+import com.template.states.MetalCatalogueState;
+import com.template.states.MetalStateV2;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * The issuer reissues the metal it still owes for an exit (see ReissuanceService), fresh and with no inputs, to the
+ * owner whose states were exited, in transactions that each stay within the catalogue's issuance limit.
+ *
+ * ReissueMetalResponder runs it straight after the exit, on the owner's session; ReissuanceService starts it on its
+ * own session for whatever is still owed later. A reissuance that was already final when an earlier attempt failed
+ * is only sent to the owner again. If the metal has left our catalogue nothing is reissued, and the exit stays owed
+ * until it is listed again. Returns the reissuances made or sent.
+ */
+@InitiatingFlow
+@StartableByService
+public class ReissueOwedMetalFlow extends FlowLogic<List<SignedTransaction>> {
+
+    //private variables
+    private SecureHash exitTxId;
+    private FlowSession ownerSession;
+
+    public ReissueOwedMetalFlow(SecureHash exitTxId) {
+        this.exitTxId = exitTxId;
+    }
+
+    ReissueOwedMetalFlow(SecureHash exitTxId, FlowSession ownerSession) {
+        this.exitTxId = exitTxId;
+        this.ownerSession = ownerSession;
+    }
+
+    private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating the reissuance.");
+    private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
+    private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.");
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            GENERATING_TRANSACTION,
+            SIGNING_TRANSACTION,
+            FINALISING_TRANSACTION
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+    @Suspendable
+    @Override
+    public List<SignedTransaction> call() throws FlowException {
+        ReissuanceService reissuance = getServiceHub().cordaService(ReissuanceService.class);
+        List<SignedTransaction> transactions = new ArrayList<>();
+
+        if (!reissuance.claim(exitTxId)) {
+            if (ownerSession != null)
+                ownerSession.send(0);
+            return transactions;
+        }
+        try {
+            PendingReissuance owed = reissuance.owed(exitTxId);
+            SignedTransaction exitTx = getServiceHub().getValidatedTransactions().getTransaction(exitTxId);
+            if (owed != null && exitTx == null)
+                throw new FlowException("Transaction " + exitTxId + " is not known to this node.");
+            if (ownerSession == null) {
+                if (owed == null)
+                    return transactions;
+                Party owner = getServiceHub().getIdentityService().wellKnownPartyFromX500Name(CordaX500Name.parse(owed.getOwner()));
+                if (owner == null)
+                    throw new FlowException("Cannot reissue the metal exited by " + exitTxId + " to unknown owner " + owed.getOwner() + ".");
+                ownerSession = initiateFlow(owner);
+            }
+
+            //A reissuance that made it onto the ledger in an earlier attempt only has to reach the owner
+            SignedTransaction earlier = owed == null || owed.getReissueTransactionId() == null ? null
+                    : getServiceHub().getValidatedTransactions().getTransaction(SecureHash.parse(owed.getReissueTransactionId()));
+            long remaining = owed == null ? 0 : owed.getWeight() - (earlier == null ? 0 : weightOf(earlier));
+            long limit = owed == null ? 0 : issuanceLimit(owed.getMetalCode(), exitTx.getNotary());
+
+            //Tell the owner how many transactions to expect; this also commits everything recorded so far
+            int count = (earlier == null ? 0 : 1) + (limit > 0 ? (int) ((remaining + limit - 1) / limit) : 0);
+            ownerSession.send(count);
+            if (earlier != null) {
+                subFlow(new SendTransactionFlow(ownerSession, earlier));
+                reissuance.reissued(exitTxId, weightOf(earlier));
+                transactions.add(earlier);
+            }
+
+            MetalCatalogueService catalogues = getServiceHub().cordaService(MetalCatalogueService.class);
+            while (remaining > 0 && limit > 0) {
+                long weight = Math.min(remaining, limit);
+                progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+                TransactionBuilder txB = new TransactionBuilder(exitTx.getNotary())
+                        .addReferenceState(catalogues.current(getOurIdentity(), exitTx.getNotary()).referenced())
+                        .addOutputState(new MetalStateV2(owed.getMetalCode(), weight, getOurIdentity().anonymise(),
+                                ownerSession.getCounterparty().anonymise()), MetalContract.CID)
+                        .addCommand(new Command(new MetalContract.Commands.Issue(), getOurIdentity().getOwningKey()));
+
+                progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+                SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
+                reissuance.reissuing(exitTxId, signedTx.getId());
+
+                progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+                SignedTransaction finalTx = subFlow(new FinalityFlow(signedTx, ownerSession));
+                //We are not a participant of the metal we issue, so record its state as an observer
+                getServiceHub().recordTransactions(StatesToRecord.ALL_VISIBLE, Collections.singletonList(finalTx));
+                reissuance.reissued(exitTxId, weight);
+                transactions.add(finalTx);
+                remaining -= weight;
+            }
+            if (remaining > 0)
+                getLogger().warn("Metal {} is not in our catalogue, so the metal exited by {} stays owed", owed.getMetalCode(), exitTxId);
+            return transactions;
+        } finally {
+            reissuance.release(exitTxId);
+        }
+    }
+
+    /* How much of the metal one transaction may issue, or 0 if we do not list it. */
+    private long issuanceLimit(String metalCode, Party notary) {
+        StateAndRef<MetalCatalogueState> catalogue = getServiceHub().cordaService(MetalCatalogueService.class).find(getOurIdentity(), notary);
+        MetalCatalogueState.Entry entry = catalogue == null ? null : catalogue.getState().getData().entryForCode(metalCode);
+        return entry == null ? 0 : entry.getIssuanceLimit();
+    }
+
+    private static long weightOf(SignedTransaction reissuance) {
+        long weight = 0;
+        for (MetalStateV2 metalState : reissuance.getTx().outputsOfType(MetalStateV2.class)) {
+            weight += metalState.getWeight();
+        }
+        return weight;
+    }
+}
@@ -0,0 +1,36 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.transactions.SignedTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ******************
+// * Responder flow *
+// ******************
+/**
+ * The owner's side of ReissueOwedMetalFlow, when the issuer retries a reissuance: records each reissuance it sends.
+ */
+@InitiatedBy(ReissueOwedMetalFlow.class)
+public class ReissueOwedMetalResponder extends FlowLogic<List<SignedTransaction>> {
+    private FlowSession otherPartySession;
+
+    public ReissueOwedMetalResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public List<SignedTransaction> call() throws FlowException {
+        // Responder flow logic goes here.
+
+        int reissuances = otherPartySession.receive(Integer.class).unwrap(count -> count);
+        List<SignedTransaction> transactions = new ArrayList<>();
+        for (int i = 0; i < reissuances; i++) {
+            transactions.add(subFlow(new ReceiveFinalityFlow(otherPartySession)));
+        }
+        return transactions;
+    }
+}
@@ -1,72 +1,73 @@
 package com.template.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
-import com.template.contracts.TemplateContract;
-import com.template.states.MetalState;
-import com.template.states.TemplateState;
-import net.corda.core.contracts.StateAndRef;
+import kotlin.jvm.functions.Function1;
 import net.corda.core.flows.*;
-import net.corda.core.identity.Party;
 import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
-import net.corda.core.transactions.SignedTransaction;
-import net.corda.core.transactions.TransactionBuilder;
-import net.corda.core.utilities.ProgressTracker;
 
-import java.util.Arrays;
-import java.util.List;
-import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.*;
 
 // ******************
 // * Initiator flow *
 // ******************
+/**
+ * Summarises the MetalStates in our vault: how many there are and what they weigh, per metal and per owner.
+ *
+ * The totals are computed by the database, so no state is loaded into the flow. The vault API has no grouped
+ * count, so a single JPQL query joins the metal_states_v2 table to the vault's and counts and sums each metal and
+ * owner at once.
+ */
 @InitiatingFlow
 @StartableByRPC
-public class SearchVault extends FlowLogic<Void> {
+public class SearchVault extends FlowLogic<List<MetalVaultSummary>> {
+    // The node's vault table, whose entity is not on the CorDapp's compile classpath, named as the node names it.
+    private static final String VAULT_STATES = "net.corda.node.services.vault.VaultSchemaV1$VaultStates";
 
-    @Suspendable
-    @Override
-    public Void call() throws FlowException {
-
-        searchForAllStates();
+    //private variables
+    private List<Vault.StateStatus> statuses;
 
-        return null;
+    public SearchVault() {
+        this(Vault.StateStatus.UNCONSUMED, Vault.StateStatus.CONSUMED);
     }
 
-    private void searchForAllStates() {
-        //Search for CONSUMED States
-        QueryCriteria consumedCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED);
-        List<StateAndRef<MetalState>> consumedMetalStates = getServiceHub().getVaultService().queryBy(MetalState.class, consumedCriteria).getStates();
-
-        if(consumedMetalStates.size() < 1) {
-            System.out.println("No CONSUMED Metal States found");
-        } else {
-            System.out.println("Total CONSUMED Metal States found: " +consumedMetalStates.size());
-        }
+    public SearchVault(Vault.StateStatus... statuses) {
+        this.statuses = Arrays.asList(statuses);
+    }
 
-        for(StateAndRef<MetalState> metalState: consumedMetalStates) {
-            System.out.print("\n Name: " + metalState.getState().getData().getMetalName());
-            System.out.print(" Owner: " + metalState.getState().getData().getOwner());
-            System.out.print(" Weight: " + metalState.getState().getData().getWeight());
-            System.out.print(" Issuer: " + metalState.getState().getData().getIssuer());
+    @Suspendable
+    @Override
+    public List<MetalVaultSummary> call() throws FlowException {
+        List<MetalVaultSummary> summaries = new ArrayList<>();
+        for (Vault.StateStatus status : statuses) {
+            summaries.add(summarise(status));
         }
 
+        return summaries;
+    }
 
-        //Search for UNCONSUMED States
-        QueryCriteria unconsumedCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
-        List<StateAndRef<MetalState>> unconsumedMetalStates = getServiceHub().getVaultService().queryBy(MetalState.class, unconsumedCriteria).getStates();
+    private MetalVaultSummary summarise(Vault.StateStatus status) {
+        //Count and sum the states per metal and owner: each group comes back as [metal, owner, count, sum]
+        Function1<EntityManager, List<Object[]>> query = entityManager -> {
+            TypedQuery<Object[]> groups = entityManager.createQuery(
+                    "SELECT m.metalCode, m.owner, COUNT(m), SUM(m.weight) FROM PersistentMetalV2 m, " + VAULT_STATES + " v " +
+                    "WHERE v.stateRef.txId = m.stateRef.txId AND v.stateRef.index = m.stateRef.index" +
+                    (status == Vault.StateStatus.ALL ? "" : " AND v.stateStatus = :status") +
+                    " GROUP BY m.metalCode, m.owner", Object[].class);
+            if (status != Vault.StateStatus.ALL)
+                groups.setParameter("status", status);
+            return groups.getResultList();
+        };
 
-        if(unconsumedMetalStates.size() < 1) {
-            System.out.println("No UNCONSUMED Metal States found");
-        } else {
-            System.out.println("Total UNCONSUMED Metal States found: " +unconsumedMetalStates.size());
+        Map<String, MetalVaultSummary.Total> byMetal = new TreeMap<>();
+        Map<String, MetalVaultSummary.Total> byOwner = new TreeMap<>();
+        for (Object[] group : getServiceHub().withEntityManager(query)) {
+            MetalVaultSummary.Total total = new MetalVaultSummary.Total(((Number) group[2]).longValue(), ((Number) group[3]).longValue());
+            byMetal.merge(group[0].toString(), total, MetalVaultSummary.Total::plus);
+            byOwner.merge(String.valueOf(group[1]), total, MetalVaultSummary.Total::plus);
         }
 
-        for(StateAndRef<MetalState> metalState: unconsumedMetalStates) {
-            System.out.print("\n Name: " + metalState.getState().getData().getMetalName());
-            System.out.print(" Owner: " + metalState.getState().getData().getOwner());
-            System.out.print(" Weight: " + metalState.getState().getData().getWeight());
-            System.out.print(" Issuer: " + metalState.getState().getData().getIssuer());
-        }
+        return new MetalVaultSummary(status, byMetal, byOwner);
     }
 }
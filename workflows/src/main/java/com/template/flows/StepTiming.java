@@ -0,0 +1,59 @@
+package com.template.flows;
+
+/**
+ * A snapshot of the latency histogram of one flow step, in microseconds. Percentiles are the upper bound of the
+ * histogram bucket they fall in, so they overstate the true value by at most a quarter.
+ */
+public class StepTiming {
+    private final String step;
+    private final long count;
+    private final long meanMicros;
+    private final long p50Micros;
+    private final long p95Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+
+    public StepTiming(String step, long count, long meanMicros, long p50Micros, long p95Micros, long p99Micros, long maxMicros) {
+        this.step = step;
+        this.count = count;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p95Micros = p95Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP95Micros() {
+        return p95Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d, mean %dus, p50 %dus, p95 %dus, p99 %dus, max %dus",
+                step, count, meanMicros, p50Micros, p95Micros, p99Micros, maxMicros);
+    }
+}
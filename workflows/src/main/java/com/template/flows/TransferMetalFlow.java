@@ -2,13 +2,12 @@ package com.template.flows;
 
 import co.paralleluniverse.fibers.Suspendable;
 import com.template.contracts.MetalContract;
-import com.template.states.MetalState;
+import com.template.states.MetalStateV2;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.StateAndRef;
 import net.corda.core.flows.*;
+import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
@@ -24,11 +23,10 @@ public class TransferMetalFlow extends FlowLogic<SignedTransaction> {
 
     //private variables
     private String metalName;
-    private int weight;
+    private long weight;
     private Party newOwner;
-    private int x = 0;
 
-    public TransferMetalFlow(String metalName, int weight, Party newOwner) {
+    public TransferMetalFlow(String metalName, long weight, Party newOwner) {
         this.metalName = metalName;
         this.weight = weight;
         this.newOwner = newOwner;
@@ -39,6 +37,7 @@ public class TransferMetalFlow extends FlowLogic<SignedTransaction> {
     private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
     private final ProgressTracker.Step COUNTERPARTY_SESSION = new ProgressTracker.Step("Sending flow to counterparty.");
     private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.");
+    private final ProgressTracker.Step REPORTING_TO_ISSUER = new ProgressTracker.Step("Reporting the transaction to the issuer.");
 
 
     private final ProgressTracker progressTracker = new ProgressTracker(
@@ -46,7 +45,8 @@ public class TransferMetalFlow extends FlowLogic<SignedTransaction> {
             GENERATING_TRANSACTION,
             SIGNING_TRANSACTION,
             COUNTERPARTY_SESSION,
-            FINALISING_TRANSACTION
+            FINALISING_TRANSACTION,
+            REPORTING_TO_ISSUER
     );
 
     @Override
@@ -59,61 +59,69 @@ public class TransferMetalFlow extends FlowLogic<SignedTransaction> {
     @Suspendable
     @Override
     public SignedTransaction call() throws FlowException {
+        //Time each step, and count how the run ends
+        FlowStepTimer timer = getServiceHub().cordaService(FlowMetricsService.class).started(getClass());
+        try {
+            SignedTransaction finalTx = transfer(timer);
+            timer.completed(getServiceHub());
+            return finalTx;
+        } catch (FlowException | RuntimeException e) {
+            timer.failed(getServiceHub(), e);
+            throw e;
+        }
+    }
+
+    @Suspendable
+    private SignedTransaction transfer(FlowStepTimer timer) throws FlowException {
         //Initiator flow logic goes here
 
-        //Retrieve notary identity
-        progressTracker.setCurrentStep(RETRIEVING_NOTARY);
-        Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+        //Reserve the inputs under our run id so that concurrent transfers pick other states
+        String metalCode = getServiceHub().cordaService(MetalCatalogueService.class).metalCode(metalName);
+        List<StateAndRef<MetalStateV2>> inputStates = new MetalStateSelector(getServiceHub())
+                .selectAtLeast(getOurIdentity(), metalCode, weight, getRunId().getUuid());
 
-        StateAndRef<MetalState> inputState = checkForMetalStates();
+        AbstractParty issuer = inputStates.get(0).getState().getData().getIssuer();
 
-        Party issuer = inputState.getState().getData().getIssuer();
+        //The inputs share a notary, which the transfer must use
+        timer.step(getServiceHub(), progressTracker, RETRIEVING_NOTARY);
+        Party notary = inputStates.get(0).getState().getNotary();
+        long change = -weight;
+        for (StateAndRef<MetalStateV2> inputState : inputStates) {
+            change += inputState.getState().getData().getWeight();
+        }
 
         //Create transaction components
-        MetalState outputState = new MetalState(metalName, weight, issuer, newOwner);
+        MetalStateV2 outputState = new MetalStateV2(metalCode, weight, issuer, newOwner.anonymise());
         Command command = new Command(new MetalContract.Commands.Transfer(), getOurIdentity().getOwningKey());
 
-        //create trx builder
-        progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+        //create trx builder, returning any excess weight to ourselves as change
+        timer.step(getServiceHub(), progressTracker, GENERATING_TRANSACTION);
         TransactionBuilder txB = new TransactionBuilder(notary)
-                .addInputState(inputState)
                 .addOutputState(outputState, MetalContract.CID)
                 .addCommand(command);
+        for (StateAndRef<MetalStateV2> inputState : inputStates) {
+            txB.addInputState(inputState);
+        }
+        if (change > 0) {
+            txB.addOutputState(new MetalStateV2(metalCode, change, issuer, getOurIdentity().anonymise()), MetalContract.CID);
+        }
 
         //Sign the transaction
-        progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+        timer.step(getServiceHub(), progressTracker, SIGNING_TRANSACTION);
         SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
 
-        //Create session with Counterparty
-        progressTracker.setCurrentStep(COUNTERPARTY_SESSION);
+        //Create session with Counterparty, the only other participant
+        timer.step(getServiceHub(), progressTracker, COUNTERPARTY_SESSION);
         FlowSession otherPartySession = initiateFlow(newOwner);
-        FlowSession mintPartySession = initiateFlow(issuer);
 
         //Finalize and send to Counterparty
-        progressTracker.setCurrentStep(FINALISING_TRANSACTION);
-        return subFlow(new FinalityFlow(signedTx, otherPartySession, mintPartySession));
-
-    }
-
-    private StateAndRef<MetalState> checkForMetalStates() throws FlowException{
-        QueryCriteria generalCriteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
-
-        List<StateAndRef<MetalState>> metalStates = getServiceHub().getVaultService().queryBy(MetalState.class, generalCriteria).getStates();
-
-        boolean inputFound = false;
-
-        for (StateAndRef<MetalState> metalState: metalStates){
-            if(metalState.getState().getData().getMetalName().equals(metalName)
-            && metalState.getState().getData().getWeight() == weight) {
-                this.x = x;
-                inputFound = true;
-            }
-
-        }
+        timer.step(getServiceHub(), progressTracker, FINALISING_TRANSACTION);
+        SignedTransaction finalTx = subFlow(new FinalityFlow(signedTx, otherPartySession));
 
-        if(!inputFound)
-            throw new FlowException("Metal State was not found.");
+        //Let the issuer know, now or in the next batch
+        timer.step(getServiceHub(), progressTracker, REPORTING_TO_ISSUER);
+        subFlow(new IssuerReportFlow(getServiceHub().getIdentityService().requireWellKnownPartyFromAnonymous(issuer), finalTx.getId()));
+        return finalTx;
 
-        return metalStates.get(this.x);
     }
 }
@@ -0,0 +1,162 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.MetalContract;
+import com.template.schema.MetalSchemaV1;
+import com.template.states.MetalState;
+import com.template.states.MetalStateV2;
+import com.template.states.Metals;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.*;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.NonEmptySet;
+import net.corda.core.utilities.ProgressTracker;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+
+// ******************
+// * Initiator flow *
+// ******************
+/**
+ * Upgrades the MetalStates of the first ledger format that we own to MetalStateV2s of the same metal, weight, issuer
+ * and owner, which the rest of the CorDapp selects, transfers and reports on.
+ *
+ * Each upgrade transaction spends at most maxStates states on one notary, and at most maxTransactions are made per
+ * run. Only our signature is needed; the issuers, who were participants of the first format, receive each upgrade
+ * so their vaults see the old states consumed. Returns the upgrade transactions, none once nothing is left to upgrade.
+ */
+@InitiatingFlow
+@StartableByRPC
+public class UpgradeMetalFlow extends FlowLogic<List<SecureHash>> {
+    public static final int DEFAULT_MAX_STATES = 50;
+    public static final int DEFAULT_MAX_TRANSACTIONS = 10;
+
+    //private variables
+    private int maxStates;
+    private int maxTransactions;
+
+    public UpgradeMetalFlow() {
+        this(DEFAULT_MAX_STATES, DEFAULT_MAX_TRANSACTIONS);
+    }
+
+    public UpgradeMetalFlow(int maxStates, int maxTransactions) {
+        if (maxStates < 1)
+            throw new IllegalArgumentException("Max states must be positive");
+        this.maxStates = maxStates;
+        this.maxTransactions = maxTransactions;
+    }
+
+    private final ProgressTracker.Step SELECTING_STATES = new ProgressTracker.Step("Selecting states of the first format.");
+    private final ProgressTracker.Step GENERATING_TRANSACTION = new ProgressTracker.Step("Generating transaction.");
+    private final ProgressTracker.Step SIGNING_TRANSACTION = new ProgressTracker.Step("Signing transaction with our private key.");
+    private final ProgressTracker.Step FINALISING_TRANSACTION = new ProgressTracker.Step("Obtaining notary signature and recording transaction.");
+
+
+    private final ProgressTracker progressTracker = new ProgressTracker(
+            SELECTING_STATES,
+            GENERATING_TRANSACTION,
+            SIGNING_TRANSACTION,
+            FINALISING_TRANSACTION
+    );
+
+    @Override
+    public ProgressTracker getProgressTracker() {
+        return progressTracker;
+    }
+
+
+
+    @Suspendable
+    @Override
+    public List<SecureHash> call() throws FlowException {
+        //Initiator flow logic goes here
+        List<SecureHash> upgrades = new ArrayList<>();
+
+        while (upgrades.size() < maxTransactions) {
+            progressTracker.setCurrentStep(SELECTING_STATES);
+            List<StateAndRef<MetalState>> inputStates = selectLegacy();
+            if (inputStates.isEmpty())
+                break;
+
+            upgrades.add(upgrade(inputStates).getId());
+        }
+
+        return upgrades;
+    }
+
+    @Suspendable
+    private SignedTransaction upgrade(List<StateAndRef<MetalState>> inputStates) throws FlowException {
+        //Each state comes out as a MetalStateV2 of the same metal, weight, issuer and owner
+        progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+        TransactionBuilder txB = new TransactionBuilder(inputStates.get(0).getState().getNotary())
+                .addCommand(new Command(new MetalContract.Commands.Upgrade(), getOurIdentity().getOwningKey()));
+
+        Set<Party> issuers = new LinkedHashSet<>();
+        for (StateAndRef<MetalState> inputState : inputStates) {
+            MetalState metalState = inputState.getState().getData();
+            txB.addInputState(inputState);
+            txB.addOutputState(new MetalStateV2(Metals.code(metalState.getMetalName()), metalState.getWeight(),
+                    metalState.getIssuer(), metalState.getOwner()), MetalContract.CID);
+            issuers.add(metalState.getIssuer());
+        }
+
+        //Sign the transaction
+        progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+        SignedTransaction signedTx = getServiceHub().signInitialTransaction(txB);
+
+        //Finalize with the issuers, who were participants of the states being spent
+        progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+        List<FlowSession> issuerSessions = new ArrayList<>();
+        for (Party issuer : issuers) {
+            if (!issuer.equals(getOurIdentity()))
+                issuerSessions.add(initiateFlow(issuer));
+        }
+        return subFlow(new FinalityFlow(signedTx, issuerSessions));
+    }
+
+    /* Reserves up to maxStates of our unconsumed first-format states that share the notary of the first of them. */
+    private List<StateAndRef<MetalState>> selectLegacy() throws FlowException {
+        QueryCriteria.SoftLockingCondition unlocked = new QueryCriteria.SoftLockingCondition(
+                QueryCriteria.SoftLockingType.UNLOCKED_ONLY, Collections.emptyList());
+        QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                .withSoftLockingCondition(unlocked)
+                .and(new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(ownerField(), getOurIdentity())));
+        Sort byStateRef = new Sort(Collections.singletonList(
+                new Sort.SortColumn(new SortAttribute.Standard(Sort.CommonStateAttribute.STATE_REF), Sort.Direction.ASC)));
+
+        List<StateAndRef<MetalState>> page = getServiceHub().getVaultService()
+                .queryBy(MetalState.class, criteria, new PageSpecification(DEFAULT_PAGE_NUM, maxStates), byStateRef).getStates();
+        if (page.isEmpty())
+            return page;
+
+        Party notary = page.get(0).getState().getNotary();
+        List<StateAndRef<MetalState>> selected = new ArrayList<>();
+        List<StateRef> refs = new ArrayList<>();
+        for (StateAndRef<MetalState> metalState : page) {
+            if (metalState.getState().getNotary().equals(notary)) {
+                selected.add(metalState);
+                refs.add(metalState.getRef());
+            }
+        }
+        getServiceHub().getVaultService().softLockReserve(getRunId().getUuid(), NonEmptySet.copyOf(refs));
+        return selected;
+    }
+
+    private static Field ownerField() {
+        try {
+            return MetalSchemaV1.PersistentMetal.class.getDeclaredField("owner");
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("MetalState schema is missing the owner column.", e);
+        }
+    }
+}
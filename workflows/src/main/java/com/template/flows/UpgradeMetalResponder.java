@@ -0,0 +1,30 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.*;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.transactions.SignedTransaction;
+
+// ******************
+// * Responder flow *
+// ******************
+/**
+ * The issuer's side of UpgradeMetalFlow: records the upgrade, which consumes first-format states we took part in.
+ * We are not a participant of the MetalStateV2s it makes, so every state is recorded, as IssuerReportResponder does.
+ */
+@InitiatedBy(UpgradeMetalFlow.class)
+public class UpgradeMetalResponder extends FlowLogic<SignedTransaction> {
+    private FlowSession otherPartySession;
+
+    public UpgradeMetalResponder(FlowSession otherPartySession) {
+        this.otherPartySession = otherPartySession;
+    }
+
+    @Suspendable
+    @Override
+    public SignedTransaction call() throws FlowException {
+        // Responder flow logic goes here.
+
+        return subFlow(new ReceiveFinalityFlow(otherPartySession, null, StatesToRecord.ALL_VISIBLE));
+    }
+}
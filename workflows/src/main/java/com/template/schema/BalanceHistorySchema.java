@@ -0,0 +1,6 @@
+package com.template.schema;
+
+/**
+ * The family of schemas for the checkpoints of every owner's metal balances kept by BalanceHistoryService.
+ */
+public class BalanceHistorySchema { }
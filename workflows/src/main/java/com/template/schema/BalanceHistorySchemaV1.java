@@ -0,0 +1,100 @@
+package com.template.schema;
+
+import net.corda.core.schemas.MappedSchema;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.Arrays;
+
+// **********
+// * Schema *
+// **********
+/**
+ * Node-local tables of balance checkpoints: a row per checkpoint, and a row per owner and metal with a balance at
+ * that checkpoint. A checkpoint holds the balances after every change recorded or consumed at or before its time.
+ * They are not state schemas: BalanceHistoryService writes them.
+ */
+public class BalanceHistorySchemaV1 extends MappedSchema {
+    public BalanceHistorySchemaV1() {
+        super(BalanceHistorySchema.class, 1, Arrays.asList(BalanceCheckpoint.class, CheckpointBalance.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "balance-history.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "balance_checkpoints")
+    public static class BalanceCheckpoint {
+        @Id @Column(name = "checkpoint_time", nullable = false) private final Instant checkpointTime;
+
+        public BalanceCheckpoint(Instant checkpointTime) {
+            this.checkpointTime = checkpointTime;
+        }
+
+        // Default constructor required by hibernate.
+        public BalanceCheckpoint() {
+            this.checkpointTime = null;
+        }
+
+        public Instant getCheckpointTime() {
+            return checkpointTime;
+        }
+    }
+
+    @Entity
+    @Table(name = "balance_checkpoint_balances", indexes = {
+            @Index(name = "balance_checkpoint_balances_time_idx", columnList = "checkpoint_time")
+    })
+    public static class CheckpointBalance {
+        @Id @Column(name = "balance_id", length = 320, nullable = false) private final String balanceId;
+        @Column(name = "checkpoint_time", nullable = false) private final Instant checkpointTime;
+        @Column(name = "owner", nullable = false) private final String owner;
+        @Column(name = "metal_code", length = 16, nullable = false) private final String metalCode;
+        @Column(name = "weight", nullable = false) private final long weight;
+
+        public CheckpointBalance(Instant checkpointTime, String owner, String metalCode, long weight) {
+            this.balanceId = checkpointTime + "|" + owner + "|" + metalCode;
+            this.checkpointTime = checkpointTime;
+            this.owner = owner;
+            this.metalCode = metalCode;
+            this.weight = weight;
+        }
+
+        // Default constructor required by hibernate.
+        public CheckpointBalance() {
+            this.balanceId = null;
+            this.checkpointTime = null;
+            this.owner = null;
+            this.metalCode = null;
+            this.weight = 0;
+        }
+
+        public String getBalanceId() {
+            return balanceId;
+        }
+
+        public Instant getCheckpointTime() {
+            return checkpointTime;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getMetalCode() {
+            return metalCode;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+    }
+}
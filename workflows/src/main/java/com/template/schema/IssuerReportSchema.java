@@ -0,0 +1,6 @@
+package com.template.schema;
+
+/**
+ * The family of schemas for the transactions waiting to be reported to their issuer.
+ */
+public class IssuerReportSchema { }
@@ -0,0 +1,67 @@
+package com.template.schema;
+
+import net.corda.core.schemas.MappedSchema;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.Collections;
+
+// **********
+// * Schema *
+// **********
+/**
+ * A node-local table of the transactions to send to their issuer in the next batch. It is not a state schema: rows
+ * are written and deleted by the flows, inside their own database transaction, so a queued report survives a
+ * restart and is only dropped once the issuer has recorded the transaction.
+ */
+public class IssuerReportSchemaV1 extends MappedSchema {
+    public IssuerReportSchemaV1() {
+        super(IssuerReportSchema.class, 1, Collections.singletonList(PendingIssuerReport.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "issuer-report.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "pending_issuer_reports", indexes = {
+            @Index(name = "pending_issuer_reports_queued_idx", columnList = "queued_at")
+    })
+    public static class PendingIssuerReport {
+        @Id @Column(name = "transaction_id", length = 64, nullable = false) private final String transactionId;
+        @Column(name = "issuer", nullable = false) private final String issuer;
+        @Column(name = "queued_at", nullable = false) private final Instant queuedAt;
+
+        public PendingIssuerReport(String transactionId, String issuer, Instant queuedAt) {
+            this.transactionId = transactionId;
+            this.issuer = issuer;
+            this.queuedAt = queuedAt;
+        }
+
+        // Default constructor required by hibernate.
+        public PendingIssuerReport() {
+            this.transactionId = null;
+            this.issuer = null;
+            this.queuedAt = null;
+        }
+
+        public String getTransactionId() {
+            return transactionId;
+        }
+
+        public String getIssuer() {
+            return issuer;
+        }
+
+        public Instant getQueuedAt() {
+            return queuedAt;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.template.schema;
+
+/**
+ * The family of schemas for the chain of custody of MetalStates.
+ */
+public class ProvenanceSchema { }
@@ -0,0 +1,95 @@
+package com.template.schema;
+
+import net.corda.core.schemas.MappedSchema;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Collections;
+
+// **********
+// * Schema *
+// **********
+/**
+ * A node-local index of where each MetalStateV2 came from: a row per state and predecessor, that is per input of the
+ * transaction that made the state which it was made from, and a single row without a predecessor for an issued
+ * state. Every row also carries the state's transaction, owner, metal and weight, so one indexed lookup by state
+ * gives a whole hop of its chain of custody. It is not a state schema: ProvenanceService writes it.
+ */
+public class ProvenanceSchemaV1 extends MappedSchema {
+    public ProvenanceSchemaV1() {
+        super(ProvenanceSchema.class, 1, Collections.singletonList(ProvenanceLink.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "provenance.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "metal_provenance", indexes = {
+            @Index(name = "metal_provenance_state_idx", columnList = "state_ref")
+    })
+    public static class ProvenanceLink {
+        @Id @Column(name = "link_id", length = 160, nullable = false) private final String linkId;
+        @Column(name = "state_ref", length = 80, nullable = false) private final String stateRef;
+        @Column(name = "predecessor_ref", length = 80) private final String predecessorRef;
+        @Column(name = "transaction_id", length = 64, nullable = false) private final String transactionId;
+        @Column(name = "owner", nullable = false) private final String owner;
+        @Column(name = "metal_code", length = 16, nullable = false) private final String metalCode;
+        @Column(name = "weight", nullable = false) private final long weight;
+
+        public ProvenanceLink(String stateRef, String predecessorRef, String transactionId, String owner, String metalCode, long weight) {
+            this.linkId = predecessorRef == null ? stateRef : stateRef + "<" + predecessorRef;
+            this.stateRef = stateRef;
+            this.predecessorRef = predecessorRef;
+            this.transactionId = transactionId;
+            this.owner = owner;
+            this.metalCode = metalCode;
+            this.weight = weight;
+        }
+
+        // Default constructor required by hibernate.
+        public ProvenanceLink() {
+            this.linkId = null;
+            this.stateRef = null;
+            this.predecessorRef = null;
+            this.transactionId = null;
+            this.owner = null;
+            this.metalCode = null;
+            this.weight = 0;
+        }
+
+        public String getLinkId() {
+            return linkId;
+        }
+
+        public String getStateRef() {
+            return stateRef;
+        }
+
+        public String getPredecessorRef() {
+            return predecessorRef;
+        }
+
+        public String getTransactionId() {
+            return transactionId;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getMetalCode() {
+            return metalCode;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+    }
+}
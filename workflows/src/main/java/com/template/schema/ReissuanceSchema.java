@@ -0,0 +1,6 @@
+package com.template.schema;
+
+/**
+ * The family of schemas for the metal an issuer owes back to the owners whose states it exited for reissuance.
+ */
+public class ReissuanceSchema { }
@@ -0,0 +1,98 @@
+package com.template.schema;
+
+import net.corda.core.schemas.MappedSchema;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.Version;
+import java.time.Instant;
+import java.util.Collections;
+
+// **********
+// * Schema *
+// **********
+/**
+ * A node-local table of the metal an issuer still owes after a reissuance exit, a row per exit. It is not a state
+ * schema: the row is written in the database transaction that records the exit, so an exit is never final without
+ * it, and is only deleted once reissuances of the whole weight are final. While a reissuance is being finalised the
+ * row names its transaction, so a retry can tell whether it made it onto the ledger.
+ */
+public class ReissuanceSchemaV1 extends MappedSchema {
+    public ReissuanceSchemaV1() {
+        super(ReissuanceSchema.class, 1, Collections.singletonList(PendingReissuance.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "reissuance.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "pending_reissuances", indexes = {
+            @Index(name = "pending_reissuances_queued_idx", columnList = "queued_at")
+    })
+    public static class PendingReissuance {
+        @Id @Column(name = "exit_transaction_id", length = 64, nullable = false) private final String exitTransactionId;
+        @Column(name = "owner", nullable = false) private final String owner;
+        @Column(name = "metal_code", length = 16, nullable = false) private final String metalCode;
+        @Column(name = "weight", nullable = false) private long weight;
+        @Column(name = "reissue_transaction_id", length = 64) private String reissueTransactionId;
+        @Column(name = "queued_at", nullable = false) private final Instant queuedAt;
+        @Version @Column(name = "version", nullable = false) private int version;
+
+        public PendingReissuance(String exitTransactionId, String owner, String metalCode, long weight, Instant queuedAt) {
+            this.exitTransactionId = exitTransactionId;
+            this.owner = owner;
+            this.metalCode = metalCode;
+            this.weight = weight;
+            this.queuedAt = queuedAt;
+        }
+
+        // Default constructor required by hibernate.
+        public PendingReissuance() {
+            this.exitTransactionId = null;
+            this.owner = null;
+            this.metalCode = null;
+            this.queuedAt = null;
+        }
+
+        public String getExitTransactionId() {
+            return exitTransactionId;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public String getMetalCode() {
+            return metalCode;
+        }
+
+        /* The weight still owed. */
+        public long getWeight() {
+            return weight;
+        }
+
+        public void setWeight(long weight) {
+            this.weight = weight;
+        }
+
+        /* The reissuance being finalised, or null. */
+        public String getReissueTransactionId() {
+            return reissueTransactionId;
+        }
+
+        public void setReissueTransactionId(String reissueTransactionId) {
+            this.reissueTransactionId = reissueTransactionId;
+        }
+
+        public Instant getQueuedAt() {
+            return queuedAt;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.template.flows.BatchIssueMetalFlow;
+import com.template.flows.IssueMetalFlow;
+import com.template.flows.PublishMetalCatalogueFlow;
+import com.template.flows.TransferMetalFlow;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+
+public class CheckpointProfileTests {
+    private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+            TestCordapp.findCordapp("com.template.contracts"),
+            TestCordapp.findCordapp("com.template.flows")
+    )));
+    private final StartedMockNode Mint = network.createNode();
+    private final StartedMockNode A = network.createNode();
+    private final StartedMockNode B = network.createNode();
+    private final List<StartedMockNode> nodes = Arrays.asList(Mint, A, B);
+
+    @Before
+    public void setup() {
+        network.runNetwork();
+    }
+
+    @Before
+    public void publishCatalogue() throws Exception {
+        //Every issuance references the Mint's catalogue, which the traders observe
+        CordaFuture<List<SignedTransaction>> future = Mint.startFlow(new PublishMetalCatalogueFlow(Arrays.asList(
+                A.getInfo().getLegalIdentities().get(0), B.getInfo().getLegalIdentities().get(0))));
+        network.runNetwork();
+        future.get();
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void issueAndTransferCheckpointsStayWithinBudget() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+        FlowCheckpointProfiler profiler = new FlowCheckpointProfiler(network, nodes);
+
+        profiler.run(Mint, new IssueMetalFlow("Gold", 10, partyA));
+        profiler.run(A, new TransferMetalFlow("Gold", 10, partyB));
+        String report = profiler.report();
+
+        assertTrue(report, profiler.profile(IssueMetalFlow.class).getSuspensions() > 0);
+        assertTrue(report, profiler.profile(TransferMetalFlow.class).getSuspensions() > 0);
+        assertEquals(report, Collections.emptyList(), profiler.overBudget());
+    }
+
+    @Test
+    public void transferCheckpointsDoNotGrowWithTheVault() throws Exception {
+        Party partyA = A.getInfo().getLegalIdentities().get(0);
+        Party partyB = B.getInfo().getLegalIdentities().get(0);
+
+        new FlowCheckpointProfiler(network, nodes).run(Mint, new IssueMetalFlow("Gold", 10, partyA));
+        FlowCheckpointProfiler smallVault = new FlowCheckpointProfiler(network, nodes);
+        smallVault.run(A, new TransferMetalFlow("Gold", 10, partyB));
+
+        List<BatchIssueMetalFlow.Issuance> issuances = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            issuances.add(new BatchIssueMetalFlow.Issuance("Gold", 10, partyA));
+        }
+        new FlowCheckpointProfiler(network, nodes).run(Mint, new BatchIssueMetalFlow(issuances));
+        FlowCheckpointProfiler largeVault = new FlowCheckpointProfiler(network, nodes);
+        largeVault.run(A, new TransferMetalFlow("Gold", 10, partyB));
+
+        // A flow that carried the vault's states in its locals would suspend with a fiber that grows with the vault.
+        int small = smallVault.profile(TransferMetalFlow.class).maxFiberBytes();
+        int large = largeVault.profile(TransferMetalFlow.class).maxFiberBytes();
+        assertTrue("TransferMetalFlow keeps vault-sized locals across suspensions: " + small + " bytes of fiber with one state, "
+                + large + " with 200" + System.lineSeparator() + largeVault.report(), large <= small + 1024);
+    }
+}
@@ -0,0 +1,197 @@
+package com.template;
+
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.flows.FlowLogic;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.StartedMockNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Records the checkpoints written while flows run on a MockNetwork.
+ *
+ * The network is pumped one round at a time, and after each round every node's checkpoint table is read. A flow
+ * whose checkpoint changed since the last round has suspended at least once, so the suspension counts are lower
+ * bounds. Each checkpoint is attributed to the ProgressTracker step the flow was on when it was written, and split
+ * into the checkpoint itself and the serialised fiber, which holds the flow's locals.
+ *
+ * Budgets per flow class are read from checkpoint-budgets.properties on the test classpath.
+ */
+public class FlowCheckpointProfiler {
+    private static final int MAX_ROUNDS = 1000;
+
+    private static final String CHECKPOINTS =
+            "SELECT c.flow_id, m.flow_name, c.progress_step, c.timestamp, " +
+            "OCTET_LENGTH(b.checkpoint_value), COALESCE(OCTET_LENGTH(b.flow_state), 0) " +
+            "FROM node_checkpoints c " +
+            "JOIN node_checkpoint_blobs b ON b.flow_id = c.flow_id " +
+            "JOIN node_flow_metadata m ON m.flow_id = c.flow_id";
+
+    private final MockNetwork network;
+    private final List<StartedMockNode> nodes;
+    private final Properties budgets = new Properties();
+
+    // The last checkpoint seen for each flow id, and everything recorded per flow class.
+    private final Map<String, Checkpoint> lastSeen = new HashMap<>();
+    private final Map<String, FlowProfile> profiles = new TreeMap<>();
+
+    public FlowCheckpointProfiler(MockNetwork network, List<StartedMockNode> nodes) throws IOException {
+        this.network = network;
+        this.nodes = nodes;
+        try (InputStream in = FlowCheckpointProfiler.class.getClassLoader().getResourceAsStream("checkpoint-budgets.properties")) {
+            if (in != null)
+                budgets.load(in);
+        }
+    }
+
+    /* Runs the flow to completion, recording the checkpoints of it and of every flow it causes on the other nodes. */
+    public <T> T run(StartedMockNode node, FlowLogic<T> flow) throws Exception {
+        CordaFuture<T> future = node.startFlow(flow);
+        for (int round = 0; !future.isDone(); round++) {
+            if (round == MAX_ROUNDS)
+                throw new IllegalStateException(flow.getClass().getSimpleName() + " did not finish in " + MAX_ROUNDS + " rounds");
+            network.runNetwork(1);
+            sample();
+        }
+        // Let the counterparties finish too.
+        network.runNetwork();
+        return future.get();
+    }
+
+    public FlowProfile profile(Class<?> flowClass) {
+        FlowProfile profile = profiles.get(flowClass.getName());
+        if (profile == null)
+            throw new IllegalArgumentException("No checkpoints were recorded for " + flowClass.getName());
+        return profile;
+    }
+
+    /* The budget violations of every flow profiled so far, empty when all are within budget. */
+    public List<String> overBudget() {
+        List<String> violations = new ArrayList<>();
+        for (FlowProfile profile : profiles.values()) {
+            String maxSuspensions = budgets.getProperty(profile.flowName + ".maxSuspensions");
+            String maxCheckpointBytes = budgets.getProperty(profile.flowName + ".maxCheckpointBytes");
+            if (maxSuspensions != null && profile.getSuspensions() > Integer.parseInt(maxSuspensions))
+                violations.add(profile.flowName + " suspended " + profile.getSuspensions() + " times in one run, budget " + maxSuspensions);
+            if (maxCheckpointBytes != null && profile.maxCheckpointBytes() > Integer.parseInt(maxCheckpointBytes))
+                violations.add(profile.flowName + " wrote a " + profile.maxCheckpointBytes() + " byte checkpoint, budget " + maxCheckpointBytes);
+        }
+        return violations;
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (FlowProfile profile : profiles.values()) {
+            report.append(profile).append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    private void sample() {
+        for (StartedMockNode node : nodes) {
+            node.transaction(() -> {
+                try (PreparedStatement query = node.getServices().getJdbcSession().prepareStatement(CHECKPOINTS);
+                     ResultSet rows = query.executeQuery()) {
+                    while (rows.next()) {
+                        Checkpoint checkpoint = new Checkpoint(rows.getString(3), rows.getTimestamp(4).getTime(), rows.getInt(5), rows.getInt(6));
+                        Checkpoint previous = lastSeen.put(rows.getString(1), checkpoint);
+                        if (!checkpoint.equals(previous))
+                            profiles.computeIfAbsent(rows.getString(2), FlowProfile::new).record(rows.getString(1), checkpoint);
+                    }
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Could not read the checkpoints", e);
+                }
+                return null;
+            });
+        }
+    }
+
+    /** The checkpoints of one flow class, across every run of it. */
+    public static class FlowProfile {
+        private final String flowName;
+        // Suspensions of each run, by flow id.
+        private final Map<String, Integer> runs = new HashMap<>();
+        private final Map<String, StepSizes> steps = new LinkedHashMap<>();
+
+        FlowProfile(String flowName) {
+            this.flowName = flowName;
+        }
+
+        void record(String flowId, Checkpoint checkpoint) {
+            runs.merge(flowId, 1, Integer::sum);
+            steps.computeIfAbsent(checkpoint.step == null ? "(no step)" : checkpoint.step, step -> new StepSizes())
+                    .record(checkpoint);
+        }
+
+        /* The most times a single run suspended. */
+        public int getSuspensions() {
+            return runs.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+        }
+
+        public int getRuns() {
+            return runs.size();
+        }
+
+        public int maxCheckpointBytes() {
+            return steps.values().stream().mapToInt(sizes -> sizes.maxCheckpointBytes + sizes.maxFiberBytes).max().orElse(0);
+        }
+
+        /* The largest serialised fiber, which grows with whatever the flow keeps in its locals across a suspension. */
+        public int maxFiberBytes() {
+            return steps.values().stream().mapToInt(sizes -> sizes.maxFiberBytes).max().orElse(0);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder profile = new StringBuilder(flowName + ": " + runs.size() + " runs, up to " + getSuspensions() + " suspensions each");
+            steps.forEach((step, sizes) -> profile.append(String.format("%n  %-60s %3d checkpoints, up to %6d bytes of checkpoint and %6d bytes of fiber",
+                    step, sizes.count, sizes.maxCheckpointBytes, sizes.maxFiberBytes)));
+            return profile.toString();
+        }
+    }
+
+    private static class StepSizes {
+        private int count;
+        private int maxCheckpointBytes;
+        private int maxFiberBytes;
+
+        void record(Checkpoint checkpoint) {
+            count++;
+            maxCheckpointBytes = Math.max(maxCheckpointBytes, checkpoint.checkpointBytes);
+            maxFiberBytes = Math.max(maxFiberBytes, checkpoint.fiberBytes);
+        }
+    }
+
+    private static class Checkpoint {
+        private final String step;
+        private final long timestamp;
+        private final int checkpointBytes;
+        private final int fiberBytes;
+
+        Checkpoint(String step, long timestamp, int checkpointBytes, int fiberBytes) {
+            this.step = step;
+            this.timestamp = timestamp;
+            this.checkpointBytes = checkpointBytes;
+            this.fiberBytes = fiberBytes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Checkpoint)) return false;
+            Checkpoint that = (Checkpoint) o;
+            return timestamp == that.timestamp && checkpointBytes == that.checkpointBytes && fiberBytes == that.fiberBytes
+                    && Objects.equals(step, that.step);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(step, timestamp, checkpointBytes, fiberBytes);
+        }
+    }
+}
@@ -3,11 +3,21 @@ package com.template;
 import com.google.common.collect.ImmutableList;
 import com.template.contracts.MetalContract;
 import com.template.flows.Responder;
+import com.template.schema.ReissuanceSchemaV1.PendingReissuance;
 import com.template.states.MetalState;
+import com.template.states.MetalStateV2;
+import com.template.states.Metals;
+import kotlin.jvm.functions.Function1;
 import net.corda.core.concurrent.CordaFuture;
 import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
 import net.corda.core.contracts.TransactionState;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
 import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
 import net.corda.testing.node.MockNetwork;
 import net.corda.testing.node.MockNetworkParameters;
 import net.corda.testing.node.StartedMockNode;
@@ -15,10 +25,35 @@ import net.corda.testing.node.TestCordapp;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import com.template.flows.BalanceAsOfFlow;
+import com.template.flows.BalanceCheckpointFlow;
+import com.template.flows.BatchIssueMetalFlow;
+import com.template.flows.ConsolidateMetalFlow;
+import com.template.flows.CustodyChainFlow;
+import com.template.flows.CustodyHop;
+import com.template.flows.FlowMetricsMXBean;
+import com.template.flows.FlowMetricsService;
 import com.template.flows.IssueMetalFlow;
+import com.template.flows.MetalBalance;
+import com.template.flows.MetalVaultSummary;
+import com.template.flows.PublishMetalCatalogueFlow;
+import com.template.flows.ReissuanceService;
+import com.template.flows.ReissueMetalFlow;
+import com.template.flows.ReissueOwedMetalFlow;
+import com.template.flows.SearchVault;
+import com.template.flows.StepTiming;
 import com.template.flows.TransferMetalFlow;
+import com.template.flows.UpgradeMetalFlow;
+
+import javax.persistence.EntityManager;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
 
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertNotNull;
+import static junit.framework.TestCase.assertNull;
 import static junit.framework.TestCase.assertTrue;
 
 public class FlowTests {
@@ -35,6 +70,15 @@ public class FlowTests {
         network.runNetwork();
     }
 
+    @Before
+    public void publishCatalogue() throws Exception {
+        //Every issuance references the Mint's catalogue, which the traders observe
+        CordaFuture<List<SignedTransaction>> future = Mint.startFlow(new PublishMetalCatalogueFlow(Arrays.asList(
+                A.getInfo().getLegalIdentities().get(0), B.getInfo().getLegalIdentities().get(0))));
+        network.runNetwork();
+        future.get();
+    }
+
     @After
     public void tearDown() {
         network.stopNodes();
@@ -52,7 +96,7 @@ public class FlowTests {
 
         assertEquals(0, signedTransaction.getTx().getInputs().size());
         assertEquals(1, signedTransaction.getTx().getOutputStates().size());
-        //MetalState output = signedTransaction.getTx().outputsOfType(MetalState.class).get(0);
+        //MetalStateV2 output = signedTransaction.getTx().outputsOfType(MetalStateV2.class).get(0);
         //assertEquals(A.getInfo().getLegalIdentities().get(0), output.getOwner());
     }
 
@@ -88,6 +132,8 @@ public class FlowTests {
 
         assertEquals(1, signedTransaction.getTx().getOutputs().size());
         assertEquals(1, signedTransaction.getTx().getInputs().size());
+        //Only issuance depends on the catalogue
+        assertTrue(signedTransaction.getTx().getReferences().isEmpty());
     }
 
     @Test
@@ -108,4 +154,378 @@ public class FlowTests {
         assert(command.getValue() instanceof MetalContract.Commands.Transfer);
         assertTrue(command.getSigners().contains(A.getInfo().getLegalIdentities().get(0).getOwningKey()));
     }
+
+    @Test
+    public void issuerRecordsTheTransferAsAnObserver() throws Exception {
+        Mint.startFlow(new IssueMetalFlow("Gold", 10, A.getInfo().getLegalIdentities().get(0)));
+        setup();
+
+        CordaFuture<SignedTransaction> futureTransfer = A.startFlow(new TransferMetalFlow("Gold", 10, B.getInfo().getLegalIdentities().get(0)));
+        setup();
+        SignedTransaction signedTransaction = futureTransfer.get();
+
+        //The Mint is not a participant, but is sent the transfer before the flow ends
+        assertEquals(1, signedTransaction.getTx().getOutputStates().get(0).getParticipants().size());
+        List<StateAndRef<MetalStateV2>> mintStates = Mint.transaction(() ->
+                Mint.getServices().getVaultService().queryBy(MetalStateV2.class).getStates());
+        assertEquals(1, mintStates.size());
+        assertEquals(signedTransaction.getId(), mintStates.get(0).getRef().getTxhash());
+    }
+
+    @Test
+    public void issuanceRecordsItsStepTimingsAndOutcome() throws Exception {
+        CordaFuture<SignedTransaction> future = Mint.startFlow(new IssueMetalFlow("Gold", 10, A.getInfo().getLegalIdentities().get(0)));
+        setup();
+        future.get();
+
+        FlowMetricsMXBean metrics = Mint.getServices().cordaService(FlowMetricsService.class).get(IssueMetalFlow.class);
+        assertEquals(1, metrics.getStarted());
+        assertEquals(1, metrics.getCompleted());
+        assertEquals(0, metrics.getFailed());
+
+        //The whole run first, then each step in the order the flow went through them
+        List<StepTiming> steps = metrics.getSteps();
+        assertEquals(6, steps.size());
+        assertEquals("(flow)", steps.get(0).getStep());
+        assertEquals("Retrieving the Notary.", steps.get(1).getStep());
+        assertEquals("Obtaining notary signature and recording transaction.", steps.get(5).getStep());
+        for (StepTiming step : steps) {
+            assertEquals(1, step.getCount());
+            assertTrue(step.getP99Micros() <= step.getMaxMicros());
+        }
+    }
+
+    @Test
+    public void transferSpendsTheStateMatchingTheRequestedWeight() throws Exception {
+        Mint.startFlow(new IssueMetalFlow("Gold", 5, A.getInfo().getLegalIdentities().get(0)));
+        setup();
+        CordaFuture<SignedTransaction> future = Mint.startFlow(new IssueMetalFlow("Gold", 10, A.getInfo().getLegalIdentities().get(0)));
+        setup();
+        SignedTransaction issuance = future.get();
+
+        CordaFuture<SignedTransaction> futureTransfer = A.startFlow(new TransferMetalFlow("Gold", 10, B.getInfo().getLegalIdentities().get(0)));
+        setup();
+        SignedTransaction signedTransaction = futureTransfer.get();
+
+        assertEquals(issuance.getId(), signedTransaction.getTx().getInputs().get(0).getTxhash());
+        MetalStateV2 output = signedTransaction.getTx().outputsOfType(MetalStateV2.class).get(0);
+        assertEquals(10, output.getWeight());
+    }
+
+    @Test
+    public void concurrentTransfersFromTheSameNodeSpendDisjointStates() throws Exception {
+        Mint.startFlow(new IssueMetalFlow("Gold", 10, A.getInfo().getLegalIdentities().get(0)));
+        Mint.startFlow(new IssueMetalFlow("Gold", 10, A.getInfo().getLegalIdentities().get(0)));
+        setup();
+
+        CordaFuture<SignedTransaction> firstTransfer = A.startFlow(new TransferMetalFlow("Gold", 10, B.getInfo().getLegalIdentities().get(0)));
+        CordaFuture<SignedTransaction> secondTransfer = A.startFlow(new TransferMetalFlow("Gold", 10, B.getInfo().getLegalIdentities().get(0)));
+        setup();
+
+        StateRef firstInput = firstTransfer.get().getTx().getInputs().get(0);
+        StateRef secondInput = secondTransfer.get().getTx().getInputs().get(0);
+        assertFalse(firstInput.equals(secondInput));
+    }
+
+    @Test
+    public void partialTransferMergesInputsAndReturnsChange() throws Exception {
+        Mint.startFlow(new IssueMetalFlow("Gold", 6, A.getInfo().getLegalIdentities().get(0)));
+        Mint.startFlow(new IssueMetalFlow("Gold", 7, A.getInfo().getLegalIdentities().get(0)));
+        setup();
+
+        CordaFuture<SignedTransaction> futureTransfer = A.startFlow(new TransferMetalFlow("Gold", 10, B.getInfo().getLegalIdentities().get(0)));
+        setup();
+        SignedTransaction signedTransaction = futureTransfer.get();
+
+        assertEquals(2, signedTransaction.getTx().getInputs().size());
+        List<MetalStateV2> outputs = signedTransaction.getTx().outputsOfType(MetalStateV2.class);
+        assertEquals(2, outputs.size());
+        assertEquals(10, outputs.get(0).getWeight());
+        assertEquals(B.getInfo().getLegalIdentities().get(0), outputs.get(0).getOwner());
+        assertEquals(3, outputs.get(1).getWeight());
+        assertEquals(A.getInfo().getLegalIdentities().get(0), outputs.get(1).getOwner());
+    }
+
+    //Chain of custody tests
+    @Test
+    public void custodyChainFollowsTheMetalBackToItsIssuance() throws Exception {
+        Party traderA = A.getInfo().getLegalIdentities().get(0);
+        Party traderB = B.getInfo().getLegalIdentities().get(0);
+        CordaFuture<SignedTransaction> issuance = Mint.startFlow(new IssueMetalFlow("Gold", 10, traderA));
+        setup();
+        A.startFlow(new TransferMetalFlow("Gold", 10, traderB));
+        setup();
+        CordaFuture<SignedTransaction> returned = B.startFlow(new TransferMetalFlow("Gold", 10, traderA));
+        setup();
+
+        CordaFuture<List<CustodyHop>> future = A.startFlow(new CustodyChainFlow(returned.get().getId(), 0));
+        setup();
+        List<CustodyHop> chain = future.get();
+
+        assertEquals(3, chain.size());
+        assertEquals(traderA.toString(), chain.get(0).getOwner());
+        assertEquals(traderB.toString(), chain.get(1).getOwner());
+        assertEquals(traderA.toString(), chain.get(2).getOwner());
+        assertEquals(Arrays.asList(chain.get(1).getStateRef()), chain.get(0).getPredecessors());
+        assertEquals(issuance.get().getId(), chain.get(2).getTransactionId());
+        assertTrue(chain.get(2).getPredecessors().isEmpty());
+    }
+
+    //Reissue metal flow tests
+    @Test
+    public void reissuanceSwapsALongChainForAFreshIssuance() throws Exception {
+        Party traderA = A.getInfo().getLegalIdentities().get(0);
+        Party traderB = B.getInfo().getLegalIdentities().get(0);
+        Mint.startFlow(new IssueMetalFlow("Gold", 10, traderA));
+        setup();
+        A.startFlow(new TransferMetalFlow("Gold", 10, traderB));
+        setup();
+        B.startFlow(new TransferMetalFlow("Gold", 10, traderA));
+        setup();
+
+        //The chain spans three transactions, short of a threshold of four
+        CordaFuture<List<SignedTransaction>> tooShallow = A.startFlow(new ReissueMetalFlow("Gold", 4, 10));
+        setup();
+        assertTrue(tooShallow.get().isEmpty());
+
+        CordaFuture<List<SignedTransaction>> future = A.startFlow(new ReissueMetalFlow("Gold", 3, 10));
+        setup();
+        List<SignedTransaction> transactions = future.get();
+
+        //The exit, then an issuance of the same weight back to us with no inputs
+        assertEquals(2, transactions.size());
+        assertTrue(transactions.get(0).getTx().getOutputs().isEmpty());
+        SignedTransaction reissuance = transactions.get(1);
+        assertEquals(0, reissuance.getTx().getInputs().size());
+        MetalStateV2 reissued = reissuance.getTx().outputsOfType(MetalStateV2.class).get(0);
+        assertEquals(10, reissued.getWeight());
+        assertEquals(traderA.getOwningKey(), reissued.getOwner().getOwningKey());
+
+        CordaFuture<List<CustodyHop>> chain = A.startFlow(new CustodyChainFlow(reissuance.getId(), 0));
+        setup();
+        assertEquals(1, chain.get().size());
+    }
+
+    @Test
+    public void metalStillOwedAfterAnExitIsReissuedOnRetry() throws Exception {
+        Party traderA = A.getInfo().getLegalIdentities().get(0);
+        Mint.startFlow(new IssueMetalFlow("Gold", 10, traderA));
+        setup();
+        CordaFuture<List<SignedTransaction>> future = A.startFlow(new ReissueMetalFlow("Gold", 1, 10));
+        setup();
+        SecureHash exitTxId = future.get().get(0).getId();
+        assertNull(Mint.transaction(() -> owed(exitTxId)));
+
+        //As if the issuer had failed to reissue part of the exit
+        Mint.transaction(() -> {
+            Mint.getServices().cordaService(ReissuanceService.class).owe(exitTxId, traderA, Metals.GOLD, 4);
+            return null;
+        });
+        CordaFuture<List<SignedTransaction>> retry = Mint.startFlow(new ReissueOwedMetalFlow(exitTxId));
+        setup();
+
+        assertEquals(1, retry.get().size());
+        SignedTransaction reissuance = retry.get().get(0);
+        MetalStateV2 reissued = reissuance.getTx().outputsOfType(MetalStateV2.class).get(0);
+        assertEquals(4, reissued.getWeight());
+        assertEquals(traderA.getOwningKey(), reissued.getOwnerKey());
+        assertNotNull(A.transaction(() -> A.getServices().getValidatedTransactions().getTransaction(reissuance.getId())));
+        assertNull(Mint.transaction(() -> owed(exitTxId)));
+    }
+
+    private PendingReissuance owed(SecureHash exitTxId) {
+        Function1<EntityManager, PendingReissuance> find = entityManager ->
+                entityManager.find(PendingReissuance.class, exitTxId.toString());
+        return Mint.getServices().withEntityManager(find);
+    }
+
+    //Batch issue metal flow tests
+    @Test
+    public void batchIssuanceRecordsEveryStateInOneTransaction() throws Exception {
+        Party traderA = A.getInfo().getLegalIdentities().get(0);
+        Party traderB = B.getInfo().getLegalIdentities().get(0);
+        BatchIssueMetalFlow flow = new BatchIssueMetalFlow(Arrays.asList(
+                new BatchIssueMetalFlow.Issuance("Gold", 10, traderA),
+                new BatchIssueMetalFlow.Issuance("Silver", 100, traderA),
+                new BatchIssueMetalFlow.Issuance("Gold", 20, traderB)
+        ));
+
+        CordaFuture<SignedTransaction> future = Mint.startFlow(flow);
+        setup();
+        SignedTransaction signedTransaction = future.get();
+
+        assertEquals(0, signedTransaction.getTx().getInputs().size());
+        assertEquals(3, signedTransaction.getTx().getOutputStates().size());
+        assertEquals(1, signedTransaction.getTx().getCommands().size());
+
+        A.transaction(() -> {
+            assertEquals(2, A.getServices().getVaultService().queryBy(MetalStateV2.class).getStates().size());
+            return null;
+        });
+        B.transaction(() -> {
+            assertEquals(1, B.getServices().getVaultService().queryBy(MetalStateV2.class).getStates().size());
+            return null;
+        });
+    }
+
+    //Consolidate metal flow tests
+    @Test
+    public void consolidationMergesFragmentedHoldingsPerMetalAndIssuer() throws Exception {
+        Party traderA = A.getInfo().getLegalIdentities().get(0);
+        Mint.startFlow(new BatchIssueMetalFlow(Arrays.asList(
+                new BatchIssueMetalFlow.Issuance("Gold", 1, traderA),
+                new BatchIssueMetalFlow.Issuance("Gold", 2, traderA),
+                new BatchIssueMetalFlow.Issuance("Gold", 3, traderA),
+                new BatchIssueMetalFlow.Issuance("Silver", 4, traderA)
+        )));
+        setup();
+
+        CordaFuture<List<SecureHash>> future = A.startFlow(new ConsolidateMetalFlow(0));
+        setup();
+        assertEquals(1, future.get().size());
+
+        A.transaction(() -> {
+            List<StateAndRef<MetalStateV2>> holdings = A.getServices().getVaultService().queryBy(MetalStateV2.class).getStates();
+            assertEquals(2, holdings.size());
+            for (StateAndRef<MetalStateV2> holding : holdings) {
+                MetalStateV2 metalState = holding.getState().getData();
+                assertEquals(metalState.getMetalCode().equals(Metals.GOLD) ? 6 : 4, metalState.getWeight());
+            }
+            return null;
+        });
+    }
+
+    @Test
+    public void consolidationDoesNothingBelowTheThreshold() throws Exception {
+        Party traderA = A.getInfo().getLegalIdentities().get(0);
+        Mint.startFlow(new BatchIssueMetalFlow(Arrays.asList(
+                new BatchIssueMetalFlow.Issuance("Gold", 1, traderA),
+                new BatchIssueMetalFlow.Issuance("Gold", 2, traderA)
+        )));
+        setup();
+
+        CordaFuture<List<SecureHash>> future = A.startFlow(new ConsolidateMetalFlow(2));
+        setup();
+        assertTrue(future.get().isEmpty());
+    }
+
+    //Search vault flow tests
+    @Test
+    public void searchVaultSummarisesCountsAndWeightsPerMetalAndOwner() throws Exception {
+        Party traderA = A.getInfo().getLegalIdentities().get(0);
+        Party traderB = B.getInfo().getLegalIdentities().get(0);
+        Mint.startFlow(new BatchIssueMetalFlow(Arrays.asList(
+                new BatchIssueMetalFlow.Issuance("Gold", 10, traderA),
+                new BatchIssueMetalFlow.Issuance("Gold", 5, traderB),
+                new BatchIssueMetalFlow.Issuance("Silver", 100, traderA)
+        )));
+        setup();
+
+        CordaFuture<List<MetalVaultSummary>> future = Mint.startFlow(new SearchVault(Vault.StateStatus.UNCONSUMED));
+        setup();
+        MetalVaultSummary summary = future.get().get(0);
+
+        assertEquals(2, summary.getByMetal().get(Metals.GOLD).getCount());
+        assertEquals(15, summary.getByMetal().get(Metals.GOLD).getWeight());
+        assertEquals(1, summary.getByMetal().get(Metals.SILVER).getCount());
+        assertEquals(2, summary.getByOwner().get(traderA.toString()).getCount());
+        assertEquals(110, summary.getByOwner().get(traderA.toString()).getWeight());
+        assertEquals(5, summary.getByOwner().get(traderB.toString()).getWeight());
+    }
+
+    //Balance history tests
+    @Test
+    public void balancesCanBeReadAsOfAnEarlierTime() throws Exception {
+        Party traderA = A.getInfo().getLegalIdentities().get(0);
+        Party traderB = B.getInfo().getLegalIdentities().get(0);
+        Mint.startFlow(new IssueMetalFlow("Gold", 10, traderA));
+        setup();
+        Instant afterIssuance = Instant.now();
+        Thread.sleep(10);
+
+        A.startFlow(new TransferMetalFlow("Gold", 4, traderB));
+        setup();
+
+        CordaFuture<List<MetalBalance>> before = Mint.startFlow(new BalanceAsOfFlow(afterIssuance));
+        CordaFuture<List<MetalBalance>> now = Mint.startFlow(new BalanceAsOfFlow(Instant.now()));
+        setup();
+
+        assertEquals(1, before.get().size());
+        assertEquals(traderA.toString(), before.get().get(0).getOwner());
+        assertEquals(10, before.get().get(0).getWeight());
+        assertEquals(Metals.GOLD, before.get().get(0).getMetalCode());
+
+        assertEquals(2, now.get().size());
+        for (MetalBalance balance : now.get()) {
+            assertEquals(balance.getOwner().equals(traderA.toString()) ? 6 : 4, balance.getWeight());
+        }
+    }
+
+    @Test
+    public void balanceCheckpointsAreNotTakenWhileTransactionsCouldStillBeRecorded() throws Exception {
+        Mint.startFlow(new IssueMetalFlow("Gold", 10, A.getInfo().getLegalIdentities().get(0)));
+        setup();
+
+        CordaFuture<Integer> written = Mint.startFlow(new BalanceCheckpointFlow());
+        setup();
+
+        assertEquals(0, (int) written.get());
+    }
+
+    //Upgrade metal flow tests
+    @Test
+    public void upgradeTurnsFirstFormatStatesIntoMetalStateV2s() throws Exception {
+        Party mint = Mint.getInfo().getLegalIdentities().get(0);
+        Party traderA = A.getInfo().getLegalIdentities().get(0);
+
+        //A MetalState of the first format, as issued before MetalStateV2 existed
+        TransactionBuilder txB = new TransactionBuilder(network.getDefaultNotaryIdentity())
+                .addOutputState(new MetalState("Gold", 10, mint, traderA), MetalContract.CID)
+                .addCommand(new MetalContract.Commands.Issue(), mint.getOwningKey());
+        SignedTransaction legacyIssuance = Mint.getServices().signInitialTransaction(txB);
+        for (StartedMockNode node : Arrays.asList(Mint, A)) {
+            node.transaction(() -> {
+                node.getServices().recordTransactions(legacyIssuance);
+                return null;
+            });
+        }
+
+        CordaFuture<List<SecureHash>> future = A.startFlow(new UpgradeMetalFlow());
+        setup();
+        assertEquals(1, future.get().size());
+
+        List<StateAndRef<MetalStateV2>> upgraded = A.transaction(() ->
+                A.getServices().getVaultService().queryBy(MetalStateV2.class).getStates());
+        assertEquals(1, upgraded.size());
+        MetalStateV2 metalState = upgraded.get(0).getState().getData();
+        assertEquals(Metals.GOLD, metalState.getMetalCode());
+        assertEquals(10, metalState.getWeight());
+        assertEquals(mint.getOwningKey(), metalState.getIssuerKey());
+        assertEquals(traderA.getOwningKey(), metalState.getOwnerKey());
+
+        //The chain of custody runs back through the upgrade to the first-format issuance
+        CordaFuture<List<CustodyHop>> chain = A.startFlow(new CustodyChainFlow(upgraded.get(0).getRef()));
+        setup();
+        assertEquals(2, chain.get().size());
+        assertEquals(Arrays.asList(new StateRef(legacyIssuance.getId(), 0)), chain.get().get(0).getPredecessors());
+        assertEquals(legacyIssuance.getId(), chain.get().get(1).getTransactionId());
+        assertEquals(Metals.GOLD, chain.get().get(1).getMetalCode());
+
+        //Both the owner and the issuer see the first-format state consumed
+        for (StartedMockNode node : Arrays.asList(Mint, A)) {
+            assertTrue(node.transaction(() ->
+                    node.getServices().getVaultService().queryBy(MetalState.class).getStates()).isEmpty());
+        }
+
+        //The issuer is not a participant of the MetalStateV2, but records it all the same
+        List<StateAndRef<MetalStateV2>> mintStates = Mint.transaction(() ->
+                Mint.getServices().getVaultService().queryBy(MetalStateV2.class).getStates());
+        assertEquals(1, mintStates.size());
+        assertEquals(upgraded.get(0).getRef(), mintStates.get(0).getRef());
+
+        //Nothing is left to upgrade
+        CordaFuture<List<SecureHash>> again = A.startFlow(new UpgradeMetalFlow());
+        setup();
+        assertTrue(again.get().isEmpty());
+    }
 }
@@ -0,0 +1,143 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.template.flows.IssueMetalFlow;
+import com.template.flows.IssuerReportFlow;
+import com.template.flows.PublishMetalCatalogueFlow;
+import com.template.flows.TransferMetalFlow;
+import com.template.states.MetalStateV2;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+
+public class IssuerReportTests {
+    // Batched, with a batch size and interval large enough that only the tests start a report.
+    private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+            TestCordapp.findCordapp("com.template.contracts"),
+            TestCordapp.findCordapp("com.template.flows").withConfig(ImmutableMap.of(
+                    "issuerReporting.mode", "batched",
+                    "issuerReporting.batchSize", 1000,
+                    "issuerReporting.intervalSeconds", 3600))
+    )));
+    private final StartedMockNode Mint = network.createNode();
+    private final StartedMockNode A = network.createNode();
+    private final StartedMockNode B = network.createNode();
+
+    @Before
+    public void setup() throws Exception {
+        network.runNetwork();
+        run(Mint, new PublishMetalCatalogueFlow(Arrays.asList(party(A), party(B))));
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void transfersReachTheIssuerInTheNextBatch() throws Exception {
+        SignedTransaction issue = run(Mint, new IssueMetalFlow("Gold", 10, party(A)));
+        SignedTransaction transfer = run(A, new TransferMetalFlow("Gold", 4, party(B)));
+
+        //The transfer is final without the Mint, which still only knows the issuance
+        assertEquals(setOf(issue.getId()), mintStateTransactions());
+
+        assertEquals(Integer.valueOf(1), run(A, new IssuerReportFlow(1000)));
+        assertEquals(setOf(transfer.getId()), mintStateTransactions());
+
+        //The queue is empty once reported
+        assertEquals(Integer.valueOf(0), run(A, new IssuerReportFlow(1000)));
+    }
+
+    @Test
+    public void reportsFromDifferentOwnersCanArriveOutOfOrder() throws Exception {
+        run(Mint, new IssueMetalFlow("Gold", 10, party(A)));
+        run(A, new TransferMetalFlow("Gold", 10, party(B)));
+        SignedTransaction second = run(B, new TransferMetalFlow("Gold", 10, party(A)));
+        SignedTransaction third = run(A, new TransferMetalFlow("Gold", 10, party(B)));
+
+        //B's batch depends on a transfer still queued at A, which the Mint resolves as part of the backchain
+        assertEquals(Integer.valueOf(1), run(B, new IssuerReportFlow(1000)));
+        assertTrue(mintStateTransactions().contains(second.getId()));
+
+        assertEquals(Integer.valueOf(2), run(A, new IssuerReportFlow(1000)));
+        assertTrue(mintStateTransactions().contains(third.getId()));
+        assertTrue(Mint.transaction(() -> Mint.getServices().getValidatedTransactions().getTransaction(third.getId())) != null);
+    }
+
+    @Test
+    public void aRunForOneIssuerOnlySendsItsOwnQueue() throws Exception {
+        run(Mint, new IssueMetalFlow("Gold", 10, party(A)));
+        SignedTransaction transfer = run(A, new TransferMetalFlow("Gold", 4, party(B)));
+
+        //Nothing is queued for B, so a run for B leaves the Mint's transfer queued
+        assertEquals(Integer.valueOf(0), run(A, new IssuerReportFlow(party(B).getName(), 1000)));
+        assertFalse(mintStateTransactions().contains(transfer.getId()));
+
+        assertEquals(Integer.valueOf(1), run(A, new IssuerReportFlow(party(Mint).getName(), 1000)));
+        assertTrue(mintStateTransactions().contains(transfer.getId()));
+    }
+
+    @Test
+    public void anIssuerOnlyTakesReportsOfMetalItIssued() throws Exception {
+        SignedTransaction issue = run(Mint, new IssueMetalFlow("Gold", 10, party(A)));
+
+        //Queue the Mint's issuance for B, which did not issue it, and send it
+        run(A, new IssuerReportFlow(party(B), issue.getId()));
+        try {
+            run(A, new IssuerReportFlow(party(B).getName(), 1000));
+            fail("B took a report of metal it did not issue");
+        } catch (ExecutionException e) {
+            //B refuses the report before recording anything
+        }
+
+        assertTrue(B.transaction(() -> B.getServices().getVaultService().queryBy(MetalStateV2.class).getStates()).isEmpty());
+        assertTrue(B.transaction(() -> B.getServices().getValidatedTransactions().getTransaction(issue.getId())) == null);
+    }
+
+    /* The transactions of the unconsumed MetalStates the Mint holds. */
+    private Set<Object> mintStateTransactions() {
+        List<StateAndRef<MetalStateV2>> states = Mint.transaction(() ->
+                Mint.getServices().getVaultService().queryBy(MetalStateV2.class).getStates());
+        Set<Object> txIds = new HashSet<>();
+        for (StateAndRef<MetalStateV2> state : states) {
+            txIds.add(state.getRef().getTxhash());
+        }
+        return txIds;
+    }
+
+    private <T> T run(StartedMockNode node, FlowLogic<T> flow) throws Exception {
+        CordaFuture<T> future = node.startFlow(flow);
+        network.runNetwork();
+        return future.get();
+    }
+
+    private static Set<Object> setOf(Object... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static Party party(StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
+}
@@ -0,0 +1,102 @@
+package com.template;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.template.flows.ChangeMetalNotaryFlow;
+import com.template.flows.IssueMetalFlow;
+import com.template.flows.PublishMetalCatalogueFlow;
+import com.template.flows.TransferMetalFlow;
+import com.template.states.MetalStateV2;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.testing.node.MockNetwork;
+import net.corda.testing.node.MockNetworkNotarySpec;
+import net.corda.testing.node.MockNetworkParameters;
+import net.corda.testing.node.StartedMockNode;
+import net.corda.testing.node.TestCordapp;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static junit.framework.TestCase.assertEquals;
+
+public class NotaryRoutingTests {
+    private static final CordaX500Name GOLD_NOTARY = new CordaX500Name("Gold Notary", "London", "GB");
+    private static final CordaX500Name SILVER_NOTARY = new CordaX500Name("Silver Notary", "London", "GB");
+
+    private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
+            TestCordapp.findCordapp("com.template.contracts"),
+            TestCordapp.findCordapp("com.template.flows").withConfig(ImmutableMap.of(
+                    "notary.policy", "metal",
+                    "notary.metal.XAU", GOLD_NOTARY.toString(),
+                    "notary.metal.XAG", SILVER_NOTARY.toString()))
+    )).withNotarySpecs(Arrays.asList(new MockNetworkNotarySpec(GOLD_NOTARY), new MockNetworkNotarySpec(SILVER_NOTARY))));
+    private final StartedMockNode Mint = network.createNode();
+    private final StartedMockNode A = network.createNode();
+    private final StartedMockNode B = network.createNode();
+
+    private Party goldNotary;
+    private Party silverNotary;
+
+    @Before
+    public void setup() throws Exception {
+        network.runNetwork();
+        goldNotary = Mint.getServices().getNetworkMapCache().getNotary(GOLD_NOTARY);
+        silverNotary = Mint.getServices().getNetworkMapCache().getNotary(SILVER_NOTARY);
+
+        CordaFuture<List<SignedTransaction>> future = Mint.startFlow(new PublishMetalCatalogueFlow(Arrays.asList(party(A), party(B))));
+        network.runNetwork();
+        assertEquals(2, future.get().size());
+    }
+
+    @After
+    public void tearDown() {
+        network.stopNodes();
+    }
+
+    @Test
+    public void issuancesAreRoutedToTheNotaryOfTheirMetal() throws Exception {
+        assertEquals(goldNotary, run(Mint, new IssueMetalFlow("Gold", 10, party(A))).getNotary());
+        assertEquals(silverNotary, run(Mint, new IssueMetalFlow("Silver", 10, party(A))).getNotary());
+    }
+
+    @Test
+    public void transfersStayOnTheNotaryOfTheirInputs() throws Exception {
+        run(Mint, new IssueMetalFlow("Silver", 10, party(A)));
+
+        assertEquals(silverNotary, run(A, new TransferMetalFlow("Silver", 10, party(B))).getNotary());
+    }
+
+    @Test
+    public void metalCanBeMovedToAnotherNotaryAndSpentThere() throws Exception {
+        run(Mint, new IssueMetalFlow("Silver", 10, party(A)));
+        run(Mint, new IssueMetalFlow("Silver", 5, party(A)));
+
+        CordaFuture<List<StateAndRef<MetalStateV2>>> future = A.startFlow(new ChangeMetalNotaryFlow("Silver", goldNotary, 10));
+        network.runNetwork();
+        List<StateAndRef<MetalStateV2>> moved = future.get();
+
+        assertEquals(2, moved.size());
+        for (StateAndRef<MetalStateV2> metalState : moved) {
+            assertEquals(goldNotary, metalState.getState().getNotary());
+        }
+        assertEquals(goldNotary, run(A, new TransferMetalFlow("Silver", 15, party(B))).getNotary());
+    }
+
+    private SignedTransaction run(StartedMockNode node, FlowLogic<SignedTransaction> flow) throws Exception {
+        CordaFuture<SignedTransaction> future = node.startFlow(flow);
+        network.runNetwork();
+        return future.get();
+    }
+
+    private static Party party(StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
+}